@@ -0,0 +1,122 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.image.service.FrameBufferPool;
+import com.udacity.catpoint.image.service.PooledFrame;
+import com.udacity.catpoint.security.application.CameraImageLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The individual steps of the image path on the bundled sample pictures: decoding, scaling to the
+ * camera preview size and re-encoding to JPEG as {@code AwsImageService} does before uploading.
+ * Run through {@link ImagePipelineBenchmarks} to get allocation rates as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageCodecBenchmark {
+
+    private static final int PREVIEW_WIDTH = 300;
+    private static final int PREVIEW_HEIGHT = 225;
+
+    @Param({"sample-cat.jpg", "sample-not-cat.jpg", "sample-not-a-cat-fail.jpg"})
+    public String sample;
+
+    private byte[] encoded;
+    private BufferedImage decoded;
+    private BufferedImage preview;
+    private FrameBufferPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        encoded = SampleImages.read(sample);
+        decoded = ImageIO.read(new ByteArrayInputStream(encoded));
+        preview = new BufferedImage(PREVIEW_WIDTH, PREVIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        pool = new FrameBufferPool(2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public BufferedImage decodeImageIO() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(encoded));
+    }
+
+    @Benchmark
+    public int decodeIntoPool() {
+        PooledFrame frame = pool.decode(ByteBuffer.wrap(encoded));
+        int rgb = frame.getImage().getRGB(0, 0);
+        frame.release();
+        return rgb;
+    }
+
+    /**
+     * How the camera panel used to make its preview. The scaled image is drawn once so that the scaling
+     * actually happens.
+     */
+    @Benchmark
+    public BufferedImage scaleGetScaledInstance() {
+        Image scaled = decoded.getScaledInstance(PREVIEW_WIDTH, PREVIEW_HEIGHT, Image.SCALE_SMOOTH);
+        Graphics2D g = preview.createGraphics();
+        try {
+            g.drawImage(scaled, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return preview;
+    }
+
+    @Benchmark
+    public BufferedImage scaleGraphics2D() {
+        Graphics2D g = preview.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(decoded, 0, 0, PREVIEW_WIDTH, PREVIEW_HEIGHT, null);
+        } finally {
+            g.dispose();
+        }
+        return preview;
+    }
+
+    /**
+     * The bilinear halving steps the camera panel uses now.
+     */
+    @Benchmark
+    public BufferedImage scaleStepwise() {
+        return CameraImageLoader.scale(decoded, PREVIEW_WIDTH, PREVIEW_HEIGHT);
+    }
+
+    @Benchmark
+    public int encodeJpeg() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIO.write(decoded, "jpg", os);
+        return os.size();
+    }
+}
@@ -0,0 +1,135 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.image.service.ImageKernels;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the raster-array kernels in {@link ImageKernels} with the per-pixel {@code getRGB} and
+ * Graphics2D code they replace, on a full HD frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageKernelsBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int MODEL_SIZE = 224;
+
+    @Param({"TYPE_3BYTE_BGR", "TYPE_INT_RGB"})
+    public String imageType;
+
+    private BufferedImage frame;
+    private BufferedImage previousFrame;
+    private byte[] gray;
+    private byte[] previousGray;
+    private byte[] grayOut;
+    private byte[] diffOut;
+    private byte[] resized;
+    private float[] normalized;
+    private BufferedImage resizedImage;
+
+    @Setup
+    public void setup() {
+        int type = "TYPE_INT_RGB".equals(imageType) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_3BYTE_BGR;
+        frame = randomImage(type, 1);
+        previousFrame = randomImage(type, 2);
+        gray = ImageKernels.grayscale(frame, null);
+        previousGray = ImageKernels.grayscale(previousFrame, null);
+        grayOut = new byte[WIDTH * HEIGHT];
+        diffOut = new byte[WIDTH * HEIGHT];
+        resized = new byte[MODEL_SIZE * MODEL_SIZE];
+        normalized = new float[MODEL_SIZE * MODEL_SIZE];
+        resizedImage = new BufferedImage(MODEL_SIZE, MODEL_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+    }
+
+    private static BufferedImage randomImage(int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        int[] row = new int[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                row[x] = random.nextInt(0x1000000);
+            }
+            image.setRGB(0, y, WIDTH, 1, row, 0, WIDTH);
+        }
+        return image;
+    }
+
+    @Benchmark
+    public byte[] grayscaleKernel() {
+        return ImageKernels.grayscale(frame, grayOut);
+    }
+
+    @Benchmark
+    public byte[] grayscaleGetRgbRows() {
+        return ImageKernels.grayscaleScalar(frame, grayOut);
+    }
+
+    @Benchmark
+    public byte[] grayscaleGetRgbPerPixel() {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int rgb = frame.getRGB(x, y);
+                grayOut[y * WIDTH + x] = (byte) ((77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF)) >> 8);
+            }
+        }
+        return grayOut;
+    }
+
+    @Benchmark
+    public byte[] resizeKernel() {
+        return ImageKernels.resizeBilinear(gray, WIDTH, HEIGHT, resized, MODEL_SIZE, MODEL_SIZE);
+    }
+
+    @Benchmark
+    public BufferedImage resizeGraphics2D() {
+        Graphics2D g = resizedImage.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(frame, 0, 0, MODEL_SIZE, MODEL_SIZE, null);
+        g.dispose();
+        return resizedImage;
+    }
+
+    @Benchmark
+    public float[] normalizeKernel() {
+        return ImageKernels.normalize(resized, normalized, 0.5f, 0.25f);
+    }
+
+    @Benchmark
+    public long absDiffKernel() {
+        return ImageKernels.absDiff(gray, previousGray, diffOut);
+    }
+
+    @Benchmark
+    public long absDiffGetRgbPerPixel() {
+        long total = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int a = frame.getRGB(x, y) & 0xFF;
+                int b = previousFrame.getRGB(x, y) & 0xFF;
+                total += Math.abs(a - b);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,33 @@
+package com.udacity.catpoint.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the image path benchmarks with the GC profiler, so every result comes with per-frame latency,
+ * throughput and allocation rate ({@code gc.alloc.rate.norm} is bytes allocated per frame):
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.udacity.catpoint.benchmarks.ImagePipelineBenchmarks [regex]
+ * </pre>
+ * The optional regex narrows the run down, for example to {@code ProcessImageBenchmark.processPooled}.
+ */
+public final class ImagePipelineBenchmarks {
+
+    private ImagePipelineBenchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        if (args.length > 0) {
+            options.include(args[0]);
+        } else {
+            options.include(ImageCodecBenchmark.class.getSimpleName())
+                    .include(ProcessImageBenchmark.class.getSimpleName());
+        }
+        Options built = options.addProfiler(GCProfiler.class).build();
+        new Runner(built).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.image.service.CascadingImageService;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.FrameBufferPool;
+import com.udacity.catpoint.image.service.ImageKernels;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.PooledFrame;
+import com.udacity.catpoint.image.service.RateLimitedImageService;
+import com.udacity.catpoint.image.service.TilingImageService;
+import com.udacity.catpoint.security.data.ColumnarSecurityRepository;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link SecurityService#processImage} on the cat sample picture, with the image service
+ * implementations that don't need a network connection. Each one is fed an already decoded image, the
+ * still encoded file, and a frame decoded into a pool.
+ * Run through {@link ImagePipelineBenchmarks} to get allocation rates as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessImageBenchmark {
+
+    @Param({"fake", "tiling", "cascading", "rateLimited"})
+    public String imageService;
+
+    private SecurityService securityService;
+    private ByteBuffer encoded;
+    private BufferedImage decoded;
+    private FrameBufferPool pool;
+    private ExecutorService tilePool;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] bytes = SampleImages.read("sample-cat.jpg");
+        encoded = ByteBuffer.wrap(bytes);
+        decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+        pool = new FrameBufferPool(2);
+        securityService = new SecurityService(new ColumnarSecurityRepository(), createImageService());
+    }
+
+    private ImageService createImageService() {
+        switch (imageService) {
+            case "fake":
+                return new FakeImageService();
+            case "tiling":
+                tilePool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                return new TilingImageService(new FakeImageService(), 512, 64, tilePool);
+            case "cascading":
+                //scores by average brightness, so the remote service is only asked about mid-grey pictures
+                return new CascadingImageService(image -> {
+                    int[] histogram = ImageKernels.histogram(ImageKernels.grayscale(image, null), null);
+                    long sum = 0;
+                    long count = 0;
+                    for (int i = 0; i < histogram.length; i++) {
+                        sum += (long) i * histogram[i];
+                        count += histogram[i];
+                    }
+                    return count == 0 ? 0 : 100f * sum / (count * 255f);
+                }, new FakeImageService(), 10);
+            case "rateLimited":
+                //limits far above what one thread can reach, so only the limiter's own overhead shows
+                return new RateLimitedImageService(new FakeImageService(), 1_000_000, 64);
+            default:
+                throw new IllegalArgumentException("Unknown image service " + imageService);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (tilePool != null) {
+            tilePool.shutdownNow();
+        }
+        pool.close();
+    }
+
+    @Benchmark
+    public void processDecoded() {
+        securityService.processImage(decoded);
+    }
+
+    @Benchmark
+    public void processEncoded() {
+        securityService.processImage(encoded);
+    }
+
+    @Benchmark
+    public void processPooled() {
+        PooledFrame frame = pool.decode(encoded);
+        try {
+            securityService.processImage(frame);
+        } finally {
+            frame.release();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.udacity.catpoint.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Finds the sample pictures that ship in the catpoint-parent directory. Benchmarks are normally run from
+ * there; when they are not, set the {@code catpoint.samples} system property to that directory.
+ */
+final class SampleImages {
+
+    private SampleImages() {
+    }
+
+    static byte[] read(String name) {
+        for (String dir : new String[]{System.getProperty("catpoint.samples", "."), ".."}) {
+            Path file = Path.of(dir, name);
+            if (Files.isRegularFile(file)) {
+                try {
+                    return Files.readAllBytes(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        throw new IllegalStateException("Sample image " + name + " not found, set -Dcatpoint.samples=<catpoint-parent dir>");
+    }
+}
@@ -0,0 +1,133 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.JdbcSecurityRepository;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.stream.Stream;
+
+/**
+ * Compares the JDBC repository (one row per sensor, batched updates) with the preferences repository
+ * (the whole sensor list rewritten as JSON on every change).
+ *
+ * The preferences repository writes to the real user preferences of the app, so the stored values are
+ * saved before the run and put back afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityRepositoryBenchmark {
+
+    @Param({"preferences", "jdbc"})
+    public String repositoryType;
+
+    //the preferences repository can't go much higher: its JSON value is limited to
+    // Preferences.MAX_VALUE_LENGTH characters, which is reached at about 75 sensors
+    @Param({"10", "50"})
+    public int sensorCount;
+
+    private final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+    private String[] savedKeys;
+    private String[] savedValues;
+    private Path databaseDir;
+    private SecurityRepository repository;
+    private List<Sensor> sensors;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, BackingStoreException {
+        savedKeys = prefs.keys();
+        savedValues = new String[savedKeys.length];
+        for (int i = 0; i < savedKeys.length; i++) {
+            savedValues[i] = prefs.get(savedKeys[i], null);
+        }
+        prefs.clear();
+
+        if ("jdbc".equals(repositoryType)) {
+            databaseDir = Files.createTempDirectory("catpoint-bench");
+            repository = new JdbcSecurityRepository("jdbc:h2:" + databaseDir.resolve("catpoint").toAbsolutePath());
+        } else {
+            repository = new PretendDatabaseSecurityRepositoryImpl();
+        }
+        sensors = new ArrayList<>(sensorCount);
+        for (int i = 0; i < sensorCount; i++) {
+            Sensor sensor = new Sensor("sensor " + i, SensorType.values()[i % SensorType.values().length]);
+            repository.addSensor(sensor);
+            sensors.add(sensor);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, BackingStoreException {
+        if (repository instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) repository).close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (databaseDir != null) {
+            try (Stream<Path> files = Files.walk(databaseDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+        prefs.clear();
+        for (int i = 0; i < savedKeys.length; i++) {
+            prefs.put(savedKeys[i], savedValues[i]);
+        }
+        prefs.flush();
+    }
+
+    /**
+     * One sensor changes, as when a door opens.
+     */
+    @Benchmark
+    public void updateOneSensor() {
+        Sensor sensor = sensors.get(next++ % sensorCount);
+        sensor.setActive(!sensor.getActive());
+        repository.updateSensor(sensor);
+    }
+
+    /**
+     * Every sensor changes, as when the system is armed and all sensors are reset.
+     */
+    @Benchmark
+    public void updateAllSensors() {
+        for (Sensor sensor : sensors) {
+            sensor.setActive(!sensor.getActive());
+        }
+        repository.updateSensors(sensors);
+    }
+
+    @Benchmark
+    public Object readSensors() {
+        return repository.getSensors();
+    }
+}
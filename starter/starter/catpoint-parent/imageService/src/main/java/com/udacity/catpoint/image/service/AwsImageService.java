@@ -17,6 +17,7 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 import java.util.stream.Collectors;
 
@@ -33,7 +34,7 @@ import java.util.stream.Collectors;
  *      aws.secret=[your Secret access key]
  *      aws.region=[an aws region of choice. For example: us-east-2]
  */
-public class AwsImageService {
+public class AwsImageService implements ImageService {
 
     private Logger log = LoggerFactory.getLogger(AwsImageService.class);
 
@@ -66,6 +67,7 @@ public class AwsImageService {
      * @param confidenceThreshhold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
      * @return
      */
+    @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
         Image awsImage = null;
         try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
@@ -75,6 +77,25 @@ public class AwsImageService {
             log.error("Error building image byte array", ioe);
             return false;
         }
+        return detectCat(awsImage, confidenceThreshhold);
+    }
+
+    /**
+     * Returns true if the provided encoded image contains a cat. JPEG and PNG bytes are uploaded as they are,
+     * skipping the decode/re-encode round trip. Other formats are decoded and converted to JPEG first.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @param confidenceThreshhold Minimum threshhold to consider for cat
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        if (!EncodedImages.isJpegOrPng(encodedImage)) {
+            return ImageService.super.imageContainsCat(encodedImage, confidenceThreshhold);
+        }
+        Image awsImage = Image.builder().bytes(SdkBytes.fromByteBuffer(encodedImage.duplicate())).build();
+        return detectCat(awsImage, confidenceThreshhold);
+    }
+
+    private boolean detectCat(Image awsImage, float confidenceThreshhold) {
         DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
         DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
         logLabelsForFun(response);
@@ -0,0 +1,74 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Local scorer for a fixed camera that compares each frame with a picture of the empty scene. Both are
+ * reduced to small grayscale thumbnails; a frame whose thumbnail is no further from the background's
+ * than the noise level is the empty scene and scores 0. A frame that differs might have a cat in it or
+ * might not, so it scores {@link Float#NaN} and {@link CascadingImageService} escalates it. The scorer
+ * never claims a cat on its own; it only saves remote calls for frames where nothing has changed.
+ *
+ * Until a background is set every frame scores {@link Float#NaN}. Encoded frames are only decoded at
+ * thumbnail resolution.
+ */
+public class BackgroundDifferenceScorer implements ImageScorer {
+
+    /**
+     * Mean gray level difference per pixel, out of 255, treated as sensor noise by default.
+     */
+    public static final float DEFAULT_NOISE_LEVEL = 6;
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private final float noiseLevel;
+    private volatile byte[] background;
+
+    /**
+     * @param noiseLevel Largest mean gray level difference per pixel, out of 255, for a frame to still
+     *                   count as the empty scene
+     */
+    public BackgroundDifferenceScorer(float noiseLevel) {
+        if (noiseLevel < 0 || noiseLevel > 255) {
+            throw new IllegalArgumentException("noiseLevel must be between 0 and 255: " + noiseLevel);
+        }
+        this.noiseLevel = noiseLevel;
+    }
+
+    /**
+     * Sets the picture of the scene without a cat that frames are compared with.
+     */
+    public void setBackground(BufferedImage emptyScene) {
+        background = thumbnail(emptyScene);
+    }
+
+    public void setBackground(ByteBuffer encodedEmptyScene) {
+        setBackground(EncodedImages.decodeSubsampled(encodedEmptyScene, WIDTH));
+    }
+
+    @Override
+    public float catConfidence(BufferedImage image) {
+        byte[] reference = background;
+        if (reference == null) {
+            return Float.NaN;
+        }
+        byte[] frame = thumbnail(image);
+        double meanDifference = (double) ImageKernels.absDiff(frame, reference, null) / frame.length;
+        return meanDifference <= noiseLevel ? 0f : Float.NaN;
+    }
+
+    @Override
+    public float catConfidence(ByteBuffer encodedImage) {
+        if (background == null) {
+            return Float.NaN;
+        }
+        return catConfidence(EncodedImages.decodeSubsampled(encodedImage, WIDTH));
+    }
+
+    private static byte[] thumbnail(BufferedImage image) {
+        byte[] gray = ImageKernels.grayscale(image, null);
+        return ImageKernels.resizeBilinear(gray, image.getWidth(), image.getHeight(), null, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,148 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Two-tier image service. Every image is first scored by a fast local {@link ImageScorer}; if that
+ * score is decisively above or below the requested threshhold the answer is returned straight away,
+ * otherwise the image is escalated to the (slow, expensive) remote service.
+ *
+ * A frame counts as decisive when its local score is at least {@code margin} points away from the
+ * threshhold. A margin of 0 never escalates, a margin of 100 always does. A score of {@link Float#NaN}
+ * means the scorer can't tell and is always escalated.
+ *
+ * For a fixed camera, {@link BackgroundDifferenceScorer} answers frames that match the empty scene
+ * locally and escalates everything else:
+ * <pre>
+ *     BackgroundDifferenceScorer scorer = new BackgroundDifferenceScorer(BackgroundDifferenceScorer.DEFAULT_NOISE_LEVEL);
+ *     scorer.setBackground(emptyScene);
+ *     ImageService service = new CascadingImageService(scorer, new AwsImageService(), 10);
+ * </pre>
+ */
+public class CascadingImageService implements ImageService {
+
+    private final Logger log = LoggerFactory.getLogger(CascadingImageService.class);
+
+    private final ImageScorer localScorer;
+    private final ImageService remoteService;
+    private final float margin;
+
+    private final LongAdder localDecisions = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private final LongAdder localNanos = new LongAdder();
+    private final LongAdder remoteNanos = new LongAdder();
+
+    public CascadingImageService(ImageScorer localScorer, ImageService remoteService, float margin) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("margin must not be negative: " + margin);
+        }
+        this.localScorer = localScorer;
+        this.remoteService = remoteService;
+        this.margin = margin;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        long start = System.nanoTime();
+        float score = localScorer.catConfidence(image);
+        localNanos.add(System.nanoTime() - start);
+        Boolean localVerdict = decide(score, confidenceThreshhold);
+        if (localVerdict != null) {
+            return localVerdict;
+        }
+        start = System.nanoTime();
+        try {
+            return remoteService.imageContainsCat(image, confidenceThreshhold);
+        } finally {
+            remoteNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The local scorer decodes as much of the image as it needs. Escalated images are passed to the remote
+     * service still encoded, so a remote service that accepts compressed bytes never re-encodes them.
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        long start = System.nanoTime();
+        float score = localScorer.catConfidence(encodedImage);
+        localNanos.add(System.nanoTime() - start);
+        Boolean localVerdict = decide(score, confidenceThreshhold);
+        if (localVerdict != null) {
+            return localVerdict;
+        }
+        start = System.nanoTime();
+        try {
+            return remoteService.imageContainsCat(encodedImage, confidenceThreshhold);
+        } finally {
+            remoteNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the local verdict, or null if the image has to be escalated
+     */
+    private Boolean decide(float score, float confidenceThreshhold) {
+        if (score >= confidenceThreshhold + margin) {
+            localDecisions.increment();
+            return Boolean.TRUE;
+        }
+        if (score <= confidenceThreshhold - margin) {
+            localDecisions.increment();
+            return Boolean.FALSE;
+        }
+        log.debug("Local score {} is within {} of threshhold {}, escalating", score, margin, confidenceThreshhold);
+        escalations.increment();
+        return null;
+    }
+
+    /**
+     * @return number of images answered by the local scorer alone
+     */
+    public long getLocalDecisions() {
+        return localDecisions.sum();
+    }
+
+    /**
+     * @return number of images that had to be sent to the remote service
+     */
+    public long getEscalations() {
+        return escalations.sum();
+    }
+
+    /**
+     * @return fraction of images escalated to the remote service, between 0 and 1
+     */
+    public double getEscalationRate() {
+        long escalated = escalations.sum();
+        long total = escalated + localDecisions.sum();
+        return total == 0 ? 0.0 : (double) escalated / total;
+    }
+
+    /**
+     * @return mean time spent in the local scorer per image, in milliseconds
+     */
+    public double getMeanLocalLatencyMillis() {
+        long total = escalations.sum() + localDecisions.sum();
+        return total == 0 ? 0.0 : localNanos.sum() / 1_000_000.0 / total;
+    }
+
+    /**
+     * @return mean time spent in the remote service per escalated image, in milliseconds
+     */
+    public double getMeanRemoteLatencyMillis() {
+        long escalated = escalations.sum();
+        return escalated == 0 ? 0.0 : remoteNanos.sum() / 1_000_000.0 / escalated;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CascadingImageService[escalationRate=%.3f, local=%.3fms, remote=%.3fms]",
+                getEscalationRate(), getMeanLocalLatencyMillis(), getMeanRemoteLatencyMillis());
+    }
+}
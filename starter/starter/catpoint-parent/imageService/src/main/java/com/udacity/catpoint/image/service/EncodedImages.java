@@ -0,0 +1,175 @@
+package com.udacity.catpoint.image.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * Utilities for handling images that are still in their encoded (compressed) form.
+ */
+public final class EncodedImages {
+
+    private static final byte[] JPEG_SIGNATURE = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private EncodedImages() {
+    }
+
+    /**
+     * Memory-maps an image file read-only. The returned buffer can be handed to
+     * {@link ImageService#imageContainsCat(ByteBuffer, float)} without copying it onto the heap.
+     * @param file Image file to map
+     * @return A read-only buffer over the whole file
+     * @throws IOException if the file cannot be opened
+     */
+    public static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Decodes an encoded image into pixels. The buffer's position is not changed.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @return The decoded image
+     * @throws IllegalArgumentException if the bytes are not in a format ImageIO understands
+     * @throws UncheckedIOException if the image data is corrupt
+     */
+    public static BufferedImage decode(ByteBuffer encodedImage) {
+        try (InputStream in = new ByteBufferInputStream(encodedImage.duplicate())) {
+            BufferedImage image = ImageIO.read(in);
+            if (image == null) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            return image;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to decode image", ioe);
+        }
+    }
+
+    /**
+     * Decodes only every n-th pixel of every n-th row of an encoded image, with n chosen so the result
+     * is at least the given width, or the whole image if it is narrower. Much cheaper than a full decode
+     * when only a thumbnail is needed. The buffer's position is not changed.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @param minWidth Smallest width the decoded image may have
+     * @return The decoded image
+     * @throws IllegalArgumentException if the bytes are not in a format ImageIO understands
+     * @throws UncheckedIOException if the image data is corrupt
+     */
+    public static BufferedImage decodeSubsampled(ByteBuffer encodedImage, int minWidth) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteBufferInputStream(encodedImage.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, reader.getWidth(0) / Math.max(1, minWidth));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to decode image", ioe);
+        }
+    }
+
+    /**
+     * Reads an encoded image's width and height from its header, without decoding any pixels.
+     * The buffer's position is not changed.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @return The image dimensions
+     * @throws IllegalArgumentException if the bytes are not in a format ImageIO understands
+     * @throws UncheckedIOException if the header is corrupt
+     */
+    public static Dimension size(ByteBuffer encodedImage) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteBufferInputStream(encodedImage.duplicate()))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to read image header", ioe);
+        }
+    }
+
+    /**
+     * @return true if the buffer starts with a JPEG or PNG signature
+     */
+    public static boolean isJpegOrPng(ByteBuffer encodedImage) {
+        return startsWith(encodedImage, JPEG_SIGNATURE) || startsWith(encodedImage, PNG_SIGNATURE);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] signature) {
+        if (buffer.remaining() < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (buffer.get(buffer.position() + i) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
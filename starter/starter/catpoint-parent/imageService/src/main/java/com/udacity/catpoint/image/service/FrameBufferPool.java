@@ -0,0 +1,270 @@
+package com.udacity.catpoint.image.service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable images for continuous capture, where every frame has the same size and type. Frames
+ * are decoded straight into pooled images with {@link ImageReadParam#setDestination}, so once the pool
+ * is warm a frame costs no new pixel buffers, just the decode itself.
+ *
+ * Images are pooled by width, height and image type, with at most {@code maxIdlePerShape} idle images of
+ * each shape; extra images returned to the pool are left to the garbage collector. Only the
+ * {@code maxShapes} most recently used shapes keep idle images, so a camera that changes resolution
+ * doesn't leave its old frames in the pool forever. Each decoding thread keeps its own image reader and
+ * reuses it while the format stays the same; {@link #close()} disposes them.
+ */
+public class FrameBufferPool implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_SHAPES = 4;
+
+    private final int maxIdlePerShape;
+    private final int maxShapes;
+    //idle images by shape, least recently used shape first, guarded by itself
+    private final LinkedHashMap<Shape, ArrayDeque<BufferedImage>> idle;
+    private final ThreadLocal<ImageReader> readers = new ThreadLocal<>();
+    private final Set<ImageReader> allReaders = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    /**
+     * @param maxIdlePerShape Maximum number of idle images kept for each size and type
+     */
+    public FrameBufferPool(int maxIdlePerShape) {
+        this(maxIdlePerShape, DEFAULT_MAX_SHAPES);
+    }
+
+    /**
+     * @param maxIdlePerShape Maximum number of idle images kept for each size and type
+     * @param maxShapes Maximum number of sizes and types idle images are kept for
+     */
+    public FrameBufferPool(int maxIdlePerShape, int maxShapes) {
+        if (maxIdlePerShape < 1) {
+            throw new IllegalArgumentException("maxIdlePerShape must be positive");
+        }
+        if (maxShapes < 1) {
+            throw new IllegalArgumentException("maxShapes must be positive");
+        }
+        this.maxIdlePerShape = maxIdlePerShape;
+        this.maxShapes = maxShapes;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Shape, ArrayDeque<BufferedImage>> eldest) {
+                return size() > FrameBufferPool.this.maxShapes;
+            }
+        };
+    }
+
+    /**
+     * Borrows an image of the given shape. Its pixels are whatever the previous user left behind.
+     * @param width Image width
+     * @param height Image height
+     * @param imageType One of the {@code BufferedImage.TYPE_*} constants other than {@code TYPE_CUSTOM}
+     * @return A frame holding the only reference to the image
+     */
+    public PooledFrame acquire(int width, int height, int imageType) {
+        BufferedImage image = null;
+        synchronized (idle) {
+            ArrayDeque<BufferedImage> images = idle.get(new Shape(width, height, imageType));
+            if (images != null) {
+                image = images.pollFirst();
+            }
+        }
+        if (image == null) {
+            allocations.increment();
+            image = new BufferedImage(width, height, imageType);
+        } else {
+            reuses.increment();
+        }
+        return new PooledFrame(this, image);
+    }
+
+    /**
+     * Decodes an encoded image into a pooled image. The buffer's position is not changed.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @return A frame holding the only reference to the decoded image
+     * @throws IllegalArgumentException if the bytes are not in a format ImageIO understands
+     * @throws UncheckedIOException if the image data is corrupt
+     */
+    public PooledFrame decode(ByteBuffer encodedImage) {
+        return decode(encodedImage, 0, 0);
+    }
+
+    /**
+     * Decodes an encoded image into a pooled image, skipping rows and columns while decoding when the
+     * image is much bigger than needed. The largest whole-number subsampling step is used that still
+     * leaves the image at least {@code minWidth} by {@code minHeight}. The buffer's position is not changed.
+     * @param encodedImage Encoded image bytes between position and limit
+     * @param minWidth Smallest acceptable width of the decoded image, or 0 for full resolution
+     * @param minHeight Smallest acceptable height of the decoded image, or 0 for full resolution
+     * @return A frame holding the only reference to the decoded image
+     * @throws IllegalArgumentException if the bytes are not in a format ImageIO understands
+     * @throws UncheckedIOException if the image data is corrupt
+     * @throws IllegalStateException if the pool has been closed
+     */
+    public PooledFrame decode(ByteBuffer encodedImage, int minWidth, int minHeight) {
+        if (closed) {
+            throw new IllegalStateException("Frame buffer pool is closed");
+        }
+        try (ImageInputStream in = new MemoryCacheImageInputStream(
+                new EncodedImages.ByteBufferInputStream(encodedImage.duplicate()))) {
+            ImageReader reader = readerFor(in);
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = minWidth <= 0 || minHeight <= 0 ? 1 : Math.min(width / minWidth, height / minHeight);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                    width = (width + step - 1) / step;
+                    height = (height + step - 1) / step;
+                }
+
+                ImageTypeSpecifier type = reader.getImageTypes(0).next();
+                PooledFrame frame = type.getBufferedImageType() == BufferedImage.TYPE_CUSTOM
+                        ? unpooled(type.createBufferedImage(width, height))
+                        : acquire(width, height, type.getBufferedImageType());
+                try {
+                    param.setDestination(frame.getImage());
+                    reader.read(0, param);
+                    return frame;
+                } catch (IOException | RuntimeException e) {
+                    frame.release();
+                    throw e;
+                }
+            } finally {
+                reader.setInput(null);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to decode image", ioe);
+        }
+    }
+
+    private ImageReader readerFor(ImageInputStream in) throws IOException {
+        ImageReader reader = readers.get();
+        if (reader != null && reader.getOriginatingProvider().canDecodeInput(in)) {
+            return reader;
+        }
+        Iterator<ImageReader> found = ImageIO.getImageReaders(in);
+        if (!found.hasNext()) {
+            throw new IllegalArgumentException("Unsupported image format");
+        }
+        if (reader != null) {
+            allReaders.remove(reader);
+            reader.dispose();
+        }
+        reader = found.next();
+        readers.set(reader);
+        allReaders.add(reader);
+        return reader;
+    }
+
+    private PooledFrame unpooled(BufferedImage image) {
+        allocations.increment();
+        return new PooledFrame(this, image);
+    }
+
+    /**
+     * Takes back an image whose last reference was released.
+     */
+    void recycle(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_CUSTOM) {
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        synchronized (idle) {
+            ArrayDeque<BufferedImage> images = idle.computeIfAbsent(
+                    new Shape(image.getWidth(), image.getHeight(), image.getType()), s -> new ArrayDeque<>());
+            if (images.size() < maxIdlePerShape) {
+                images.addFirst(image);
+            }
+        }
+    }
+
+    /**
+     * @return number of idle images of the given shape
+     */
+    int idleCount(int width, int height, int imageType) {
+        synchronized (idle) {
+            ArrayDeque<BufferedImage> images = idle.get(new Shape(width, height, imageType));
+            return images == null ? 0 : images.size();
+        }
+    }
+
+    /**
+     * Disposes every thread's image reader and drops the idle images. Frames that are still held may be
+     * used and released as usual, but their images are not pooled again. Must not be called while a
+     * decode is in progress; decoding afterwards fails.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        readers.remove();
+        for (ImageReader reader : allReaders) {
+            reader.dispose();
+        }
+        allReaders.clear();
+        synchronized (idle) {
+            idle.clear();
+        }
+    }
+
+    /**
+     * @return number of images the pool had to create because none of the right shape was idle
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return number of times an idle image was handed out again
+     */
+    public long getReuses() {
+        return reuses.sum();
+    }
+
+    private static final class Shape {
+        private final int width;
+        private final int height;
+        private final int type;
+
+        Shape(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Shape)) return false;
+            Shape shape = (Shape) o;
+            return width == shape.width && height == shape.height && type == shape.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * width + height) + type;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * Preprocessing kernels for local image analysis. They work on the image's raster arrays instead of
+ * going through {@link BufferedImage#getRGB(int, int)} one pixel at a time, and produce 8-bit grayscale
+ * planes (one byte per pixel, row after row) that the other kernels operate on.
+ *
+ * The straight-line loops over primitive arrays, such as the grayscale conversion of packed pixels,
+ * {@link #normalize} and {@link #absDiff}, have no calls or data-dependent indexing, so the JIT may
+ * auto-vectorize them. {@link #resizeBilinear} gathers source pixels by computed offsets and
+ * {@link #histogram} indexes by pixel value, so those stay scalar loops; they still avoid per-pixel calls
+ * and allocation. Image types without a fast path fall back to reading whole rows
+ * through {@code getRGB}. All kernels write into a caller supplied array so that frames can be processed
+ * without allocating.
+ */
+public final class ImageKernels {
+
+    //ITU-R BT.601 luma weights in 8.8 fixed point
+    private static final int R_WEIGHT = 77;
+    private static final int G_WEIGHT = 150;
+    private static final int B_WEIGHT = 29;
+
+    private ImageKernels() {
+    }
+
+    /**
+     * Converts an image to an 8-bit grayscale plane.
+     * @param image Image to convert. Subimages are supported
+     * @param dst Destination of at least width * height bytes, or null to allocate one
+     * @return the grayscale plane
+     */
+    public static byte[] grayscale(BufferedImage image, byte[] dst) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        dst = planeFor(dst, width, height);
+        Raster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                grayscalePackedInt(raster, dst, width, height);
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                grayscaleInterleavedByte(raster, dst, width, height);
+                break;
+            default:
+                grayscaleRows(image, dst, width, height);
+        }
+        return dst;
+    }
+
+    /**
+     * Reference conversion through {@code getRGB}, one row at a time. Used for image types without a fast
+     * path, and gives the same result as the fast paths for color images. Gray images differ slightly
+     * because {@code getRGB} converts gray samples to sRGB, whereas the fast path copies them as stored.
+     * @param image Image to convert
+     * @param dst Destination of at least width * height bytes, or null to allocate one
+     * @return the grayscale plane
+     */
+    public static byte[] grayscaleScalar(BufferedImage image, byte[] dst) {
+        dst = planeFor(dst, image.getWidth(), image.getHeight());
+        grayscaleRows(image, dst, image.getWidth(), image.getHeight());
+        return dst;
+    }
+
+    private static byte[] planeFor(byte[] dst, int width, int height) {
+        if (dst == null) {
+            return new byte[width * height];
+        }
+        if (dst.length < width * height) {
+            throw new IllegalArgumentException("Destination holds " + dst.length + " pixels, need " + width * height);
+        }
+        return dst;
+    }
+
+    private static void grayscaleRows(BufferedImage image, byte[] dst, int width, int height) {
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                dst[out + x] = (byte) ((R_WEIGHT * ((rgb >> 16) & 0xFF) + G_WEIGHT * ((rgb >> 8) & 0xFF)
+                        + B_WEIGHT * (rgb & 0xFF)) >> 8);
+            }
+        }
+    }
+
+    private static void grayscalePackedInt(int[] pixels, int offset, int stride,
+                                           byte[] dst, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int in = offset + y * stride;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int rgb = pixels[in + x];
+                dst[out + x] = (byte) ((R_WEIGHT * ((rgb >> 16) & 0xFF) + G_WEIGHT * ((rgb >> 8) & 0xFF)
+                        + B_WEIGHT * (rgb & 0xFF)) >> 8);
+            }
+        }
+    }
+
+    private static void grayscalePackedInt(Raster raster, byte[] dst, int width, int height) {
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        int offset = buffer.getOffset()
+                + model.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+        grayscalePackedInt(buffer.getData(), offset, model.getScanlineStride(), dst, width, height);
+    }
+
+    private static void grayscaleInterleavedByte(Raster raster, byte[] dst, int width, int height) {
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+        byte[] data = buffer.getData();
+        int stride = model.getScanlineStride();
+        int pixelStride = model.getPixelStride();
+        int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                - raster.getSampleModelTranslateX() * pixelStride;
+        int[] bands = model.getBandOffsets();
+
+        if (bands.length == 1) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(data, base + y * stride + bands[0], dst, y * width, width);
+            }
+            return;
+        }
+        //band offsets are given in raster order, which is R, G, B(, A) for the standard byte types
+        int r = bands[0];
+        int g = bands[1];
+        int b = bands[2];
+        for (int y = 0; y < height; y++) {
+            int in = base + y * stride;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int p = in + x * pixelStride;
+                dst[out + x] = (byte) ((R_WEIGHT * (data[p + r] & 0xFF) + G_WEIGHT * (data[p + g] & 0xFF)
+                        + B_WEIGHT * (data[p + b] & 0xFF)) >> 8);
+            }
+        }
+    }
+
+    /**
+     * Bilinear resize of a grayscale plane. Coordinates and weights are computed once per column and row,
+     * so the inner loop is only loads, multiplies and adds.
+     * @param src Source plane
+     * @param srcWidth Source width
+     * @param srcHeight Source height
+     * @param dst Destination of at least dstWidth * dstHeight bytes, or null to allocate one
+     * @param dstWidth Destination width
+     * @param dstHeight Destination height
+     * @return the resized plane
+     */
+    public static byte[] resizeBilinear(byte[] src, int srcWidth, int srcHeight, byte[] dst, int dstWidth, int dstHeight) {
+        dst = planeFor(dst, dstWidth, dstHeight);
+        int[] x0 = new int[dstWidth];
+        int[] x1 = new int[dstWidth];
+        int[] wx = new int[dstWidth];
+        weights(srcWidth, dstWidth, x0, x1, wx);
+        int[] y0 = new int[dstHeight];
+        int[] y1 = new int[dstHeight];
+        int[] wy = new int[dstHeight];
+        weights(srcHeight, dstHeight, y0, y1, wy);
+
+        for (int y = 0; y < dstHeight; y++) {
+            int top = y0[y] * srcWidth;
+            int bottom = y1[y] * srcWidth;
+            int fy = wy[y];
+            int out = y * dstWidth;
+            for (int x = 0; x < dstWidth; x++) {
+                int fx = wx[x];
+                int upper = (src[top + x0[x]] & 0xFF) * (256 - fx) + (src[top + x1[x]] & 0xFF) * fx;
+                int lower = (src[bottom + x0[x]] & 0xFF) * (256 - fx) + (src[bottom + x1[x]] & 0xFF) * fx;
+                dst[out + x] = (byte) ((upper * (256 - fy) + lower * fy + (1 << 15)) >> 16);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * Source sample positions and 8-bit weights for one axis, with pixel centers aligned.
+     */
+    private static void weights(int srcLength, int dstLength, int[] lo, int[] hi, int[] weight) {
+        double scale = (double) srcLength / dstLength;
+        for (int i = 0; i < dstLength; i++) {
+            double pos = Math.max(0, (i + 0.5) * scale - 0.5);
+            int p = Math.min((int) pos, srcLength - 1);
+            lo[i] = p;
+            hi[i] = Math.min(p + 1, srcLength - 1);
+            weight[i] = (int) ((pos - p) * 256);
+        }
+    }
+
+    /**
+     * Converts a grayscale plane to floats for a classifier: {@code (pixel / 255 - mean) / stdDev}.
+     * @param src Grayscale plane
+     * @param dst Destination of at least src.length floats, or null to allocate one
+     * @return the normalized values
+     */
+    public static float[] normalize(byte[] src, float[] dst, float mean, float stdDev) {
+        if (dst == null) {
+            dst = new float[src.length];
+        }
+        float scale = 1f / (255f * stdDev);
+        float offset = -mean / stdDev;
+        for (int i = 0; i < src.length; i++) {
+            dst[i] = (src[i] & 0xFF) * scale + offset;
+        }
+        return dst;
+    }
+
+    /**
+     * Per-pixel absolute difference of two planes of the same size, for frame differencing.
+     * @param dst Destination for the difference plane, or null if only the total is needed
+     * @return sum of all differences
+     */
+    public static long absDiff(byte[] a, byte[] b, byte[] dst) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Planes differ in size: " + a.length + " and " + b.length);
+        }
+        long total = 0;
+        if (dst == null) {
+            for (int i = 0; i < a.length; i++) {
+                total += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+            }
+            return total;
+        }
+        for (int i = 0; i < a.length; i++) {
+            int d = Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+            dst[i] = (byte) d;
+            total += d;
+        }
+        return total;
+    }
+
+    /**
+     * Counts pixels per gray level.
+     * @param dst Destination of 256 bins, or null to allocate one. Existing counts are overwritten
+     * @return the histogram
+     */
+    public static int[] histogram(byte[] src, int[] dst) {
+        if (dst == null) {
+            dst = new int[256];
+        } else {
+            Arrays.fill(dst, 0, 256, 0);
+        }
+        for (byte v : src) {
+            dst[v & 0xFF]++;
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,24 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap, local estimate of how likely an image is to contain a cat. Scores use the same
+ * 0-100 scale as the confidence threshhold passed to {@link ImageService#imageContainsCat}.
+ * A scorer that can't tell returns {@link Float#NaN}, which {@link CascadingImageService} always
+ * escalates. See {@link BackgroundDifferenceScorer} for the scorer that ships with the service.
+ */
+@FunctionalInterface
+public interface ImageScorer {
+    float catConfidence(BufferedImage image);
+
+    /**
+     * Scores an image that is still encoded. Scorers that only need a small image should override this
+     * to decode less than the whole image. The default decodes it fully.
+     * @param encodedImage Encoded image bytes between position and limit. The buffer's position is not changed
+     */
+    default float catConfidence(ByteBuffer encodedImage) {
+        return catConfidence(EncodedImages.decode(encodedImage));
+    }
+}
@@ -1,7 +1,19 @@
 package com.udacity.catpoint.image.service;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 
 public interface ImageService {
     boolean imageContainsCat(BufferedImage image, float confidenceThreshhold);
+
+    /**
+     * Returns true if the provided encoded image (for example the raw bytes of a JPEG file) contains a cat.
+     * Services that can work on compressed images directly should override this to avoid a decode. The
+     * default implementation decodes the image and calls {@link #imageContainsCat(BufferedImage, float)}.
+     * @param encodedImage Encoded image bytes between position and limit. The buffer's position is not changed
+     * @param confidenceThreshhold Minimum threshhold to consider for cat
+     */
+    default boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        return imageContainsCat(EncodedImages.decode(encodedImage), confidenceThreshhold);
+    }
 }
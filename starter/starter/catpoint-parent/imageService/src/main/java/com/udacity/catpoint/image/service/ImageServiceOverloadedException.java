@@ -0,0 +1,14 @@
+package com.udacity.catpoint.image.service;
+
+/**
+ * Thrown when an image service turns a request away rather than queueing it, because too many requests
+ * are already waiting or the request waited too long.
+ */
+public class ImageServiceOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ImageServiceOverloadedException(String message) {
+        super(message);
+    }
+}
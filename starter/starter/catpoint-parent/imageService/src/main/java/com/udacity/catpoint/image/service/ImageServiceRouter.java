@@ -0,0 +1,567 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Image service that forwards every request to a primary backend chosen by configuration, and can
+ * change backends while running. Backends are registered by name and created the first time they are
+ * configured. A new configuration applies to requests that start after it; requests already running
+ * finish on the backend they started on. A backend the new configuration no longer uses is dropped, and
+ * closed if it is {@link AutoCloseable} once the last request running on it finishes; configuring it
+ * again later creates a new one.
+ *
+ * A shadow backend can be configured alongside the primary. A sample of requests is sent to the shadow
+ * too, after the primary has answered, on the router's own threads; the caller only ever gets the
+ * primary's verdict and never waits for the shadow. {@link ShadowStats} compares the two backends' verdicts
+ * and latencies, so a candidate can be measured on real traffic before it is made the primary. Shadow
+ * requests that find the shadow queue full are skipped rather than queued without bound, before the
+ * caller's image is copied for them.
+ *
+ * Configuration properties:
+ * <ul>
+ *     <li>{@value #PRIMARY}: name of the primary backend, required</li>
+ *     <li>{@value #SHADOW}: name of the shadow backend, none if missing or empty</li>
+ *     <li>{@value #SHADOW_SAMPLE_RATE}: fraction of requests also sent to the shadow, 1 if missing</li>
+ * </ul>
+ */
+public class ImageServiceRouter implements ImageService, AutoCloseable {
+
+    public static final String PRIMARY = "imageService.primary";
+    public static final String SHADOW = "imageService.shadow";
+    public static final String SHADOW_SAMPLE_RATE = "imageService.shadowSampleRate";
+
+    private static final int SHADOW_QUEUE = 32;
+
+    private final Logger log = LoggerFactory.getLogger(ImageServiceRouter.class);
+
+    private final Map<String, Supplier<? extends ImageService>> factories;
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor shadowExecutor;
+    //shadow requests running or queued, so a request is only copied once it is sure of a place
+    private final Semaphore shadowSlots;
+    private ScheduledExecutorService watcher;
+    private volatile Route route;
+
+    /**
+     * @param factories Backends that may be configured, by name
+     * @param defaults Configuration to start with
+     * @param shadowThreads Number of shadow requests run at the same time
+     */
+    public ImageServiceRouter(Map<String, Supplier<? extends ImageService>> factories, Properties defaults,
+                              int shadowThreads) {
+        this.factories = Map.copyOf(factories);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.shadowExecutor = new ThreadPoolExecutor(shadowThreads, shadowThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SHADOW_QUEUE), r -> {
+                    Thread t = new Thread(r, "image-service-shadow-" + threadCount.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.shadowSlots = new Semaphore(shadowThreads + SHADOW_QUEUE);
+        configure(defaults);
+    }
+
+    /**
+     * Switches backends. Stats for the previous shadow are logged and a new set is started.
+     * @throws IllegalArgumentException if the configuration names an unknown backend or is invalid,
+     * in which case the current backends are kept
+     */
+    public void configure(Properties config) {
+        String primaryName = config.getProperty(PRIMARY, "").trim();
+        String shadowName = config.getProperty(SHADOW, "").trim();
+        double sampleRate;
+        try {
+            sampleRate = Double.parseDouble(config.getProperty(SHADOW_SAMPLE_RATE, "1").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + SHADOW_SAMPLE_RATE + ": " + config.getProperty(SHADOW_SAMPLE_RATE));
+        }
+        if (primaryName.isEmpty()) {
+            throw new IllegalArgumentException(PRIMARY + " is not set");
+        }
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException(SHADOW_SAMPLE_RATE + " must be between 0 and 1: " + sampleRate);
+        }
+
+        synchronized (this) {
+            Route previous = route;
+            if (previous != null && previous.primaryName.equals(primaryName) && previous.shadowName.equals(shadowName)
+                    && previous.sampleRate == sampleRate) {
+                return;
+            }
+            Backend primary = backend(primaryName);
+            Backend shadow = shadowName.isEmpty() ? null : backend(shadowName);
+            Route next = new Route(primaryName, primary, shadowName, shadow, sampleRate);
+            route = next;
+            if (previous != null) {
+                retireUnless(previous.primary, next);
+                retireUnless(previous.shadow, next);
+                if (previous.shadow != null) {
+                    log.info("Shadow results for {}: {}", previous.shadowName, previous.stats);
+                }
+            }
+            log.info("Image service routed to {}{}", primaryName,
+                    shadow == null ? "" : ", shadowed by " + shadowName + " at rate " + sampleRate);
+        }
+    }
+
+    private Backend backend(String name) {
+        Supplier<? extends ImageService> factory = factories.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown image service: " + name);
+        }
+        return backends.computeIfAbsent(name, n -> new Backend(n, factory.get()));
+    }
+
+    /**
+     * Drops a backend the given route doesn't use, closing it once no request is running on it.
+     */
+    private void retireUnless(Backend backend, Route current) {
+        if (backend != null && (current == null || (backend != current.primary && backend != current.shadow))
+                && backends.remove(backend.name, backend)) {
+            backend.retire();
+        }
+    }
+
+    /**
+     * Reads a configuration file and applies it.
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if the configuration is invalid
+     */
+    public void configure(Path file) throws IOException {
+        Properties config = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            config.load(in);
+        }
+        configure(config);
+    }
+
+    /**
+     * Re-reads a configuration file whenever it changes. While the file is missing, or after it was
+     * changed to an invalid configuration, which is logged, the current backends are kept.
+     * @param file Configuration file to watch
+     * @param interval How often to check the file for changes
+     */
+    public synchronized void watch(Path file, Duration interval) {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "image-service-config");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicLong lastModified = new AtomicLong(Long.MIN_VALUE);
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                if (!Files.exists(file)) {
+                    return;
+                }
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (lastModified.getAndSet(modified.toMillis()) != modified.toMillis()) {
+                    configure(file);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Unable to apply image service configuration from {}", file, e);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        Route r = acquireRoute();
+        long start = System.nanoTime();
+        boolean verdict;
+        try {
+            verdict = r.primary.service.imageContainsCat(image, confidenceThreshhold);
+        } finally {
+            r.primary.release();
+        }
+        if (image == null) {
+            //nothing to copy or compare; the primary has answered for it
+            if (r.sampled()) {
+                r.stats.skipped.increment();
+            }
+        } else if (r.sampled()) {
+            //the caller may reuse its image as soon as we return, so the shadow gets its own copy
+            shadow(r, verdict, System.nanoTime() - start, () -> {
+                BufferedImage copy = new BufferedImage(image.getColorModel(), image.copyData(null),
+                        image.isAlphaPremultiplied(), null);
+                return () -> r.shadow.service.imageContainsCat(copy, confidenceThreshhold);
+            });
+        }
+        return verdict;
+    }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        int position = encodedImage == null ? 0 : encodedImage.position();
+        int limit = encodedImage == null ? 0 : encodedImage.limit();
+        Route r = acquireRoute();
+        long start = System.nanoTime();
+        boolean verdict;
+        try {
+            verdict = r.primary.service.imageContainsCat(encodedImage, confidenceThreshhold);
+        } finally {
+            r.primary.release();
+        }
+        if (encodedImage == null) {
+            if (r.sampled()) {
+                r.stats.skipped.increment();
+            }
+        } else if (r.sampled()) {
+            //the caller may reuse its buffer as soon as we return, so the shadow gets its own copy of the bytes
+            shadow(r, verdict, System.nanoTime() - start, () -> {
+                ByteBuffer copy = ByteBuffer.allocate(limit - position);
+                copy.put(encodedImage.duplicate().limit(limit).position(position)).flip();
+                return () -> r.shadow.service.imageContainsCat(copy, confidenceThreshhold);
+            });
+        }
+        return verdict;
+    }
+
+    /**
+     * @return the current route, with a request counted against its primary
+     * @throws IllegalStateException if the router is closed
+     */
+    private Route acquireRoute() {
+        while (true) {
+            Route r = route;
+            if (r.primary.acquire()) {
+                return r;
+            }
+            if (route == r) {
+                throw new IllegalStateException("Image service router is closed");
+            }
+            //the primary was retired by a new configuration, which the next attempt will see
+        }
+    }
+
+    /**
+     * Sends a request to the shadow if it has room for it. Nothing that goes wrong here reaches the caller,
+     * whose request the primary has already answered.
+     * @param prepare Copies what the shadow needs from the caller, called only once the request has a place
+     */
+    private void shadow(Route r, boolean primaryVerdict, long primaryNanos, Supplier<BooleanSupplier> prepare) {
+        if (!shadowSlots.tryAcquire()) {
+            r.stats.skipped.increment();
+            return;
+        }
+        if (!r.shadow.acquire()) {
+            shadowSlots.release();
+            r.stats.skipped.increment();
+            return;
+        }
+        boolean queued = false;
+        try {
+            BooleanSupplier request;
+            try {
+                request = prepare.get();
+            } catch (RuntimeException e) {
+                r.stats.errors.increment();
+                log.debug("Unable to copy request for shadow image service {}", r.shadowName, e);
+                return;
+            }
+            shadowExecutor.execute(new ShadowRequest(r, primaryVerdict, primaryNanos, request));
+            queued = true;
+        } catch (RejectedExecutionException e) {
+            r.stats.skipped.increment();
+        } finally {
+            if (!queued) {
+                r.shadow.release();
+                shadowSlots.release();
+            }
+        }
+    }
+
+    /**
+     * A request holding a shadow slot and a use of the shadow backend, which it gives back when it is done
+     * or dropped.
+     */
+    private final class ShadowRequest implements Runnable {
+        private final Route route;
+        private final boolean primaryVerdict;
+        private final long primaryNanos;
+        private final BooleanSupplier request;
+
+        ShadowRequest(Route route, boolean primaryVerdict, long primaryNanos, BooleanSupplier request) {
+            this.route = route;
+            this.primaryVerdict = primaryVerdict;
+            this.primaryNanos = primaryNanos;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                boolean verdict = request.getAsBoolean();
+                route.stats.record(primaryVerdict, primaryNanos, verdict, System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                route.stats.errors.increment();
+                log.debug("Shadow image service {} failed", route.shadowName, e);
+            } finally {
+                drop();
+            }
+        }
+
+        void drop() {
+            route.shadow.release();
+            shadowSlots.release();
+        }
+    }
+
+    public String getPrimaryName() {
+        return route.primaryName;
+    }
+
+    /**
+     * @return the shadow backend's name, or an empty string if there is none
+     */
+    public String getShadowName() {
+        return route.shadowName;
+    }
+
+    /**
+     * @return the comparison between the current primary and shadow, since they were configured
+     */
+    public ShadowStats getShadowStats() {
+        return route.stats;
+    }
+
+    /**
+     * Stops watching the configuration file and the shadow threads, and closes the backends once the requests
+     * running on them finish. Shadow requests already queued are dropped, and new requests fail.
+     */
+    @Override
+    public synchronized void close() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+        for (Runnable dropped : shadowExecutor.shutdownNow()) {
+            ((ShadowRequest) dropped).drop();
+        }
+        Route r = route;
+        retireUnless(r.primary, null);
+        retireUnless(r.shadow, null);
+    }
+
+    /**
+     * A configured backend and the requests running on it.
+     */
+    private final class Backend {
+        private final String name;
+        private final ImageService service;
+        //requests running on the backend, or -1 once it has been closed
+        private final AtomicInteger users = new AtomicInteger();
+        private volatile boolean retired;
+
+        Backend(String name, ImageService service) {
+            this.name = name;
+            this.service = service;
+        }
+
+        /**
+         * @return false if the backend has been closed, in which case the request must not use it
+         */
+        boolean acquire() {
+            while (true) {
+                int n = users.get();
+                if (n < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0 && retired) {
+                closeIfUnused();
+            }
+        }
+
+        void retire() {
+            retired = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (users.compareAndSet(0, -1) && service instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) service).close();
+                    log.info("Closed image service {}", name);
+                } catch (Exception e) {
+                    log.warn("Unable to close image service {}", name, e);
+                }
+            }
+        }
+    }
+
+    private static final class Route {
+        private final String primaryName;
+        private final Backend primary;
+        private final String shadowName;
+        private final Backend shadow;
+        private final double sampleRate;
+        private final ShadowStats stats = new ShadowStats();
+
+        Route(String primaryName, Backend primary, String shadowName, Backend shadow, double sampleRate) {
+            this.primaryName = primaryName;
+            this.primary = primary;
+            this.shadowName = shadowName;
+            this.shadow = shadow;
+            this.sampleRate = sampleRate;
+        }
+
+        boolean sampled() {
+            return shadow != null && sampleRate > 0
+                    && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+        }
+    }
+
+    /**
+     * Verdicts and latencies of the shadow backend against the primary, over the requests sent to both.
+     */
+    public static final class ShadowStats {
+        private final LongAdder compared = new LongAdder();
+        private final LongAdder agreed = new LongAdder();
+        private final LongAdder shadowOnlyCat = new LongAdder();
+        private final LongAdder primaryOnlyCat = new LongAdder();
+        private final LongAdder primaryNanos = new LongAdder();
+        private final LongAdder shadowNanos = new LongAdder();
+        private final LongAdder shadowFaster = new LongAdder();
+        private final AtomicLong primaryMaxNanos = new AtomicLong();
+        private final AtomicLong shadowMaxNanos = new AtomicLong();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+
+        private void record(boolean primaryVerdict, long primaryLatency, boolean shadowVerdict, long shadowLatency) {
+            compared.increment();
+            if (primaryVerdict == shadowVerdict) {
+                agreed.increment();
+            } else if (shadowVerdict) {
+                shadowOnlyCat.increment();
+            } else {
+                primaryOnlyCat.increment();
+            }
+            primaryNanos.add(primaryLatency);
+            shadowNanos.add(shadowLatency);
+            if (shadowLatency < primaryLatency) {
+                shadowFaster.increment();
+            }
+            primaryMaxNanos.accumulateAndGet(primaryLatency, Math::max);
+            shadowMaxNanos.accumulateAndGet(shadowLatency, Math::max);
+        }
+
+        /**
+         * @return number of requests both backends answered
+         */
+        public long getCompared() {
+            return compared.sum();
+        }
+
+        public long getAgreed() {
+            return agreed.sum();
+        }
+
+        /**
+         * @return requests where the shadow saw a cat and the primary didn't
+         */
+        public long getShadowOnlyCat() {
+            return shadowOnlyCat.sum();
+        }
+
+        /**
+         * @return requests where the primary saw a cat and the shadow didn't
+         */
+        public long getPrimaryOnlyCat() {
+            return primaryOnlyCat.sum();
+        }
+
+        /**
+         * @return fraction of compared requests with the same verdict, or 1 if none were compared
+         */
+        public double getAgreementRate() {
+            long total = compared.sum();
+            return total == 0 ? 1 : (double) agreed.sum() / total;
+        }
+
+        public double getPrimaryMeanMillis() {
+            return meanMillis(primaryNanos);
+        }
+
+        public double getShadowMeanMillis() {
+            return meanMillis(shadowNanos);
+        }
+
+        public double getPrimaryMaxMillis() {
+            return primaryMaxNanos.get() / 1_000_000.0;
+        }
+
+        public double getShadowMaxMillis() {
+            return shadowMaxNanos.get() / 1_000_000.0;
+        }
+
+        /**
+         * @return requests the shadow answered faster than the primary
+         */
+        public long getShadowFaster() {
+            return shadowFaster.sum();
+        }
+
+        /**
+         * @return shadow requests that threw, or whose image couldn't be copied for the shadow
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * @return shadow requests dropped because the shadow queue was full, or because there was no image
+         */
+        public long getSkipped() {
+            return skipped.sum();
+        }
+
+        private double meanMillis(LongAdder nanos) {
+            long total = compared.sum();
+            return total == 0 ? 0 : nanos.sum() / 1_000_000.0 / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d compared, %.1f%% agreed (shadow only cat %d, primary only cat %d), "
+                            + "mean %.2fms vs %.2fms, max %.2fms vs %.2fms, shadow faster %d, %d errors, %d skipped",
+                    getCompared(), getAgreementRate() * 100, getShadowOnlyCat(), getPrimaryOnlyCat(),
+                    getPrimaryMeanMillis(), getShadowMeanMillis(), getPrimaryMaxMillis(), getShadowMaxMillis(),
+                    getShadowFaster(), getErrors(), getSkipped());
+        }
+    }
+}
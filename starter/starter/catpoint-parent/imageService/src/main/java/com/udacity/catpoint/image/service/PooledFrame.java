@@ -0,0 +1,80 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference-counted image borrowed from a {@link FrameBufferPool}. The frame starts with one reference,
+ * owned by whoever acquired it. Code that hands the frame to another thread, or keeps it past the call it
+ * received it in, takes its own reference with {@link #retain()}. Each reference is given up with
+ * {@link #release()} (or {@link #close()}), and the image goes back to the pool when the last one is
+ * released, so nobody may touch the image after releasing their reference.
+ */
+public final class PooledFrame implements AutoCloseable {
+
+    private final FrameBufferPool pool;
+    private final BufferedImage image;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    PooledFrame(FrameBufferPool pool, BufferedImage image) {
+        this.pool = pool;
+        this.image = image;
+    }
+
+    /**
+     * @return the pooled image, valid until this reference is released
+     * @throws IllegalStateException if every reference has already been released
+     */
+    public BufferedImage getImage() {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Frame has already been released");
+        }
+        return image;
+    }
+
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    /**
+     * Takes another reference to the frame.
+     * @return this frame
+     * @throws IllegalStateException if every reference has already been released
+     */
+    public PooledFrame retain() {
+        int current;
+        do {
+            current = references.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Frame has already been released");
+            }
+        } while (!references.compareAndSet(current, current + 1));
+        return this;
+    }
+
+    /**
+     * Gives up one reference. The image is returned to the pool when the last reference is released.
+     * @throws IllegalStateException if the frame is released more often than it was retained
+     */
+    public void release() {
+        int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            pool.recycle(image);
+        } else if (remaining < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Frame has already been released");
+        }
+    }
+
+    /**
+     * Same as {@link #release()}, for try-with-resources.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -0,0 +1,104 @@
+package com.udacity.catpoint.image.service;
+
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for a remote classifier with quotas, for trying out rate limiting without an AWS
+ * account. Requests over the per-second quota, or over the concurrency quota, fail the way the AWS SDK
+ * reports throttling: an {@link SdkServiceException} with status code 429. Accepted requests take the
+ * base latency, stretched in proportion to how many requests are running at once, and are then answered
+ * by the wrapped service.
+ */
+public class QuotaSimulatingImageService implements ImageService {
+
+    private static final int THROTTLING = 429;
+
+    private final ImageService delegate;
+    private final int requestsPerSecond;
+    private final int maxConcurrent;
+    private final long baseLatencyNanos;
+
+    private long windowStart = System.nanoTime();
+    private int requestsInWindow;
+    private int inFlight;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param delegate Service that answers accepted requests
+     * @param requestsPerSecond Requests accepted per second
+     * @param maxConcurrent Requests accepted at the same time
+     * @param baseLatency Time an accepted request takes when it is the only one running
+     */
+    public QuotaSimulatingImageService(ImageService delegate, int requestsPerSecond, int maxConcurrent, Duration baseLatency) {
+        this.delegate = delegate;
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxConcurrent = maxConcurrent;
+        this.baseLatencyNanos = baseLatency.toNanos();
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        admit();
+        try {
+            return delegate.imageContainsCat(image, confidenceThreshhold);
+        } finally {
+            finish();
+        }
+    }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        admit();
+        try {
+            return delegate.imageContainsCat(encodedImage, confidenceThreshhold);
+        } finally {
+            finish();
+        }
+    }
+
+    private void admit() {
+        int running;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+                windowStart = now;
+                requestsInWindow = 0;
+            }
+            if (requestsInWindow >= requestsPerSecond || inFlight >= maxConcurrent) {
+                throttled.increment();
+                throw SdkServiceException.builder()
+                        .statusCode(THROTTLING)
+                        .message("Rate exceeded")
+                        .build();
+            }
+            requestsInWindow++;
+            running = ++inFlight;
+        }
+        accepted.increment();
+        try {
+            TimeUnit.NANOSECONDS.sleep(baseLatencyNanos * running);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void finish() {
+        inFlight--;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+}
@@ -0,0 +1,317 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Image service decorator that keeps a remote classifier within its quotas while still using the
+ * throughput it has. Two limits apply to every request:
+ * <ul>
+ *     <li>a token bucket for the provider's request rate quota, refilled at a fixed rate up to a burst size</li>
+ *     <li>a concurrency limit that adapts to the service (additive increase, multiplicative decrease).
+ *     The limit grows by about one per round of successful calls, and shrinks by 10% when latency climbs
+ *     well above the best latency seen, or by half when the service throttles a request</li>
+ * </ul>
+ * Requests that can't start right away wait in a queue ordered by {@link ScanPriority}, oldest first
+ * within a priority. When the queue is full, a new request pushes out the newest request of a lower
+ * priority, or is itself rejected if there is none. Requests that are pushed out or wait longer than the
+ * maximum wait fail with {@link ImageServiceOverloadedException}.
+ *
+ * A request counts as throttled when the wrapped service throws an {@link SdkServiceException} whose
+ * {@link SdkServiceException#isThrottlingException()} is true. That exception is passed on to the caller.
+ */
+public class RateLimitedImageService implements ImageService {
+
+    private static final double BACKOFF_ON_THROTTLE = 0.5;
+    private static final double BACKOFF_ON_LATENCY = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    //the best latency is forgotten from time to time, so a service that got slower for good is relearnt
+    private static final int MIN_LATENCY_WINDOW = 500;
+
+    private final Logger log = LoggerFactory.getLogger(RateLimitedImageService.class);
+
+    private final ImageService delegate;
+    private final double tokensPerNano;
+    private final double burst;
+    private final int minConcurrency;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<Waiter> queue = new TreeSet<>(
+            Comparator.comparing((Waiter w) -> w.priority).thenComparingLong(w -> w.sequence));
+    private long nextSequence;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private double limit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private int samplesSinceMinLatency;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Creates a limiter with a burst of one second's worth of requests, a queue of 64 requests and a
+     * maximum wait of ten seconds.
+     * @param delegate Service to protect
+     * @param requestsPerSecond Sustained request rate allowed by the provider
+     * @param maxConcurrency Most requests that may ever run at once
+     */
+    public RateLimitedImageService(ImageService delegate, double requestsPerSecond, int maxConcurrency) {
+        this(delegate, requestsPerSecond, Math.max(1, (int) Math.ceil(requestsPerSecond)), 1, maxConcurrency, 64,
+                Duration.ofSeconds(10));
+    }
+
+    /**
+     * @param delegate Service to protect
+     * @param requestsPerSecond Sustained request rate allowed by the provider
+     * @param burst Most requests that may start back to back after a quiet period
+     * @param minConcurrency The concurrency limit never drops below this
+     * @param maxConcurrency The concurrency limit never grows above this
+     * @param maxQueued Most requests that may wait at once
+     * @param maxWait Longest a request may wait before it is rejected
+     */
+    public RateLimitedImageService(ImageService delegate, double requestsPerSecond, int burst, int minConcurrency,
+                                   int maxConcurrency, int maxQueued, Duration maxWait) {
+        if (requestsPerSecond <= 0 || burst < 1 || minConcurrency < 1 || maxConcurrency < minConcurrency || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid rate limiter settings");
+        }
+        this.delegate = delegate;
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.tokens = burst;
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.limit = Math.max(minConcurrency, maxConcurrency / 2.0);
+        this.maxQueued = maxQueued;
+        this.maxWaitNanos = maxWait.toNanos();
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return imageContainsCat(image, confidenceThreshhold, ScanPriority.NORMAL);
+    }
+
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        return imageContainsCat(encodedImage, confidenceThreshhold, ScanPriority.NORMAL);
+    }
+
+    /**
+     * Same as {@link #imageContainsCat(BufferedImage, float)}, queued at the given priority.
+     * @throws ImageServiceOverloadedException if the request is shed or waits too long
+     */
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold, ScanPriority priority) {
+        return call(priority, () -> delegate.imageContainsCat(image, confidenceThreshhold));
+    }
+
+    /**
+     * Same as {@link #imageContainsCat(ByteBuffer, float)}, queued at the given priority.
+     * @throws ImageServiceOverloadedException if the request is shed or waits too long
+     */
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold, ScanPriority priority) {
+        return call(priority, () -> delegate.imageContainsCat(encodedImage, confidenceThreshhold));
+    }
+
+    private boolean call(ScanPriority priority, BooleanSupplier request) {
+        acquire(priority);
+        long start = System.nanoTime();
+        boolean wasThrottled = false;
+        boolean succeeded = false;
+        try {
+            boolean result = request.getAsBoolean();
+            succeeded = true;
+            return result;
+        } catch (SdkServiceException e) {
+            wasThrottled = e.isThrottlingException();
+            throw e;
+        } finally {
+            release(System.nanoTime() - start, succeeded, wasThrottled);
+        }
+    }
+
+    private void acquire(ScanPriority priority) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (queue.isEmpty() && tryStart(now)) {
+                return;
+            }
+            Waiter waiter = new Waiter(priority, nextSequence++);
+            if (queue.size() >= maxQueued) {
+                Waiter victim = queue.isEmpty() ? null : queue.last();
+                if (victim == null || victim.priority.compareTo(priority) <= 0) {
+                    shed.increment();
+                    throw new ImageServiceOverloadedException("Too many image scans waiting");
+                }
+                queue.remove(victim);
+                victim.shed = true;
+                changed.signalAll();
+            }
+            queue.add(waiter);
+
+            long deadline = now + maxWaitNanos;
+            try {
+                while (true) {
+                    if (waiter.shed) {
+                        shed.increment();
+                        throw new ImageServiceOverloadedException("Image scan pushed out by a more urgent one");
+                    }
+                    now = System.nanoTime();
+                    long waitNanos = deadline - now;
+                    if (queue.first() == waiter && inFlight < currentLimit()) {
+                        if (tryStart(now)) {
+                            return;
+                        }
+                        waitNanos = Math.min(waitNanos, (long) Math.ceil((1 - tokens) / tokensPerNano));
+                    }
+                    if (deadline - now <= 0) {
+                        timedOut.increment();
+                        throw new ImageServiceOverloadedException("Timed out waiting to scan image");
+                    }
+                    changed.awaitNanos(Math.max(1, waitNanos));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ImageServiceOverloadedException("Interrupted while waiting to scan image");
+            } finally {
+                if (!waiter.shed) {
+                    queue.remove(waiter);
+                }
+                //the next waiter may now be at the head of the queue
+                changed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a request if the concurrency limit and the token bucket both allow it. Called with the lock held.
+     */
+    private boolean tryStart(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+        if (inFlight >= currentLimit() || tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        inFlight++;
+        return true;
+    }
+
+    private void release(long latencyNanos, boolean succeeded, boolean wasThrottled) {
+        lock.lock();
+        try {
+            int running = inFlight--;
+            if (wasThrottled) {
+                throttled.increment();
+                limit = Math.max(minConcurrency, limit * BACKOFF_ON_THROTTLE);
+                log.debug("Image service throttled, concurrency limit now {}", currentLimit());
+            } else if (succeeded) {
+                completed.increment();
+                if (++samplesSinceMinLatency > MIN_LATENCY_WINDOW) {
+                    minLatencyNanos = Long.MAX_VALUE;
+                    samplesSinceMinLatency = 0;
+                }
+                minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+                if (latencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+                    limit = Math.max(minConcurrency, limit * BACKOFF_ON_LATENCY);
+                } else if (running >= currentLimit()) {
+                    //only grow while the limit is what holds requests back
+                    limit = Math.min(maxConcurrency, limit + 1 / limit);
+                }
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return number of requests currently allowed to run at once
+     */
+    public int getConcurrencyLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of requests currently running
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of requests currently waiting
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * @return number of requests rejected because the queue was full or a more urgent request took their place
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    private static final class Waiter {
+        private final ScanPriority priority;
+        private final long sequence;
+        private boolean shed;
+
+        Waiter(ScanPriority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.udacity.catpoint.image.service;
+
+/**
+ * How urgently an image scan is needed, for image services that queue or shed requests under load.
+ * Constants are declared from most to least urgent.
+ */
+public enum ScanPriority {
+    /** A scan someone is waiting for, such as the user pressing "Scan Picture". */
+    INTERACTIVE,
+    /** Regular frames from a camera. */
+    NORMAL,
+    /** Scans that can be dropped without anyone noticing, such as re-checks of an unchanged scene. */
+    BACKGROUND
+}
@@ -0,0 +1,176 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image service decorator for high resolution frames. Images larger than a tile are split into
+ * overlapping tiles, and each tile is sent to the wrapped service on an executor. A small cat takes
+ * up a bigger part of a tile than of the whole frame, and each request is smaller.
+ *
+ * The wrapped service may block on the network, so the executor should be dedicated to tiling rather
+ * than a shared pool such as the common fork/join pool. The scan stops as soon as one tile contains a
+ * cat: tiles that haven't started yet are skipped and tiles still being scanned are interrupted. Tiles
+ * overlap so that a cat sitting on a tile boundary is still fully inside at least one tile, as long as
+ * it is no bigger than the overlap.
+ */
+public class TilingImageService implements ImageService {
+
+    private final Logger log = LoggerFactory.getLogger(TilingImageService.class);
+
+    private final ImageService delegate;
+    private final int tileSize;
+    private final int overlap;
+    private final ExecutorService executor;
+
+    private final LongAdder tiledImages = new LongAdder();
+    private final LongAdder tilesScanned = new LongAdder();
+    private final LongAdder tilesSkipped = new LongAdder();
+
+    /**
+     * @param delegate Service that classifies each tile. It is called from several threads at once
+     * @param tileSize Width and height of a tile, in pixels
+     * @param overlap Pixels shared by neighbouring tiles, less than the tile size
+     * @param executor Executor the tiles are scanned on, used only for tiling
+     */
+    public TilingImageService(ImageService delegate, int tileSize, int overlap, ExecutorService executor) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+        }
+        if (overlap < 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("overlap must be between 0 and tileSize - 1: " + overlap);
+        }
+        this.delegate = delegate;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        if (image.getWidth() <= tileSize && image.getHeight() <= tileSize) {
+            return delegate.imageContainsCat(image, confidenceThreshhold);
+        }
+        return scanTiles(image, confidenceThreshhold);
+    }
+
+    /**
+     * Only the header is read to find the image size. Images that fit in a tile are passed on still
+     * encoded; larger ones are decoded once and tiled.
+     */
+    @Override
+    public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+        Dimension size = EncodedImages.size(encodedImage);
+        if (size.width <= tileSize && size.height <= tileSize) {
+            return delegate.imageContainsCat(encodedImage, confidenceThreshhold);
+        }
+        return scanTiles(EncodedImages.decode(encodedImage), confidenceThreshhold);
+    }
+
+    /**
+     * @throws CancellationException if the calling thread is interrupted while the tiles are scanned
+     */
+    private boolean scanTiles(BufferedImage image, float confidenceThreshhold) {
+        int[] xs = tileOrigins(image.getWidth(), tileSize, overlap);
+        int[] ys = tileOrigins(image.getHeight(), tileSize, overlap);
+        tiledImages.increment();
+        CompletionService<Boolean> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Boolean>> tiles = new ArrayList<>(xs.length * ys.length);
+        AtomicInteger started = new AtomicInteger();
+        boolean found = false;
+        try {
+            for (int y : ys) {
+                for (int x : xs) {
+                    tiles.add(completion.submit(() -> {
+                        started.incrementAndGet();
+                        tilesScanned.increment();
+                        int width = Math.min(tileSize, image.getWidth() - x);
+                        int height = Math.min(tileSize, image.getHeight() - y);
+                        return delegate.imageContainsCat(image.getSubimage(x, y, width, height), confidenceThreshhold);
+                    }));
+                }
+            }
+            for (int i = 0; i < tiles.size() && !found; i++) {
+                found = completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while scanning tiles");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException("Tile scan failed", e.getCause());
+        } finally {
+            for (Future<Boolean> tile : tiles) {
+                tile.cancel(true);
+            }
+            //tiles that had not started by now never will
+            tilesSkipped.add(tiles.size() - started.get());
+        }
+        log.debug("Scanned {}x{} image as {} tiles, cat found: {}", image.getWidth(), image.getHeight(),
+                tiles.size(), found);
+        return found;
+    }
+
+    /**
+     * Tile start positions along one axis. The last tile is pulled back to end at the image edge rather
+     * than hanging over it, so every tile has the full size unless the image is smaller than a tile.
+     */
+    static int[] tileOrigins(int length, int tileSize, int overlap) {
+        if (length <= tileSize) {
+            return new int[]{0};
+        }
+        int stride = tileSize - overlap;
+        int count = (length - tileSize + stride - 1) / stride + 1;
+        int[] origins = new int[count];
+        for (int i = 0; i < count; i++) {
+            origins[i] = Math.min(i * stride, length - tileSize);
+        }
+        return origins;
+    }
+
+    /**
+     * @return number of images that were split into tiles
+     */
+    public long getTiledImages() {
+        return tiledImages.sum();
+    }
+
+    /**
+     * @return number of tiles sent to the wrapped service
+     */
+    public long getTilesScanned() {
+        return tilesScanned.sum();
+    }
+
+    /**
+     * @return number of tiles not scanned because a cat had already been found
+     */
+    public long getTilesSkipped() {
+        return tilesSkipped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TilingImageService[tile=%d, overlap=%d, tiled=%d, scanned=%d, skipped=%d]",
+                tileSize, overlap, getTiledImages(), getTilesScanned(), getTilesSkipped());
+    }
+}
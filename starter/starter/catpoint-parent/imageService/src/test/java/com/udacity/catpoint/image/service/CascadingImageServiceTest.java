@@ -0,0 +1,159 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CascadingImageServiceTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+
+    private final AtomicInteger remoteCalls = new AtomicInteger();
+    private final ImageService remote = (image, threshhold) -> {
+        remoteCalls.incrementAndGet();
+        return true;
+    };
+
+    private CascadingImageService scoring(float score, float margin) {
+        return new CascadingImageService(image -> score, remote, margin);
+    }
+
+    @Test
+    void scoreAtOrBeyondMargin_decidedLocally() {
+        assertTrue(scoring(60, 10).imageContainsCat(IMAGE, 50));
+        assertFalse(scoring(40, 10).imageContainsCat(IMAGE, 50));
+        assertTrue(scoring(100, 10).imageContainsCat(IMAGE, 50));
+        assertFalse(scoring(0, 10).imageContainsCat(IMAGE, 50));
+        assertEquals(0, remoteCalls.get());
+    }
+
+    @Test
+    void scoreInsideMargin_escalated() {
+        assertTrue(scoring(59.9f, 10).imageContainsCat(IMAGE, 50));
+        assertTrue(scoring(40.1f, 10).imageContainsCat(IMAGE, 50));
+        assertTrue(scoring(50, 10).imageContainsCat(IMAGE, 50));
+        assertEquals(3, remoteCalls.get());
+    }
+
+    @Test
+    void unsureScorer_alwaysEscalated() {
+        assertTrue(scoring(Float.NaN, 0).imageContainsCat(IMAGE, 50));
+        assertEquals(1, remoteCalls.get());
+    }
+
+    @Test
+    void marginZero_neverEscalates_marginHundred_alwaysDoes() {
+        assertFalse(scoring(49.9f, 0).imageContainsCat(IMAGE, 50));
+        assertTrue(scoring(50, 0).imageContainsCat(IMAGE, 50));
+        assertEquals(0, remoteCalls.get());
+        assertTrue(scoring(0, 100).imageContainsCat(IMAGE, 50));
+        assertTrue(scoring(100, 100).imageContainsCat(IMAGE, 50));
+        assertEquals(2, remoteCalls.get());
+    }
+
+    @Test
+    void counters_trackDecisionsEscalationsAndLatency() {
+        AtomicInteger call = new AtomicInteger();
+        CascadingImageService service = new CascadingImageService(image -> call.getAndIncrement() % 4 == 0 ? 50 : 0,
+                (image, threshhold) -> {
+                    remoteCalls.incrementAndGet();
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return false;
+                }, 10);
+        for (int i = 0; i < 8; i++) {
+            service.imageContainsCat(IMAGE, 50);
+        }
+
+        assertEquals(6, service.getLocalDecisions());
+        assertEquals(2, service.getEscalations());
+        assertEquals(0.25, service.getEscalationRate(), 1e-9);
+        assertEquals(2, remoteCalls.get());
+        assertTrue(service.getMeanRemoteLatencyMillis() >= 5, "remote " + service.getMeanRemoteLatencyMillis());
+        assertTrue(service.getMeanLocalLatencyMillis() < service.getMeanRemoteLatencyMillis());
+    }
+
+    @Test
+    void encodedImage_scoredEncoded_andEscalatedWithoutReencoding() throws IOException {
+        ByteBuffer encoded = png(IMAGE);
+        AtomicReference<ByteBuffer> received = new AtomicReference<>();
+        CascadingImageService service = new CascadingImageService(new ImageScorer() {
+            @Override
+            public float catConfidence(BufferedImage image) {
+                throw new AssertionError("encoded images should be scored encoded");
+            }
+
+            @Override
+            public float catConfidence(ByteBuffer encodedImage) {
+                return 50;
+            }
+        }, new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float threshhold) {
+                throw new AssertionError("escalated images should stay encoded");
+            }
+
+            @Override
+            public boolean imageContainsCat(ByteBuffer encodedImage, float threshhold) {
+                received.set(encodedImage);
+                return true;
+            }
+        }, 10);
+
+        assertTrue(service.imageContainsCat(encoded, 50));
+        assertSame(encoded, received.get());
+    }
+
+    @Test
+    void backgroundScorer_emptySceneLocal_changedSceneEscalated() throws IOException {
+        BufferedImage empty = scene(false);
+        BufferedImage withCat = scene(true);
+        BackgroundDifferenceScorer scorer = new BackgroundDifferenceScorer(BackgroundDifferenceScorer.DEFAULT_NOISE_LEVEL);
+        assertTrue(Float.isNaN(scorer.catConfidence(empty)));
+
+        scorer.setBackground(empty);
+        assertEquals(0f, scorer.catConfidence(scene(false)));
+        assertEquals(0f, scorer.catConfidence(png(scene(false))));
+        assertTrue(Float.isNaN(scorer.catConfidence(withCat)));
+        assertTrue(Float.isNaN(scorer.catConfidence(png(withCat))));
+
+        CascadingImageService service = new CascadingImageService(scorer, remote, 10);
+        assertFalse(service.imageContainsCat(png(empty), 50));
+        assertTrue(service.imageContainsCat(png(withCat), 50));
+        assertEquals(1, remoteCalls.get());
+    }
+
+    private static BufferedImage scene(boolean cat) {
+        BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, 640, 480);
+        g.setColor(Color.DARK_GRAY);
+        g.fillRect(0, 400, 640, 80);
+        if (cat) {
+            g.setColor(Color.ORANGE);
+            g.fillOval(200, 200, 240, 200);
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static ByteBuffer png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+}
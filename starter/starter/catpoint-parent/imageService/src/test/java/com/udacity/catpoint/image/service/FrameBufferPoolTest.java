@@ -0,0 +1,97 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameBufferPoolTest {
+
+    @Test
+    void frame_returnedToPoolOnlyAfterLastRelease() {
+        FrameBufferPool pool = new FrameBufferPool(2);
+        PooledFrame frame = pool.acquire(4, 3, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = frame.getImage();
+
+        frame.retain();
+        frame.release();
+        assertEquals(0, pool.idleCount(4, 3, BufferedImage.TYPE_INT_RGB));
+        assertSame(image, frame.getImage());
+
+        frame.release();
+        assertEquals(1, pool.idleCount(4, 3, BufferedImage.TYPE_INT_RGB));
+        assertThrows(IllegalStateException.class, frame::getImage);
+        assertThrows(IllegalStateException.class, frame::retain);
+        assertThrows(IllegalStateException.class, frame::release);
+        assertEquals(1, pool.idleCount(4, 3, BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    void releasedImage_reusedForSameShapeOnly() {
+        FrameBufferPool pool = new FrameBufferPool(1);
+        PooledFrame first = pool.acquire(4, 3, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = first.getImage();
+        first.release();
+
+        PooledFrame otherType = pool.acquire(4, 3, BufferedImage.TYPE_3BYTE_BGR);
+        assertNotSame(image, otherType.getImage());
+        try (PooledFrame second = pool.acquire(4, 3, BufferedImage.TYPE_INT_RGB)) {
+            assertSame(image, second.getImage());
+        }
+        assertEquals(2, pool.getAllocations());
+        assertEquals(1, pool.getReuses());
+
+        //only one idle image is kept per shape
+        PooledFrame a = pool.acquire(4, 3, BufferedImage.TYPE_INT_RGB);
+        PooledFrame b = pool.acquire(4, 3, BufferedImage.TYPE_INT_RGB);
+        a.release();
+        b.release();
+        assertEquals(1, pool.idleCount(4, 3, BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    void leastRecentlyUsedShape_evicted() {
+        FrameBufferPool pool = new FrameBufferPool(1, 2);
+        pool.acquire(1, 1, BufferedImage.TYPE_INT_RGB).release();
+        pool.acquire(2, 2, BufferedImage.TYPE_INT_RGB).release();
+        //touch the first shape, so the second is now the least recently used
+        pool.acquire(1, 1, BufferedImage.TYPE_INT_RGB).release();
+        pool.acquire(3, 3, BufferedImage.TYPE_INT_RGB).release();
+
+        assertEquals(1, pool.idleCount(1, 1, BufferedImage.TYPE_INT_RGB));
+        assertEquals(0, pool.idleCount(2, 2, BufferedImage.TYPE_INT_RGB));
+        assertEquals(1, pool.idleCount(3, 3, BufferedImage.TYPE_INT_RGB));
+    }
+
+    @Test
+    void decode_reusesImage_andFailsAfterClose() throws IOException {
+        BufferedImage source = new BufferedImage(8, 6, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(2, 1, 0xff0000);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", png);
+        ByteBuffer encoded = ByteBuffer.wrap(png.toByteArray());
+
+        FrameBufferPool pool = new FrameBufferPool(1);
+        BufferedImage image;
+        try (PooledFrame frame = pool.decode(encoded)) {
+            image = frame.getImage();
+            assertEquals(0xff0000, frame.getImage().getRGB(2, 1) & 0xffffff);
+        }
+        try (PooledFrame frame = pool.decode(encoded)) {
+            assertSame(image, frame.getImage());
+        }
+        assertEquals(0, encoded.position());
+
+        PooledFrame held = pool.acquire(8, 6, image.getType());
+        pool.close();
+        assertThrows(IllegalStateException.class, () -> pool.decode(encoded));
+        //a frame held across close can still be released, but isn't pooled again
+        held.release();
+        assertEquals(0, pool.idleCount(8, 6, image.getType()));
+    }
+}
@@ -0,0 +1,161 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the fast kernels against straightforward per-pixel references. Sizes are odd and not multiples
+ * of any vector width, so the loops' remainder lanes are covered as well as their main bodies.
+ */
+public class ImageKernelsTest {
+
+    private static final int[][] SIZES = {{1, 1}, {3, 1}, {1, 5}, {7, 3}, {17, 9}, {33, 17}, {65, 31}, {129, 7}};
+    private static final int[] COLOR_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_INT_BGR};
+
+    private final Random random = new Random(42);
+
+    @Test
+    void grayscale_colorTypes_matchScalarReference() {
+        for (int type : COLOR_TYPES) {
+            for (int[] size : SIZES) {
+                BufferedImage image = randomImage(type, size[0], size[1]);
+                assertArrayEquals(ImageKernels.grayscaleScalar(image, null), ImageKernels.grayscale(image, null),
+                        "type " + type + " " + size[0] + "x" + size[1]);
+            }
+        }
+    }
+
+    @Test
+    void grayscale_subimages_matchScalarReference() {
+        for (int type : COLOR_TYPES) {
+            BufferedImage image = randomImage(type, 67, 41);
+            BufferedImage sub = image.getSubimage(5, 3, 31, 19);
+            assertArrayEquals(ImageKernels.grayscaleScalar(sub, null), ImageKernels.grayscale(sub, null),
+                    "type " + type);
+        }
+    }
+
+    @Test
+    void grayscale_grayImage_copiesSamples() {
+        BufferedImage image = new BufferedImage(33, 17, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] samples = new byte[33 * 17];
+        random.nextBytes(samples);
+        image.getRaster().setDataElements(0, 0, 33, 17, samples);
+        assertArrayEquals(samples, ImageKernels.grayscale(image, null));
+    }
+
+    @Test
+    void grayscale_reusesDestination_andRejectsShortOne() {
+        BufferedImage image = randomImage(BufferedImage.TYPE_INT_RGB, 7, 3);
+        byte[] dst = new byte[30];
+        assertSame(dst, ImageKernels.grayscale(image, dst));
+        assertThrows(IllegalArgumentException.class, () -> ImageKernels.grayscale(image, new byte[20]));
+    }
+
+    @Test
+    void resizeBilinear_matchesFloatingPointReference() {
+        int[][] targets = {{1, 1}, {5, 3}, {16, 9}, {31, 29}, {97, 45}};
+        for (int[] size : SIZES) {
+            byte[] src = randomPlane(size[0] * size[1]);
+            for (int[] target : targets) {
+                byte[] fast = ImageKernels.resizeBilinear(src, size[0], size[1], null, target[0], target[1]);
+                byte[] reference = resizeReference(src, size[0], size[1], target[0], target[1]);
+                for (int i = 0; i < reference.length; i++) {
+                    assertTrue(Math.abs((fast[i] & 0xFF) - (reference[i] & 0xFF)) <= 1, size[0] + "x" + size[1]
+                            + " to " + target[0] + "x" + target[1] + " at " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void resizeBilinear_sameSize_isIdentity() {
+        byte[] src = randomPlane(33 * 17);
+        assertArrayEquals(src, ImageKernels.resizeBilinear(src, 33, 17, null, 33, 17));
+    }
+
+    @Test
+    void normalize_matchesFormula() {
+        for (int[] size : SIZES) {
+            byte[] src = randomPlane(size[0] * size[1]);
+            float[] dst = ImageKernels.normalize(src, null, 0.45f, 0.22f);
+            for (int i = 0; i < src.length; i++) {
+                assertEquals(((src[i] & 0xFF) / 255f - 0.45f) / 0.22f, dst[i], 1e-5f);
+            }
+        }
+    }
+
+    @Test
+    void absDiff_matchesReference_withAndWithoutDestination() {
+        for (int[] size : SIZES) {
+            byte[] a = randomPlane(size[0] * size[1]);
+            byte[] b = randomPlane(size[0] * size[1]);
+            byte[] dst = new byte[a.length];
+            long expected = 0;
+            for (int i = 0; i < a.length; i++) {
+                expected += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+            }
+            assertEquals(expected, ImageKernels.absDiff(a, b, null));
+            assertEquals(expected, ImageKernels.absDiff(a, b, dst));
+            for (int i = 0; i < a.length; i++) {
+                assertEquals(Math.abs((a[i] & 0xFF) - (b[i] & 0xFF)), dst[i] & 0xFF);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> ImageKernels.absDiff(new byte[3], new byte[4], null));
+    }
+
+    @Test
+    void histogram_matchesReference_andOverwritesOldCounts() {
+        int[] dst = new int[256];
+        dst[7] = 1000;
+        for (int[] size : SIZES) {
+            byte[] src = randomPlane(size[0] * size[1]);
+            int[] expected = new int[256];
+            for (byte v : src) {
+                expected[v & 0xFF]++;
+            }
+            assertArrayEquals(expected, ImageKernels.histogram(src, dst));
+        }
+    }
+
+    private BufferedImage randomImage(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt() | 0xFF000000);
+            }
+        }
+        return image;
+    }
+
+    private byte[] randomPlane(int length) {
+        byte[] plane = new byte[length];
+        random.nextBytes(plane);
+        return plane;
+    }
+
+    private static byte[] resizeReference(byte[] src, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        byte[] dst = new byte[dstWidth * dstHeight];
+        for (int y = 0; y < dstHeight; y++) {
+            double sy = Math.max(0, (y + 0.5) * srcHeight / dstHeight - 0.5);
+            int y0 = Math.min((int) sy, srcHeight - 1);
+            int y1 = Math.min(y0 + 1, srcHeight - 1);
+            double fy = sy - y0;
+            for (int x = 0; x < dstWidth; x++) {
+                double sx = Math.max(0, (x + 0.5) * srcWidth / dstWidth - 0.5);
+                int x0 = Math.min((int) sx, srcWidth - 1);
+                int x1 = Math.min(x0 + 1, srcWidth - 1);
+                double fx = sx - x0;
+                double upper = (src[y0 * srcWidth + x0] & 0xFF) * (1 - fx) + (src[y0 * srcWidth + x1] & 0xFF) * fx;
+                double lower = (src[y1 * srcWidth + x0] & 0xFF) * (1 - fx) + (src[y1 * srcWidth + x1] & 0xFF) * fx;
+                dst[y * dstWidth + x] = (byte) Math.round(upper * (1 - fy) + lower * fy);
+            }
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,258 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ImageServiceRouterTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Properties config(String primary, String shadow) {
+        Properties config = new Properties();
+        config.setProperty(ImageServiceRouter.PRIMARY, primary);
+        if (shadow != null) {
+            config.setProperty(ImageServiceRouter.SHADOW, shadow);
+        }
+        return config;
+    }
+
+    /**
+     * Backend that counts requests it gets after being closed.
+     */
+    private static final class ClosableBackend implements ImageService, AutoCloseable {
+        private final boolean verdict;
+        private final AtomicInteger closes = new AtomicInteger();
+        private final AtomicInteger callsAfterClose;
+
+        ClosableBackend(boolean verdict, AtomicInteger callsAfterClose) {
+            this.verdict = verdict;
+            this.callsAfterClose = callsAfterClose;
+        }
+
+        @Override
+        public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+            if (closes.get() > 0) {
+                callsAfterClose.incrementAndGet();
+            }
+            Thread.yield();
+            return verdict;
+        }
+
+        @Override
+        public void close() {
+            closes.incrementAndGet();
+        }
+    }
+
+    @Test
+    void hotSwapUnderLoad_replacedBackendsClosedOnceAfterTheirRequests() throws Exception {
+        AtomicInteger callsAfterClose = new AtomicInteger();
+        List<ClosableBackend> created = new CopyOnWriteArrayList<>();
+        Supplier<ImageService> a = () -> {
+            ClosableBackend backend = new ClosableBackend(true, callsAfterClose);
+            created.add(backend);
+            return backend;
+        };
+        Supplier<ImageService> b = () -> {
+            ClosableBackend backend = new ClosableBackend(false, callsAfterClose);
+            created.add(backend);
+            return backend;
+        };
+        ImageServiceRouter router = new ImageServiceRouter(Map.of("a", a, "b", b), config("a", null), 1);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<Integer>> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            callers.add(executor.submit(() -> {
+                int calls = 0;
+                while (running.get()) {
+                    router.imageContainsCat(IMAGE, 50);
+                    calls++;
+                }
+                return calls;
+            }));
+        }
+        for (int i = 0; i < 50; i++) {
+            router.configure(i % 2 == 0 ? config("b", "a") : config("a", null));
+            Thread.sleep(2);
+        }
+        running.set(false);
+        for (Future<Integer> caller : callers) {
+            assertTrue(caller.get(10, TimeUnit.SECONDS) > 0);
+        }
+
+        assertEquals(0, callsAfterClose.get());
+        assertEquals("a", router.getPrimaryName());
+        //the last configuration's backend is still open; every other one was closed exactly once
+        long open = created.stream().filter(backend -> backend.closes.get() == 0).count();
+        assertEquals(1, open);
+        assertTrue(created.stream().allMatch(backend -> backend.closes.get() <= 1));
+
+        router.close();
+        //a shadow request that was still running gives its backend back just after close returns
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!created.stream().allMatch(backend -> backend.closes.get() == 1) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(created.stream().allMatch(backend -> backend.closes.get() == 1));
+        assertThrows(IllegalStateException.class, () -> router.imageContainsCat(IMAGE, 50));
+    }
+
+    @Test
+    void shadowDisagreements_countedByWhichSideSawTheCat() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        ImageService primary = (image, threshhold) -> requests.getAndIncrement() % 2 == 0;
+        ImageService shadow = (image, threshhold) -> (image.getRGB(0, 0) & 0xffffff) != 0;
+        ImageServiceRouter router = new ImageServiceRouter(
+                Map.<String, Supplier<? extends ImageService>>of("primary", () -> primary, "shadow", () -> shadow),
+                config("primary", "shadow"), 1);
+        try {
+            //primary: cat, no cat, cat, no cat; shadow: cat in the last two only
+            BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            assertTrue(router.imageContainsCat(image, 50));
+            assertFalse(router.imageContainsCat(image, 50));
+            BufferedImage cat = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            cat.setRGB(0, 0, 0xffffff);
+            assertTrue(router.imageContainsCat(cat, 50));
+            assertFalse(router.imageContainsCat(cat, 50));
+
+            ImageServiceRouter.ShadowStats stats = router.getShadowStats();
+            while (stats.getCompared() + stats.getErrors() < 4) {
+                Thread.sleep(1);
+            }
+            assertEquals(4, stats.getCompared());
+            assertEquals(2, stats.getAgreed());
+            assertEquals(1, stats.getPrimaryOnlyCat());
+            assertEquals(1, stats.getShadowOnlyCat());
+            assertEquals(0.5, stats.getAgreementRate());
+            assertEquals(0, stats.getSkipped());
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test
+    void shadow_getsOwnCopyOfBytes_andSkipsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Byte> seen = new CopyOnWriteArrayList<>();
+        ImageService primary = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                return false;
+            }
+
+            @Override
+            public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+                return false;
+            }
+        };
+        ImageService shadow = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                return false;
+            }
+
+            @Override
+            public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                seen.add(encodedImage.get(encodedImage.position()));
+                return false;
+            }
+        };
+        ImageServiceRouter router = new ImageServiceRouter(
+                Map.<String, Supplier<? extends ImageService>>of("primary", () -> primary, "shadow", () -> shadow),
+                config("primary", "shadow"), 1);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[]{0, 1, 2, 3});
+            buffer.position(1);
+            router.imageContainsCat(buffer, 50);
+            //the caller reuses its buffer before the shadow gets to it
+            buffer.put(1, (byte) 9);
+            assertEquals(1, buffer.position());
+
+            //one request runs and the rest of the shadow queue fills up, then requests are skipped
+            for (int i = 0; i < 40; i++) {
+                router.imageContainsCat(buffer, 50);
+            }
+            assertTrue(router.getShadowStats().getSkipped() > 0);
+
+            release.countDown();
+            ImageServiceRouter.ShadowStats stats = router.getShadowStats();
+            while (stats.getCompared() + stats.getSkipped() < 41) {
+                Thread.sleep(1);
+            }
+            assertEquals((byte) 1, seen.get(0));
+        } finally {
+            router.close();
+        }
+    }
+
+    @Test
+    void shadowProblems_neverReachThePrimaryVerdict() {
+        AtomicInteger shadowCalls = new AtomicInteger();
+        ImageService primary = new ImageService() {
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                return true;
+            }
+
+            @Override
+            public boolean imageContainsCat(ByteBuffer encodedImage, float confidenceThreshhold) {
+                return true;
+            }
+        };
+        ImageService shadow = (image, threshhold) -> shadowCalls.incrementAndGet() > 0;
+        ImageServiceRouter router = new ImageServiceRouter(
+                Map.<String, Supplier<? extends ImageService>>of("primary", () -> primary, "shadow", () -> shadow),
+                config("primary", "shadow"), 1);
+        try {
+            //no picture loaded
+            assertTrue(router.imageContainsCat((BufferedImage) null, 50));
+            assertTrue(router.imageContainsCat((ByteBuffer) null, 50));
+            assertEquals(2, router.getShadowStats().getSkipped());
+
+            //an image whose pixels can't be copied
+            BufferedImage broken = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB) {
+                @Override
+                public WritableRaster copyData(WritableRaster outRaster) {
+                    throw new IllegalStateException("raster is gone");
+                }
+            };
+            assertTrue(router.imageContainsCat(broken, 50));
+            assertEquals(1, router.getShadowStats().getErrors());
+            assertEquals(0, shadowCalls.get());
+        } finally {
+            router.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitedImageServiceTest {
+
+    private static final BufferedImage IMAGE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void throttledByQuota_limitHalvedDownToMinimum() {
+        QuotaSimulatingImageService quota = new QuotaSimulatingImageService(
+                (image, threshhold) -> false, 2, 100, Duration.ZERO);
+        //starts at half of the maximum concurrency
+        RateLimitedImageService limiter = new RateLimitedImageService(
+                quota, 1000, 100, 1, 8, 64, Duration.ofSeconds(10));
+        assertEquals(4, limiter.getConcurrencyLimit());
+
+        //the quota allows two requests per second, so the next ones are throttled
+        limiter.imageContainsCat(IMAGE, 50);
+        limiter.imageContainsCat(IMAGE, 50);
+        SdkServiceException e = assertThrows(SdkServiceException.class, () -> limiter.imageContainsCat(IMAGE, 50));
+        assertTrue(e.isThrottlingException());
+        assertEquals(2, limiter.getConcurrencyLimit());
+        assertThrows(SdkServiceException.class, () -> limiter.imageContainsCat(IMAGE, 50));
+        assertThrows(SdkServiceException.class, () -> limiter.imageContainsCat(IMAGE, 50));
+        assertEquals(1, limiter.getConcurrencyLimit());
+
+        assertEquals(3, limiter.getThrottled());
+        assertEquals(3, quota.getThrottled());
+        assertEquals(2, limiter.getCompleted());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void successfulCallsAtTheLimit_limitGrowsUpToMaximum() throws Exception {
+        //the quota adds no latency of its own, so every call takes about as long as the best one
+        QuotaSimulatingImageService quota = new QuotaSimulatingImageService((image, threshhold) -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }, 100_000, 100, Duration.ZERO);
+        RateLimitedImageService limiter = new RateLimitedImageService(
+                quota, 100_000, 100, 1, 6, 64, Duration.ofSeconds(10));
+        assertEquals(3, limiter.getConcurrencyLimit());
+
+        List<Future<?>> calls = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            calls.add(executor.submit(() -> {
+                for (int j = 0; j < 15; j++) {
+                    limiter.imageContainsCat(IMAGE, 50);
+                }
+            }));
+        }
+        for (Future<?> call : calls) {
+            call.get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, quota.getThrottled());
+        assertEquals(120, limiter.getCompleted());
+        assertTrue(limiter.getConcurrencyLimit() > 3, "limit " + limiter.getConcurrencyLimit());
+        assertTrue(limiter.getConcurrencyLimit() <= 6, "limit " + limiter.getConcurrencyLimit());
+    }
+
+    @Test
+    void queueFull_newRequestRejectedUnlessMoreUrgent() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        QuotaSimulatingImageService quota = new QuotaSimulatingImageService((image, threshhold) -> {
+            started.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        }, 1000, 100, Duration.ZERO);
+        //one request may run and one may wait
+        RateLimitedImageService limiter = new RateLimitedImageService(
+                quota, 1000, 100, 1, 1, 1, Duration.ofSeconds(10));
+
+        Future<Boolean> running = executor.submit(() -> limiter.imageContainsCat(IMAGE, 50));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<Boolean> waiting = executor.submit(() -> limiter.imageContainsCat(IMAGE, 50, ScanPriority.NORMAL));
+        while (limiter.getQueued() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(ImageServiceOverloadedException.class,
+                () -> limiter.imageContainsCat(IMAGE, 50, ScanPriority.NORMAL));
+        assertThrows(ImageServiceOverloadedException.class,
+                () -> limiter.imageContainsCat(IMAGE, 50, ScanPriority.BACKGROUND));
+
+        //an interactive scan takes the waiting request's place
+        Future<Boolean> urgent = executor.submit(() -> limiter.imageContainsCat(IMAGE, 50, ScanPriority.INTERACTIVE));
+        Exception pushedOut = assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        assertTrue(pushedOut.getCause() instanceof ImageServiceOverloadedException);
+
+        finish.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(urgent.get(5, TimeUnit.SECONDS));
+        assertEquals(3, limiter.getShed());
+        assertEquals(2, quota.getAccepted());
+    }
+}
@@ -0,0 +1,113 @@
+package com.udacity.catpoint.image.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TilingImageServiceTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void tileOrigins_imageSmallerThanTile_singleTileAtZero() {
+        assertArrayEquals(new int[]{0}, TilingImageService.tileOrigins(100, 512, 64));
+        assertArrayEquals(new int[]{0}, TilingImageService.tileOrigins(512, 512, 64));
+    }
+
+    @Test
+    void tileOrigins_nonMultipleLength_lastTileEndsAtEdge() {
+        //stride 448: 0, 448, then pulled back from 896 to 1000 - 512
+        assertArrayEquals(new int[]{0, 448, 488}, TilingImageService.tileOrigins(1000, 512, 64));
+        assertArrayEquals(new int[]{0, 10}, TilingImageService.tileOrigins(110, 100, 0));
+        assertArrayEquals(new int[]{0, 100}, TilingImageService.tileOrigins(200, 100, 0));
+    }
+
+    @Test
+    void tileOrigins_largestOverlap_advancesOnePixelAtATime() {
+        assertArrayEquals(new int[]{0, 1, 2}, TilingImageService.tileOrigins(12, 10, 9));
+    }
+
+    @Test
+    void overlapNotSmallerThanTile_rejected() {
+        ImageService never = (image, threshhold) -> false;
+        assertThrows(IllegalArgumentException.class, () -> new TilingImageService(never, 10, 10, executor));
+        assertThrows(IllegalArgumentException.class, () -> new TilingImageService(never, 10, 11, executor));
+        assertThrows(IllegalArgumentException.class, () -> new TilingImageService(never, 10, -1, executor));
+    }
+
+    @Test
+    void smallImage_passedThroughWithoutTiling() {
+        AtomicInteger calls = new AtomicInteger();
+        TilingImageService service = new TilingImageService((image, threshhold) -> {
+            calls.incrementAndGet();
+            return image.getWidth() == 50;
+        }, 100, 10, executor);
+
+        assertTrue(service.imageContainsCat(new BufferedImage(50, 80, BufferedImage.TYPE_INT_RGB), 50));
+        assertEquals(1, calls.get());
+        assertEquals(0, service.getTiledImages());
+    }
+
+    @Test
+    void noCat_everyTileScannedAtFullSize() {
+        AtomicInteger fullSize = new AtomicInteger();
+        TilingImageService service = new TilingImageService((image, threshhold) -> {
+            if (image.getWidth() == 100 && image.getHeight() == 100) {
+                fullSize.incrementAndGet();
+            }
+            return false;
+        }, 100, 20, executor);
+
+        assertFalse(service.imageContainsCat(new BufferedImage(250, 170, BufferedImage.TYPE_INT_RGB), 50));
+        //x: 0, 80, 150; y: 0, 70
+        assertEquals(6, service.getTilesScanned());
+        assertEquals(6, fullSize.get());
+        assertEquals(0, service.getTilesSkipped());
+    }
+
+    @Test
+    void catInFirstTile_remainingTilesSkippedOrInterrupted() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        TilingImageService service = new TilingImageService((image, threshhold) -> {
+            try {
+                if (calls.getAndIncrement() == 0) {
+                    //answer once another tile is being scanned, so there is one to interrupt
+                    inFlight.await();
+                    return true;
+                }
+                //every other tile blocks like a slow network call until it is interrupted
+                inFlight.countDown();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return false;
+        }, 10, 0, pool);
+
+        try {
+            long start = System.nanoTime();
+            assertTrue(service.imageContainsCat(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB), 50));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+            assertTrue(service.getTilesSkipped() >= 90, "skipped " + service.getTilesSkipped());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
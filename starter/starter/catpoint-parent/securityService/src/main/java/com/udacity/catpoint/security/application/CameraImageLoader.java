@@ -0,0 +1,152 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.EncodedImages;
+import com.udacity.catpoint.image.service.FrameBufferPool;
+import com.udacity.catpoint.image.service.PooledFrame;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * Helpers for loading camera pictures. Large pictures are subsampled while they are decoded so
+ * a preview never has to hold the full resolution image in memory, and scaling is done with a
+ * few bilinear halving steps instead of {@link Image#getScaledInstance}, which is very slow.
+ *
+ * None of these methods touch Swing components, so they are safe to call off the EDT.
+ */
+public final class CameraImageLoader {
+
+    private CameraImageLoader() {
+    }
+
+    /**
+     * Decodes the given file at reduced resolution and scales it to exactly the requested size.
+     * @param file The picture to load
+     * @param width Width of the preview
+     * @param height Height of the preview
+     * @return A new image of the requested size
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static BufferedImage readPreview(File file, int width, int height) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Unable to open " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                //keep at least twice the target resolution so the bilinear steps still have detail to work with
+                int step = Math.min(reader.getWidth(0) / (width * 2), reader.getHeight(0) / (height * 2));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return scale(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #readPreview(File, int, int)}, but the picture is decoded into, scaled through and
+     * returned in images borrowed from the pool, so loading one picture after another reuses the same
+     * buffers instead of allocating new ones each time.
+     * @param file The picture to load
+     * @param width Width of the preview
+     * @param height Height of the preview
+     * @param pool Pool to borrow images from
+     * @return A pooled image of the requested size, to be released by the caller
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static PooledFrame readPreview(File file, int width, int height, FrameBufferPool pool) throws IOException {
+        PooledFrame decoded;
+        try {
+            //keep at least twice the target resolution so the bilinear steps still have detail to work with
+            decoded = pool.decode(EncodedImages.map(file.toPath()), width * 2, height * 2);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            throw new IOException("Unable to read " + file, e);
+        }
+        try {
+            return scale(decoded, width, height, pool);
+        } finally {
+            decoded.release();
+        }
+    }
+
+    /**
+     * Scales an image to the requested size. Downscaling is done in steps of at most one half so
+     * that bilinear filtering still takes every source pixel into account.
+     * @param source Image to scale
+     * @param width Target width
+     * @param height Target height
+     * @return A new image of the requested size
+     */
+    public static BufferedImage scale(BufferedImage source, int width, int height) {
+        int type = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = w > width ? Math.max(w / 2, width) : width;
+            h = h > height ? Math.max(h / 2, height) : height;
+
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+
+    /**
+     * Same as {@link #scale(BufferedImage, int, int)}, with the result and every intermediate step
+     * borrowed from the pool. The source frame is not released.
+     * @param source Frame to scale
+     * @param width Target width
+     * @param height Target height
+     * @param pool Pool to borrow images from
+     * @return A pooled image of the requested size, to be released by the caller
+     */
+    public static PooledFrame scale(PooledFrame source, int width, int height, FrameBufferPool pool) {
+        BufferedImage sourceImage = source.getImage();
+        int type = sourceImage.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        PooledFrame current = source.retain();
+        int w = sourceImage.getWidth();
+        int h = sourceImage.getHeight();
+        do {
+            w = w > width ? Math.max(w / 2, width) : width;
+            h = h > height ? Math.max(h / 2, height) : height;
+
+            PooledFrame next = pool.acquire(w, h, type);
+            Graphics2D g = next.getImage().createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(current.getImage(), 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+                current.release();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+}
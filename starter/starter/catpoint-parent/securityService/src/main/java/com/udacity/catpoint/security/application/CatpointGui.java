@@ -1,11 +1,22 @@
 package com.udacity.catpoint.security.application;
+import com.udacity.catpoint.image.service.AwsImageService;
 import com.udacity.catpoint.image.service.FakeImageService;
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.ImageServiceRouter;
 import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
 import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.service.LatencyTracer;
+import com.udacity.catpoint.security.service.SecurityScheduler;
 import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorActivityHistory;
 import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
 
 /**
  * This is the primary JFrame for the application that contains all the top-level JPanels.
@@ -14,19 +25,28 @@ import javax.swing.*;
  * all our dependencies and providing them to other classes as necessary.
  */
 public class CatpointGui extends JFrame {
-    private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl();
-    private ImageService imageService = new FakeImageService();
-    private SecurityService securityService = new SecurityService(securityRepository, imageService);
-    private DisplayPanel displayPanel = new DisplayPanel(securityService);
-    private ControlPanel controlPanel = new ControlPanel(securityService);
-    private SensorPanel sensorPanel = new SensorPanel(securityService);
-    private ImagePanel imagePanel = new ImagePanel(securityService);
+    private SecurityRepository securityRepository = new PretendDatabaseSecurityRepositoryImpl(
+            Paths.get(System.getProperty("user.home"), ".catpoint", "sensors.snapshot"));
+    private ImageService imageService = createImageService(
+            Paths.get(System.getProperty("user.home"), ".catpoint", "image-service.properties"));
+    //user events are few, so every one is traced; the report is available over JMX
+    private LatencyTracer latencyTracer = new LatencyTracer(1);
+    private SecurityService securityService = new SecurityService(securityRepository, imageService,
+            new SensorActivityHistory(), latencyTracer);
+    //one classifier thread is plenty for the pictures users pick by hand
+    private SecurityScheduler securityScheduler = new SecurityScheduler(securityService, 1);
+    private RenderScheduler renderScheduler = new RenderScheduler(RenderScheduler.DEFAULT_FRAMES_PER_SECOND);
+    private DisplayPanel displayPanel = new DisplayPanel(securityService, renderScheduler);
+    private ControlPanel controlPanel = new ControlPanel(securityService, securityScheduler);
+    private SensorPanel sensorPanel = new SensorPanel(securityService, securityScheduler, renderScheduler);
+    private ImagePanel imagePanel = new ImagePanel(securityService, securityScheduler, renderScheduler);
 
     public CatpointGui() {
         setLocation(100, 100);
         setSize(600, 850);
         setTitle("Very Secure App");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        latencyTracer.registerMBean();
 
         JPanel mainPanel = new JPanel();
         mainPanel.setLayout(new MigLayout());
@@ -38,4 +58,23 @@ public class CatpointGui extends JFrame {
         getContentPane().add(mainPanel);
 
     }
+
+    /**
+     * Routes image scans to the backend named in the config file, starting with the fake service, and
+     * picks up changes to the file while running. For example, to try the AWS service in shadow mode:
+     * <pre>
+     * imageService.primary=fake
+     * imageService.shadow=aws
+     * imageService.shadowSampleRate=0.2
+     * </pre>
+     */
+    private static ImageService createImageService(Path configFile) {
+        Properties defaults = new Properties();
+        defaults.setProperty(ImageServiceRouter.PRIMARY, "fake");
+        ImageServiceRouter router = new ImageServiceRouter(Map.<String, Supplier<? extends ImageService>>of(
+                "fake", FakeImageService::new,
+                "aws", AwsImageService::new), defaults, 1);
+        router.watch(configFile, Duration.ofSeconds(2));
+        return router;
+    }
 }
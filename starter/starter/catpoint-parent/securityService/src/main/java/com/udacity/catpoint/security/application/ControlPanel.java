@@ -1,6 +1,7 @@
 package com.udacity.catpoint.security.application;
 
 import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.service.SecurityScheduler;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 import javax.swing.*;
@@ -17,7 +18,7 @@ public class ControlPanel extends JPanel {
     private Map<ArmingStatus, JButton> buttonMap;
 
 
-    public ControlPanel(SecurityService securityService) {
+    public ControlPanel(SecurityService securityService, SecurityScheduler securityScheduler) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
@@ -31,10 +32,11 @@ public class ControlPanel extends JPanel {
         buttonMap = Arrays.stream(ArmingStatus.values())
                 .collect(Collectors.toMap(status -> status, status -> new JButton(status.getDescription())));
 
-        //add an action listener to each button that applies its arming status and recolors all the buttons
+        //add an action listener to each button that applies its arming status and recolors all the buttons.
+        // arming changes go ahead of any queued sensor or image work
         buttonMap.forEach((k, v) -> {
             v.addActionListener(e -> {
-                securityService.setArmingStatus(k);
+                securityScheduler.setArmingStatus(k);
                 buttonMap.forEach((status, button) -> button.setBackground(status == k ? status.getColor() : null));
             });
         });
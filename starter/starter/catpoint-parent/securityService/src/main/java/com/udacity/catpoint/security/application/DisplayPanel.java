@@ -10,16 +10,20 @@ import javax.swing.*;
 /**
  * Displays the current status of the system. Implements the StatusListener
  * interface so that it can be notified whenever the status changes.
+ *
+ * Notifications only record the latest status; the label is redrawn by the {@link RenderScheduler},
+ * at most once per frame however many notifications arrive.
  */
 public class DisplayPanel extends JPanel implements StatusListener {
 
     private JLabel currentStatusLabel;
+    private volatile AlarmStatus latestStatus;
+    private final RenderScheduler.Target statusView;
 
-    public DisplayPanel(SecurityService securityService) {
+    public DisplayPanel(SecurityService securityService, RenderScheduler renderScheduler) {
         super();
         setLayout(new MigLayout());
-
-        securityService.addStatusListener(this);
+        statusView = renderScheduler.register(this::renderStatus);
 
         JLabel panelLabel = new JLabel("Very Secure Home Security");
         JLabel systemStatusLabel = new JLabel("System Status:");
@@ -27,16 +31,25 @@ public class DisplayPanel extends JPanel implements StatusListener {
 
         panelLabel.setFont(StyleService.HEADING_FONT);
 
-        notify(securityService.getAlarmStatus());
+        latestStatus = securityService.getAlarmStatus();
+        renderStatus();
 
         add(panelLabel, "span 2, wrap");
         add(systemStatusLabel);
         add(currentStatusLabel, "wrap");
 
+        //called on the notifying thread; it only records the status, so it never holds up the security service
+        securityService.addStatusListener(this);
     }
 
     @Override
     public void notify(AlarmStatus status) {
+        latestStatus = status;
+        statusView.markDirty();
+    }
+
+    private void renderStatus() {
+        AlarmStatus status = latestStatus;
         currentStatusLabel.setText(status.getDescription());
         currentStatusLabel.setBackground(status.getColor());
         currentStatusLabel.setOpaque(true);
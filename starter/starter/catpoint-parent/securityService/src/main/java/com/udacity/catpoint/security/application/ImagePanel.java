@@ -1,34 +1,52 @@
 package com.udacity.catpoint.security.application;
 
+import com.udacity.catpoint.image.service.EncodedImages;
+import com.udacity.catpoint.image.service.FrameBufferPool;
+import com.udacity.catpoint.image.service.PooledFrame;
 import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.service.SecurityScheduler;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
- * by uploading their own picture, and 'scan' the picture, sending it for image analysis
+ * by uploading their own picture, and 'scan' the picture, sending it for image analysis.
+ *
+ * Only a preview sized copy of the picture is kept around and decoding happens on a background
+ * thread. Scanning hands the still-encoded file to the security service, so the full resolution
+ * image is only decoded if the image service actually needs pixels. Previews are decoded and scaled in
+ * pooled buffers; the shown preview's buffer goes back to the pool once the next one replaces it.
+ * Scan results only record the latest outcome, and the header is redrawn by the {@link RenderScheduler}.
  */
 public class ImagePanel extends JPanel implements StatusListener {
     private SecurityService securityService;
+    private SecurityScheduler securityScheduler;
 
     private JLabel cameraHeader;
     private JLabel cameraLabel;
-    private BufferedImage currentCameraImage;
+    private File currentCameraFile;
+    private final FrameBufferPool previewPool = new FrameBufferPool(2);
+    private PooledFrame currentPreview;
+    private volatile boolean latestCatDetected;
+    private final RenderScheduler.Target headerView;
 
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
 
-    public ImagePanel(SecurityService securityService) {
+    public ImagePanel(SecurityService securityService, SecurityScheduler securityScheduler,
+                      RenderScheduler renderScheduler) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        securityService.addStatusListener(this);
+        this.securityScheduler = securityScheduler;
+        headerView = renderScheduler.register(this::renderHeader);
 
         cameraHeader = new JLabel("Camera Feed");
         cameraHeader.setFont(StyleService.HEADING_FONT);
@@ -48,26 +66,84 @@ public class ImagePanel extends JPanel implements StatusListener {
             if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
                 return;
             }
-            try {
-                currentCameraImage = ImageIO.read(chooser.getSelectedFile());
-                Image tmp = new ImageIcon(currentCameraImage).getImage();
-                cameraLabel.setIcon(new ImageIcon(tmp.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH)));
-            } catch (IOException |NullPointerException ioe) {
-                JOptionPane.showMessageDialog(null, "Invalid image selected.");
-            }
-            repaint();
+            loadPicture(chooser.getSelectedFile());
         });
 
         //button that sends the image to the image service
         JButton scanPictureButton = new JButton("Scan Picture");
-        scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
-        });
+        scanPictureButton.addActionListener(e -> scanPicture());
 
         add(cameraHeader, "span 3, wrap");
         add(cameraLabel, "span 3, wrap");
         add(addPictureButton);
         add(scanPictureButton);
+
+        //called on the scanning thread; it only records the result, the header is redrawn in the next frame
+        securityService.addStatusListener(this);
+    }
+
+    /**
+     * Decodes a preview of the selected picture off the EDT and displays it once ready.
+     * @param file The picture to show as the current camera image
+     */
+    private void loadPicture(File file) {
+        new SwingWorker<PooledFrame, Void>() {
+            @Override
+            protected PooledFrame doInBackground() throws Exception {
+                return CameraImageLoader.readPreview(file, IMAGE_WIDTH, IMAGE_HEIGHT, previewPool);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    PooledFrame preview = get();
+                    cameraLabel.setIcon(new ImageIcon(preview.getImage()));
+                    //the label no longer shows the old preview, so its buffer can be reused
+                    if (currentPreview != null) {
+                        currentPreview.release();
+                    }
+                    currentPreview = preview;
+                    currentCameraFile = file;
+                } catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(null, "Invalid image selected.");
+                }
+                repaint();
+            }
+        }.execute();
+    }
+
+    /**
+     * Maps the current picture file off the EDT, then queues its encoded bytes for background analysis.
+     */
+    private void scanPicture() {
+        File file = currentCameraFile;
+        if (file == null) {
+            reportScanFailure(securityScheduler.processImage((BufferedImage) null));
+            return;
+        }
+        new SwingWorker<ByteBuffer, Void>() {
+            @Override
+            protected ByteBuffer doInBackground() throws Exception {
+                return EncodedImages.map(file.toPath());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    reportScanFailure(securityScheduler.processImage(get()));
+                } catch (InterruptedException | ExecutionException ex) {
+                    JOptionPane.showMessageDialog(null, "Unable to read image for scanning.");
+                }
+            }
+        }.execute();
+    }
+
+    private static void reportScanFailure(CompletableFuture<Boolean> scan) {
+        scan.exceptionally(ex -> {
+            SwingUtilities.invokeLater(() ->
+                    JOptionPane.showMessageDialog(null, "Unable to scan image: " + ex.getMessage()));
+            return null;
+        });
     }
 
     @Override
@@ -77,7 +153,12 @@ public class ImagePanel extends JPanel implements StatusListener {
 
     @Override
     public void catDetected(boolean catDetected) {
-        if(catDetected) {
+        latestCatDetected = catDetected;
+        headerView.markDirty();
+    }
+
+    private void renderHeader() {
+        if(latestCatDetected) {
             cameraHeader.setText("DANGER - CAT DETECTED");
         } else {
             cameraHeader.setText("Camera Feed - No Cats Detected");
@@ -0,0 +1,131 @@
+package com.udacity.catpoint.security.application;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how often the panels redraw. Panels keep the latest model state themselves, updated from any
+ * thread, and only mark their {@link Target} dirty; the scheduler then runs every dirty target's render
+ * step on the EDT at most once per frame. However many events arrive in a frame, each panel redraws once,
+ * from the state as it is when the frame runs.
+ *
+ * When nothing is dirty no timer is running, so an idle UI costs nothing.
+ */
+public class RenderScheduler {
+
+    public static final int DEFAULT_FRAMES_PER_SECOND = 60;
+
+    private final long frameNanos;
+    private final List<Target> targets = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final Timer timer;
+    //only touched on the EDT
+    private long lastFrameStart = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong marks = new AtomicLong();
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+
+    /**
+     * A piece of UI that redraws itself from the latest model state.
+     */
+    public final class Target {
+        private final Runnable render;
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        private Target(Runnable render) {
+            this.render = render;
+        }
+
+        /**
+         * Asks for this target to be rendered in the next frame. Safe to call from any thread, as
+         * often as you like.
+         */
+        public void markDirty() {
+            marks.incrementAndGet();
+            if (dirty.compareAndSet(false, true)) {
+                scheduleFrame();
+            }
+        }
+    }
+
+    public RenderScheduler() {
+        this(DEFAULT_FRAMES_PER_SECOND);
+    }
+
+    /**
+     * @param framesPerSecond Most frames rendered per second
+     */
+    public RenderScheduler(int framesPerSecond) {
+        if (framesPerSecond < 1) {
+            throw new IllegalArgumentException("framesPerSecond must be positive: " + framesPerSecond);
+        }
+        this.frameNanos = TimeUnit.SECONDS.toNanos(1) / framesPerSecond;
+        this.timer = new Timer(0, e -> renderFrame());
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Registers a render step. It runs on the EDT, so it should only copy already computed state into
+     * Swing components.
+     * @param render Render step to run whenever the returned target is dirty
+     * @return the target to mark dirty when the state behind it changes
+     */
+    public Target register(Runnable render) {
+        Target target = new Target(render);
+        targets.add(target);
+        return target;
+    }
+
+    private void scheduleFrame() {
+        if (frameScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::startTimer);
+        }
+    }
+
+    private void startTimer() {
+        long sinceLastFrame = System.nanoTime() - lastFrameStart;
+        long delayMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, frameNanos - sinceLastFrame));
+        if (delayMillis == 0) {
+            renderFrame();
+        } else {
+            timer.setInitialDelay((int) delayMillis);
+            timer.restart();
+        }
+    }
+
+    private void renderFrame() {
+        lastFrameStart = System.nanoTime();
+        //cleared before rendering, so anything marked dirty from here on gets its own frame
+        frameScheduled.set(false);
+        frames.incrementAndGet();
+        for (Target target : targets) {
+            if (target.dirty.getAndSet(false)) {
+                renders.incrementAndGet();
+                target.render.run();
+            }
+        }
+    }
+
+    /**
+     * @return number of times any target was marked dirty
+     */
+    public long getMarkCount() {
+        return marks.get();
+    }
+
+    public long getFrameCount() {
+        return frames.get();
+    }
+
+    /**
+     * @return number of render steps run, across all targets
+     */
+    public long getRenderCount() {
+        return renders.get();
+    }
+}
@@ -1,7 +1,10 @@
 package com.udacity.catpoint.security.application;
 
+import com.udacity.catpoint.security.data.AlarmStatus;
 import com.udacity.catpoint.security.data.Sensor;
 import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.data.VersionedSensorStore;
+import com.udacity.catpoint.security.service.SecurityScheduler;
 import com.udacity.catpoint.security.service.SecurityService;
 import net.miginfocom.swing.MigLayout;
 
@@ -10,10 +13,14 @@ import javax.swing.*;
 /**
  * Panel that allows users to add sensors to their system. Sensors may be
  * manually set to "active" and "inactive" to test the system.
+ *
+ * Sensor changes, whether made here or elsewhere, only mark the list dirty. The {@link RenderScheduler}
+ * rebuilds it at most once per frame, and only if the sensor snapshot has a new version since the last rebuild.
  */
-public class SensorPanel extends JPanel {
+public class SensorPanel extends JPanel implements StatusListener {
 
     private SecurityService securityService;
+    private SecurityScheduler securityScheduler;
 
     private JLabel panelLabel = new JLabel("Sensor Management");
     private JLabel newSensorName = new JLabel("Name:");
@@ -24,11 +31,17 @@ public class SensorPanel extends JPanel {
 
     private JPanel sensorListPanel;
     private JPanel newSensorPanel;
+    private final RenderScheduler.Target sensorListView;
+    //version of the snapshot the list was last built from; only used on the EDT
+    private long renderedVersion = Long.MIN_VALUE;
 
-    public SensorPanel(SecurityService securityService) {
+    public SensorPanel(SecurityService securityService, SecurityScheduler securityScheduler,
+                       RenderScheduler renderScheduler) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
+        this.securityScheduler = securityScheduler;
+        sensorListView = renderScheduler.register(() -> updateSensorList(sensorListPanel));
 
         panelLabel.setFont(StyleService.HEADING_FONT);
         addNewSensorButton.addActionListener(e ->
@@ -44,6 +57,9 @@ public class SensorPanel extends JPanel {
         add(panelLabel, "wrap");
         add(newSensorPanel, "span");
         add(sensorListPanel, "span");
+
+        //called on the notifying thread; the list is rebuilt in the next frame
+        securityService.addStatusListener(this);
     }
 
     /**
@@ -62,12 +78,20 @@ public class SensorPanel extends JPanel {
 
     /**
      * Requests the current list of sensors and updates the provided panel to display them. Sensors
-     * will display in the order that they are created.
+     * will display in the order that they are created. Does nothing if the sensors haven't changed
+     * since the panel was last populated.
      * @param p The Panel to populate with the current list of sensors
      */
     private void updateSensorList(JPanel p) {
+        VersionedSensorStore.Snapshot snapshot = securityService.getSensorSnapshot();
+        //snapshots that don't come from a store all have version -1, so those are always rebuilt
+        if (snapshot.getVersion() >= 0 && snapshot.getVersion() == renderedVersion) {
+            return;
+        }
+        renderedVersion = snapshot.getVersion();
         p.removeAll();
-        securityService.getSensors().stream().sorted().forEach(s -> {
+        //the snapshot is immutable and already sorted, so it is iterated directly
+        snapshot.getSensors().forEach(s -> {
             JLabel sensorLabel = new JLabel(String.format("%s(%s): %s", s.getName(),  s.getSensorType().toString(),(s.getActive() ? "Active" : "Inactive")));
             JButton sensorToggleButton = new JButton((s.getActive() ? "Deactivate" : "Activate"));
             JButton sensorRemoveButton = new JButton("Remove Sensor");
@@ -86,34 +110,47 @@ public class SensorPanel extends JPanel {
     }
 
     /**
-     * Asks the securityService to change a sensor activation status and then rebuilds the current sensor list
+     * Queues a sensor activation change on the scheduler. The list is rebuilt once the change is made
+     * and the sensor status listener fires
      * @param sensor The sensor to update
      * @param isActive The sensor's activation status
      */
     private void setSensorActivity(Sensor sensor, Boolean isActive) {
-        securityService.changeSensorActivationStatus(sensor, isActive);
-        updateSensorList(sensorListPanel);
+        securityScheduler.changeSensorActivationStatus(sensor, isActive);
     }
 
     /**
-     * Adds a sensor to the securityService and then rebuilds the sensor list
+     * Queues adding a sensor on the scheduler, then rebuilds the sensor list once it is added
      * @param sensor The sensor to add
      */
     private void addSensor(Sensor sensor) {
         if(securityService.getSensors().size() < 4) {
-            securityService.addSensor(sensor);
-            updateSensorList(sensorListPanel);
+            securityScheduler.addSensor(sensor).thenRun(sensorListView::markDirty);
         } else {
             JOptionPane.showMessageDialog(null, "To add more than 4 sensors, please subscribe to our Premium Membership!");
         }
     }
 
     /**
-     * Remove a sensor from the securityService and then rebuild the sensor list
+     * Queues removing a sensor on the scheduler, then rebuilds the sensor list once it is removed
      * @param sensor The sensor to remove
      */
     private void removeSensor(Sensor sensor) {
-        securityService.removeSensor(sensor);
-        updateSensorList(sensorListPanel);
+        securityScheduler.removeSensor(sensor).thenRun(sensorListView::markDirty);
+    }
+
+    @Override
+    public void notify(AlarmStatus status) {
+        //no behavior necessary
+    }
+
+    @Override
+    public void catDetected(boolean catDetected) {
+        //no behavior necessary
+    }
+
+    @Override
+    public void sensorStatusChanged() {
+        sensorListView.markDirty();
     }
 }
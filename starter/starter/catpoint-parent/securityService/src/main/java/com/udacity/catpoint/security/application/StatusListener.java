@@ -1,6 +1,7 @@
 package com.udacity.catpoint.security.application;
 
 import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.Sensor;
 
 /**
  * Identifies a component that should be notified whenever the system status changes
@@ -9,4 +10,13 @@ public interface StatusListener {
     void notify(AlarmStatus status);
     void catDetected(boolean catDetected);
     void sensorStatusChanged();
+
+    /**
+     * Called when a tracked sensor misses its heartbeat deadline, or reports in again after that.
+     * @param sensor The sensor
+     * @param online Whether the sensor is now online
+     */
+    default void sensorLivenessChanged(Sensor sensor, boolean online) {
+        //no behavior necessary
+    }
 }
@@ -0,0 +1,134 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory repository for very large sensor fleets. Sensors live in a {@link ColumnarSensorStore}
+ * rather than as individual objects. Like the other repositories, {@link #getSensors()} returns the
+ * sensors sorted for display, as an immutable snapshot of plain copies. The snapshot is only rebuilt
+ * when it is read after a change, so a burst of writes costs one rebuild rather than one per write, and
+ * repeated reads cost nothing. Callers that want to avoid the copies can read {@link #getStore()}
+ * directly, but should write through the repository so snapshots stay current. Nothing is persisted
+ * between app loads.
+ */
+public class ColumnarSecurityRepository implements SecurityRepository {
+
+    private final ColumnarSensorStore store;
+    //incremented by every sensor write while holding this
+    private volatile long version;
+    private volatile VersionedSensorStore.Snapshot snapshot = VersionedSensorStore.Snapshot.build(0, List.of());
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    private Boolean sensorStatus;
+    private Boolean catDisplayed = false;
+
+    public ColumnarSecurityRepository() {
+        this(new ColumnarSensorStore());
+    }
+
+    public ColumnarSecurityRepository(ColumnarSensorStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return the store backing this repository
+     */
+    public ColumnarSensorStore getStore() {
+        return store;
+    }
+
+    @Override
+    public String add(String input1, String input2) {
+        return input1 + input2;
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        store.put(sensor);
+        version++;
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        if (store.remove(sensor.getSensorId())) {
+            version++;
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        store.put(sensor);
+        version++;
+    }
+
+    @Override
+    public synchronized void updateSensors(Collection<Sensor> sensors) {
+        for (Sensor sensor : sensors) {
+            store.put(sensor);
+        }
+        version++;
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    @Override
+    public void setCatDisplayed(Boolean cat) {
+        this.catDisplayed = cat;
+    }
+
+    @Override
+    public void changeSensorStatus(Boolean status) {
+        sensorStatus = status;
+    }
+
+    @Override
+    public Boolean getCatDisplayed() {
+        return catDisplayed;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return getSensorSnapshot().getSensors();
+    }
+
+    @Override
+    public VersionedSensorStore.Snapshot getSensorSnapshot() {
+        VersionedSensorStore.Snapshot current = snapshot;
+        if (current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot.getVersion() != version) {
+                List<Sensor> copies = new ArrayList<>(store.size());
+                for (int row = 0; row < store.rowLimit(); row++) {
+                    if (store.isLive(row)) {
+                        copies.add(store.copy(row));
+                    }
+                }
+                snapshot = VersionedSensorStore.Snapshot.build(version, copies);
+            }
+            return snapshot;
+        }
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+}
@@ -0,0 +1,512 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores sensors column by column in primitive arrays instead of as one object per sensor. Ids are kept
+ * as two long columns, activation as a packed bitset, types as enum ordinals and names as indexes into
+ * a table of interned strings. Lookups by id go through an open addressing hash index over row numbers,
+ * so the store holds no per-sensor objects at all.
+ *
+ * Rows keep their number for as long as the sensor is stored; the rows of removed sensors are reused.
+ * {@link #view(int)} returns a flyweight {@link Sensor} that reads and writes a row directly. Every row
+ * has a generation that changes when its sensor is removed, so a view used after its sensor was removed
+ * throws {@link IllegalStateException} rather than showing whichever sensor reuses the row. Names are
+ * reference counted, and a name no row uses any more is dropped from the table.
+ *
+ * Like the TreeSet it replaces, this class is not thread safe.
+ */
+public class ColumnarSensorStore {
+
+    private static final SensorType[] TYPES = SensorType.values();
+    private static final int INITIAL_CAPACITY = 16;
+
+    //row columns
+    private long[] idHigh = new long[INITIAL_CAPACITY];
+    private long[] idLow = new long[INITIAL_CAPACITY];
+    private int[] nameIds = new int[INITIAL_CAPACITY];
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private long[] activeBits = new long[INITIAL_CAPACITY / 64 + 1];
+    private long[] liveBits = new long[INITIAL_CAPACITY / 64 + 1];
+    private int[] generations = new int[INITIAL_CAPACITY];
+    private int rowLimit;
+    private int size;
+
+    //rows freed by remove(), reused before rowLimit grows
+    private int[] freeRows = new int[INITIAL_CAPACITY];
+    private int freeCount;
+
+    //hash index from id to row + 1, 0 marks an empty slot
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    //interned names; slots of names no row uses any more are null and reused
+    private final List<String> names = new ArrayList<>();
+    private int[] nameRefs = new int[INITIAL_CAPACITY];
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+    private int[] freeNames = new int[INITIAL_CAPACITY];
+    private int freeNameCount;
+
+    /**
+     * @return number of sensors in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return one past the highest row number that has ever been used
+     */
+    public int rowLimit() {
+        return rowLimit;
+    }
+
+    /**
+     * Adds a sensor or, if one with the same id is already stored, overwrites its row.
+     * @return the row of the sensor
+     */
+    public int put(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        int row = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (row < 0) {
+            row = allocateRow();
+            idHigh[row] = id.getMostSignificantBits();
+            idLow[row] = id.getLeastSignificantBits();
+            setBit(liveBits, row, true);
+            size++;
+            insertIndex(row);
+        }
+        setName(row, sensor.getName());
+        setType(row, sensor.getSensorType());
+        setActive(row, Boolean.TRUE.equals(sensor.getActive()));
+        return row;
+    }
+
+    /**
+     * @return the row of the sensor with the given id, or -1 if it isn't stored
+     */
+    public int find(UUID sensorId) {
+        return find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the row of the sensor with the given id halves, or -1 if it isn't stored
+     */
+    public int find(long high, long low) {
+        int mask = index.length - 1;
+        for (int slot = slot(high, low, mask); index[slot] != 0; slot = (slot + 1) & mask) {
+            int row = index[slot] - 1;
+            if (idHigh[row] == high && idLow[row] == low) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private int findSlot(long high, long low) {
+        int mask = index.length - 1;
+        for (int slot = slot(high, low, mask); index[slot] != 0; slot = (slot + 1) & mask) {
+            int row = index[slot] - 1;
+            if (idHigh[row] == high && idLow[row] == low) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the sensor with the given id. Views of it stop working.
+     * @return true if the sensor was stored
+     */
+    public boolean remove(UUID sensorId) {
+        int slot = findSlot(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if (slot < 0) {
+            return false;
+        }
+        int row = index[slot] - 1;
+        deleteIndexSlot(slot);
+        setBit(liveBits, row, false);
+        setBit(activeBits, row, false);
+        releaseName(nameIds[row]);
+        nameIds[row] = -1;
+        generations[row]++;
+        freeRows[freeCount++] = row;
+        size--;
+        return true;
+    }
+
+    /**
+     * Gives the sensor in a row a new id. Its views follow it.
+     * @throws IllegalArgumentException if another sensor already has the new id
+     */
+    public void setId(int row, UUID sensorId) {
+        long high = sensorId.getMostSignificantBits();
+        long low = sensorId.getLeastSignificantBits();
+        int existing = find(high, low);
+        if (existing == row) {
+            return;
+        }
+        if (existing >= 0) {
+            throw new IllegalArgumentException("Another sensor already has id " + sensorId);
+        }
+        deleteIndexSlot(findSlot(idHigh[row], idLow[row]));
+        idHigh[row] = high;
+        idLow[row] = low;
+        insertSlot(row);
+    }
+
+    public boolean isLive(int row) {
+        return row < rowLimit && getBit(liveBits, row);
+    }
+
+    public UUID getId(int row) {
+        return new UUID(idHigh[row], idLow[row]);
+    }
+
+    public long getIdHigh(int row) {
+        return idHigh[row];
+    }
+
+    public long getIdLow(int row) {
+        return idLow[row];
+    }
+
+    public String getName(int row) {
+        return names.get(nameIds[row]);
+    }
+
+    public void setName(int row, String name) {
+        //take the new reference first, so renaming a row to its own name never drops the name
+        int id = internName(name);
+        int previous = nameIds[row];
+        nameIds[row] = id;
+        if (previous >= 0) {
+            releaseName(previous);
+        }
+    }
+
+    /**
+     * @return number of distinct names in use
+     */
+    public int nameCount() {
+        return nameIndex.size();
+    }
+
+    private int internName(String name) {
+        Integer existing = nameIndex.get(name);
+        int id;
+        if (existing != null) {
+            id = existing;
+        } else if (freeNameCount > 0) {
+            id = freeNames[--freeNameCount];
+            names.set(id, name);
+            nameIndex.put(name, id);
+        } else {
+            id = names.size();
+            names.add(name);
+            nameIndex.put(name, id);
+            if (id == nameRefs.length) {
+                nameRefs = Arrays.copyOf(nameRefs, id * 2);
+                freeNames = Arrays.copyOf(freeNames, id * 2);
+            }
+        }
+        nameRefs[id]++;
+        return id;
+    }
+
+    private void releaseName(int id) {
+        if (--nameRefs[id] == 0) {
+            nameIndex.remove(names.get(id));
+            names.set(id, null);
+            freeNames[freeNameCount++] = id;
+        }
+    }
+
+    public SensorType getType(int row) {
+        return TYPES[types[row]];
+    }
+
+    public void setType(int row, SensorType type) {
+        types[row] = (byte) type.ordinal();
+    }
+
+    public boolean isActive(int row) {
+        return getBit(activeBits, row);
+    }
+
+    public void setActive(int row, boolean active) {
+        setBit(activeBits, row, active);
+    }
+
+    /**
+     * @return number of active sensors, counted a word of the bitset at a time
+     */
+    public int activeCount() {
+        int count = 0;
+        for (long word : activeBits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * @return a flyweight sensor backed by the given row, valid until its sensor is removed
+     * @throws IllegalArgumentException if no sensor is stored in the row
+     */
+    public Sensor view(int row) {
+        if (!isLive(row)) {
+            throw new IllegalArgumentException("No sensor in row " + row);
+        }
+        return new SensorView(this, row, generations[row]);
+    }
+
+    /**
+     * @return a plain sensor with the values of the given row, independent of the store
+     */
+    public Sensor copy(int row) {
+        Sensor sensor = new Sensor();
+        sensor.setSensorId(getId(row));
+        sensor.setName(getName(row));
+        sensor.setSensorType(getType(row));
+        sensor.setActive(isActive(row));
+        return sensor;
+    }
+
+    /**
+     * @return a live set view of the stored sensors. Iteration creates a flyweight per element
+     */
+    public Set<Sensor> asSet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Sensor> iterator() {
+                return new RowIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Sensor && find(((Sensor) o).getSensorId()) >= 0;
+            }
+
+            @Override
+            public boolean add(Sensor sensor) {
+                boolean added = find(sensor.getSensorId()) < 0;
+                put(sensor);
+                return added;
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return o instanceof Sensor && ColumnarSensorStore.this.remove(((Sensor) o).getSensorId());
+            }
+        };
+    }
+
+    private int allocateRow() {
+        if (freeCount > 0) {
+            return freeRows[--freeCount];
+        }
+        if (rowLimit == idHigh.length) {
+            int capacity = idHigh.length * 2;
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            types = Arrays.copyOf(types, capacity);
+            activeBits = Arrays.copyOf(activeBits, capacity / 64 + 1);
+            liveBits = Arrays.copyOf(liveBits, capacity / 64 + 1);
+            generations = Arrays.copyOf(generations, capacity);
+            freeRows = Arrays.copyOf(freeRows, capacity);
+        }
+        nameIds[rowLimit] = -1;
+        return rowLimit++;
+    }
+
+    private void insertIndex(int row) {
+        //keep the load factor at or below one half
+        if (size * 2 > index.length) {
+            index = new int[index.length * 2];
+            for (int r = 0; r < rowLimit; r++) {
+                if (getBit(liveBits, r)) {
+                    insertSlot(r);
+                }
+            }
+        } else {
+            insertSlot(row);
+        }
+    }
+
+    private void insertSlot(int row) {
+        int mask = index.length - 1;
+        int slot = slot(idHigh[row], idLow[row], mask);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    /**
+     * Empties a slot and shifts later entries of the same probe run back, so lookups never need tombstones.
+     */
+    private void deleteIndexSlot(int slot) {
+        int mask = index.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (index[next] != 0) {
+            int row = index[next] - 1;
+            int home = slot(idHigh[row], idLow[row], mask);
+            //move the entry if its home slot is not between the hole and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    private static int slot(long high, long low, int mask) {
+        long h = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    private static boolean getBit(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void setBit(long[] bits, int i, boolean value) {
+        if (value) {
+            bits[i >>> 6] |= 1L << i;
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    private class RowIterator implements Iterator<Sensor> {
+        private int next = advance(0);
+        private int last = -1;
+
+        private int advance(int from) {
+            int row = from;
+            while (row < rowLimit && !getBit(liveBits, row)) {
+                row++;
+            }
+            return row;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < rowLimit;
+        }
+
+        @Override
+        public Sensor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return view(last);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            ColumnarSensorStore.this.remove(getId(last));
+            last = -1;
+        }
+    }
+
+    /**
+     * Flyweight sensor that reads and writes one row of the store, for as long as the sensor it was
+     * created for is still in that row.
+     */
+    private static class SensorView extends Sensor {
+        private final ColumnarSensorStore store;
+        private final int row;
+        private final int generation;
+
+        SensorView(ColumnarSensorStore store, int row, int generation) {
+            this.store = store;
+            this.row = row;
+            this.generation = generation;
+        }
+
+        private int row() {
+            if (store.generations[row] != generation) {
+                throw new IllegalStateException("Sensor was removed from the store");
+            }
+            return row;
+        }
+
+        @Override
+        public String getName() {
+            return store.getName(row());
+        }
+
+        @Override
+        public void setName(String name) {
+            store.setName(row(), name);
+        }
+
+        @Override
+        public Boolean getActive() {
+            return store.isActive(row());
+        }
+
+        @Override
+        public void setActive(Boolean active) {
+            store.setActive(row(), active);
+        }
+
+        @Override
+        public SensorType getSensorType() {
+            return store.getType(row());
+        }
+
+        @Override
+        public void setSensorType(SensorType sensorType) {
+            store.setType(row(), sensorType);
+        }
+
+        @Override
+        public UUID getSensorId() {
+            return store.getId(row());
+        }
+
+        @Override
+        public void setSensorId(UUID sensorId) {
+            store.setId(row(), sensorId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof SensorView && ((SensorView) o).store == store) {
+                SensorView other = (SensorView) o;
+                return other.row == row && other.generation == generation;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            //same value as UUID.hashCode(), without creating the UUID
+            int r = row();
+            long hilo = store.getIdHigh(r) ^ store.getIdLow(r);
+            return ((int) (hilo >> 32)) ^ (int) hilo;
+        }
+    }
+}
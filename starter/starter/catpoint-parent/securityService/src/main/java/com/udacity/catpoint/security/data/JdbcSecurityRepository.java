@@ -0,0 +1,458 @@
+package com.udacity.catpoint.security.data;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository backed by a relational database through JDBC, for example an embedded H2 database. Each
+ * sensor is its own row, so changing a sensor updates one row instead of rewriting the whole sensor
+ * list, and bulk changes are sent as a single JDBC batch in one transaction.
+ *
+ * Sensors and system state are cached in memory: the sensor table is read the first time the sensors
+ * are asked for, and after that reads never touch the database. Writes are applied to the database in
+ * order on a single writer thread, and the cache is only changed once a write has committed, so it never
+ * shows a change the database rejected. The synchronous methods wait for their write; after the
+ * asynchronous ones return, reads keep showing the old values until the write commits.
+ *
+ * The cached sensors are kept in a {@link VersionedSensorStore}, so {@link #getSensors()} returns an
+ * immutable snapshot that callers can iterate while sensors are written, without a copy per call.
+ *
+ * Connections come from a small fixed-size pool. Only the writer thread and the first read of the
+ * sensors use them, so the default is one connection for each.
+ *
+ * Like the other repositories, the cat-displayed and sensor status flags are only kept in memory.
+ */
+public class JdbcSecurityRepository implements SecurityRepository, AutoCloseable {
+
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final String CREATE_SENSORS = "CREATE TABLE IF NOT EXISTS sensors ("
+            + "sensor_id CHAR(36) PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+            + "sensor_type VARCHAR(16) NOT NULL, active BOOLEAN NOT NULL)";
+    private static final String CREATE_SYSTEM_STATE = "CREATE TABLE IF NOT EXISTS system_state ("
+            + "id INT PRIMARY KEY, arming_status VARCHAR(16) NOT NULL, alarm_status VARCHAR(16) NOT NULL)";
+    private static final String INSERT_SENSOR = "INSERT INTO sensors (sensor_id, name, sensor_type, active) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_SENSOR = "UPDATE sensors SET name = ?, sensor_type = ?, active = ? WHERE sensor_id = ?";
+    private static final String DELETE_SENSOR = "DELETE FROM sensors WHERE sensor_id = ?";
+    private static final String SELECT_SENSORS = "SELECT sensor_id, name, sensor_type, active FROM sensors";
+    private static final String SELECT_STATE = "SELECT arming_status, alarm_status FROM system_state WHERE id = 1";
+    private static final String INSERT_STATE = "INSERT INTO system_state (id, arming_status, alarm_status) VALUES (1, ?, ?)";
+    //a null parameter leaves its column as it is
+    private static final String UPDATE_STATE = "UPDATE system_state SET arming_status = COALESCE(?, arming_status), "
+            + "alarm_status = COALESCE(?, alarm_status) WHERE id = 1";
+
+    private final BlockingQueue<Connection> pool;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "jdbc-repository-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    //cache of committed values, guarded by this
+    private final VersionedSensorStore store = new VersionedSensorStore();
+    private volatile boolean sensorsLoaded;
+    private AlarmStatus alarmStatus;
+    private ArmingStatus armingStatus;
+    private Boolean sensorStatus;
+    private Boolean catDisplayed = false;
+
+    public JdbcSecurityRepository(String jdbcUrl) {
+        this(jdbcUrl, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Opens the connections, creates the tables if they don't exist yet and loads the system state.
+     * @param jdbcUrl JDBC URL of the database, for example {@code jdbc:h2:~/.catpoint/catpoint}
+     * @param poolSize Number of connections kept open
+     * @throws RepositoryException if the database can't be opened
+     */
+    public JdbcSecurityRepository(String jdbcUrl, int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be at least 1: " + poolSize);
+        }
+        pool = new ArrayBlockingQueue<>(poolSize);
+        try {
+            for (int i = 0; i < poolSize; i++) {
+                pool.add(DriverManager.getConnection(jdbcUrl));
+            }
+        } catch (SQLException e) {
+            closeConnections();
+            throw new RepositoryException("Unable to connect to " + jdbcUrl, e);
+        }
+        withConnection(this::loadState);
+    }
+
+    private Void loadState(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_SENSORS);
+            statement.execute(CREATE_SYSTEM_STATE);
+            try (ResultSet rs = statement.executeQuery(SELECT_STATE)) {
+                if (rs.next()) {
+                    armingStatus = ArmingStatus.valueOf(rs.getString(1));
+                    alarmStatus = AlarmStatus.valueOf(rs.getString(2));
+                    return null;
+                }
+            }
+        }
+        armingStatus = ArmingStatus.DISARMED;
+        alarmStatus = AlarmStatus.NO_ALARM;
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_STATE)) {
+            insert.setString(1, armingStatus.name());
+            insert.setString(2, alarmStatus.name());
+            insert.executeUpdate();
+        }
+        return null;
+    }
+
+    @Override
+    public String add(String input1, String input2) {
+        return input1 + input2;
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        SensorRow row = new SensorRow(sensor);
+        join(write(connection -> insert(connection, List.of(row)), () -> cacheSensors(List.of(row))));
+    }
+
+    /**
+     * Removes the sensor with the same id, even if it has been renamed since it was read.
+     */
+    @Override
+    public void removeSensor(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        join(write(connection -> {
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_SENSOR)) {
+                delete.setString(1, id.toString());
+                delete.executeUpdate();
+            }
+        }, () -> {
+            if (sensorsLoaded) {
+                store.remove(sensor);
+            }
+        }));
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        join(updateSensorAsync(sensor));
+    }
+
+    @Override
+    public void updateSensors(Collection<Sensor> sensors) {
+        join(updateSensorsAsync(sensors));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateSensorAsync(Sensor sensor) {
+        return updateSensorsAsync(List.of(sensor));
+    }
+
+    /**
+     * Sends all the rows to the database as one batch, and updates the cache once it has committed.
+     * Sensors that aren't in the database yet are inserted.
+     * @return future that completes once the batch is written
+     */
+    @Override
+    public CompletableFuture<Void> updateSensorsAsync(Collection<Sensor> changed) {
+        List<SensorRow> rows = new ArrayList<>(changed.size());
+        for (Sensor sensor : changed) {
+            rows.add(new SensorRow(sensor));
+        }
+        return write(connection -> {
+            int[] counts;
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_SENSOR)) {
+                for (SensorRow row : rows) {
+                    update.setString(1, row.name);
+                    update.setString(2, row.type);
+                    update.setBoolean(3, row.active);
+                    update.setString(4, row.id);
+                    update.addBatch();
+                }
+                counts = update.executeBatch();
+            }
+            List<SensorRow> missing = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    missing.add(rows.get(i));
+                }
+            }
+            if (!missing.isEmpty()) {
+                insert(connection, missing);
+            }
+        }, () -> cacheSensors(rows));
+    }
+
+    /**
+     * Stores committed rows in the cache, by id. Must hold this
+     */
+    private void cacheSensors(List<SensorRow> rows) {
+        //if the sensors haven't been read yet, reading them will pick up this write
+        if (!sensorsLoaded) {
+            return;
+        }
+        List<Sensor> committed = new ArrayList<>(rows.size());
+        for (SensorRow row : rows) {
+            committed.add(row.toSensor());
+        }
+        store.put(committed);
+    }
+
+    private static void insert(Connection connection, List<SensorRow> rows) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SENSOR)) {
+            for (SensorRow row : rows) {
+                insert.setString(1, row.id);
+                insert.setString(2, row.name);
+                insert.setString(3, row.type);
+                insert.setBoolean(4, row.active);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        join(updateStatusAsync(null, alarmStatus));
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        join(updateStatusAsync(armingStatus, null));
+    }
+
+    @Override
+    public void updateStatus(ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        join(updateStatusAsync(armingStatus, alarmStatus));
+    }
+
+    @Override
+    public CompletableFuture<Void> setAlarmStatusAsync(AlarmStatus alarmStatus) {
+        return updateStatusAsync(null, alarmStatus);
+    }
+
+    /**
+     * Both columns live in one row, so the arming and alarm status are always written together.
+     * @return future that completes once the row is written
+     */
+    @Override
+    public CompletableFuture<Void> updateStatusAsync(ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        return write(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_STATE)) {
+                update.setString(1, armingStatus == null ? null : armingStatus.name());
+                update.setString(2, alarmStatus == null ? null : alarmStatus.name());
+                update.executeUpdate();
+            }
+        }, () -> {
+            if (armingStatus != null) {
+                this.armingStatus = armingStatus;
+            }
+            if (alarmStatus != null) {
+                this.alarmStatus = alarmStatus;
+            }
+        });
+    }
+
+    @Override
+    public synchronized void setCatDisplayed(Boolean cat) {
+        this.catDisplayed = cat;
+    }
+
+    @Override
+    public synchronized void changeSensorStatus(Boolean status) {
+        sensorStatus = status;
+    }
+
+    @Override
+    public synchronized Boolean getCatDisplayed() {
+        return catDisplayed;
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return sensors().snapshot().getSensors();
+    }
+
+    @Override
+    public VersionedSensorStore.Snapshot getSensorSnapshot() {
+        return sensors().snapshot();
+    }
+
+    @Override
+    public Optional<List<VersionedSensorStore.Change>> getSensorChangesSince(long version) {
+        return sensors().changesSince(version);
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Waits for queued writes and closes every connection.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeConnections();
+    }
+
+    /**
+     * @return the sensor store, reading the sensors from the database the first time
+     */
+    private VersionedSensorStore sensors() {
+        if (!sensorsLoaded) {
+            loadSensors();
+        }
+        return store;
+    }
+
+    private synchronized void loadSensors() {
+        if (sensorsLoaded) {
+            return;
+        }
+        store.reset(withConnection(connection -> {
+            List<Sensor> loaded = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(SELECT_SENSORS)) {
+                while (rs.next()) {
+                    Sensor sensor = new Sensor(rs.getString(2), SensorType.valueOf(rs.getString(3)));
+                    sensor.setSensorId(UUID.fromString(rs.getString(1)));
+                    sensor.setActive(rs.getBoolean(4));
+                    loaded.add(sensor);
+                }
+            }
+            return loaded;
+        }));
+        sensorsLoaded = true;
+    }
+
+    /**
+     * Queues a write on the writer thread. Each write runs in its own transaction, and once it has
+     * committed the cache is updated while holding this. The connection is given back first, so a reader
+     * holding this while it waits for a connection can't block the writer.
+     * @param committed Cache update, run only if the write committed
+     */
+    private CompletableFuture<Void> write(SqlWrite work, Runnable committed) {
+        return CompletableFuture.runAsync(() -> {
+            withConnection(connection -> {
+                connection.setAutoCommit(false);
+                try {
+                    work.run(connection);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                return null;
+            });
+            synchronized (this) {
+                committed.run();
+            }
+        }, writer);
+    }
+
+    private <T> T withConnection(SqlWork<T> work) {
+        Connection connection;
+        try {
+            connection = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted waiting for a database connection", e);
+        }
+        try {
+            return work.run(connection);
+        } catch (SQLException e) {
+            throw new RepositoryException("Database operation failed", e);
+        } finally {
+            pool.add(connection);
+        }
+    }
+
+    private static void join(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void closeConnections() {
+        Connection connection;
+        while ((connection = pool.poll()) != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Unable to close database connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The columns of a sensor, copied when the write is queued so it doesn't see later changes.
+     */
+    private static final class SensorRow {
+        private final UUID uuid;
+        private final String id;
+        private final String name;
+        private final String type;
+        private final boolean active;
+
+        SensorRow(Sensor sensor) {
+            this.uuid = sensor.getSensorId();
+            this.id = uuid.toString();
+            this.name = sensor.getName();
+            this.type = sensor.getSensorType().name();
+            this.active = Boolean.TRUE.equals(sensor.getActive());
+        }
+
+        Sensor toSensor() {
+            Sensor sensor = new Sensor(name, SensorType.valueOf(type));
+            sensor.setSensorId(uuid);
+            sensor.setActive(active);
+            return sensor;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface SqlWrite {
+        void run(Connection connection) throws SQLException;
+    }
+}
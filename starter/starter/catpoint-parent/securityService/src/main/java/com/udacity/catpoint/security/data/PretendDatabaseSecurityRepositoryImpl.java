@@ -3,7 +3,13 @@ package com.udacity.catpoint.security.data;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.prefs.Preferences;
@@ -12,14 +18,28 @@ import java.util.prefs.Preferences;
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ *
+ * When given a snapshot file, sensors are stored in a {@link SensorSnapshotFile} instead of as
+ * JSON in the preferences. The snapshot is only mapped at startup, and sensors are decoded the
+ * first time something asks for them. Changes to a sensor's activation or type are patched into its
+ * record in place; only adding, removing or renaming sensors writes a new snapshot. Sensors are only
+ * read from the preferences when there is no snapshot file yet, since the preferences stop being
+ * updated once a snapshot is in use, so a snapshot that can't be read is an error rather than a reason
+ * to fall back to them.
+ *
+ * Sensors are kept in a {@link VersionedSensorStore}, so {@link #getSensors()} returns an immutable
+ * snapshot that readers can iterate while sensors are being changed.
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
 
-    private Set<Sensor> sensors;
+    private final VersionedSensorStore store = new VersionedSensorStore();
+    private volatile boolean sensorsLoaded;
     private AlarmStatus alarmStatus;
     private ArmingStatus armingStatus;
     private Boolean sensorStatus;
     private Boolean catDisplayed = false;
+    private final Path snapshotFile;
+    private SensorSnapshotFile snapshot;
     //preference keys
     private static final String SENSORS = "SENSORS";
     private static final String ALARM_STATUS = "ALARM_STATUS";
@@ -27,28 +47,101 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
     private static final Gson gson = new Gson(); //used to serialize objects into JSON
+    private static final Type SENSOR_SET_TYPE = new TypeToken<Set<Sensor>>() {
+    }.getType();
 
     public PretendDatabaseSecurityRepositoryImpl() {
+        this(null);
+    }
+
+    /**
+     * @param snapshotFile File to keep the sensor list in, or null to keep it in user preferences
+     */
+    public PretendDatabaseSecurityRepositoryImpl(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+
         //load system state from prefs, or else default
         alarmStatus = AlarmStatus.valueOf(prefs.get(ALARM_STATUS, AlarmStatus.NO_ALARM.toString()));
         armingStatus = ArmingStatus.valueOf(prefs.get(ARMING_STATUS, ArmingStatus.DISARMED.toString()));
 
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                snapshot = SensorSnapshotFile.openForUpdate(snapshotFile);
+                return;
+            } catch (IOException ioe) {
+                throw new RepositoryException("Unable to open sensor snapshot " + snapshotFile, ioe);
+            }
+        }
+        store.reset(loadSensorsFromPrefs());
+        sensorsLoaded = true;
+    }
+
+    private static Set<Sensor> loadSensorsFromPrefs() {
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
         String sensorString = prefs.get(SENSORS, null);
         if(sensorString == null) {
-            sensors = new TreeSet<>();
-        } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+            return new TreeSet<>();
         }
+        return gson.fromJson(sensorString, SENSOR_SET_TYPE);
+    }
+
+    /**
+     * @return the sensor store, decoding the snapshot file the first time it is needed
+     */
+    private VersionedSensorStore sensors() {
+        if (!sensorsLoaded) {
+            loadSnapshot();
+        }
+        return store;
+    }
+
+    private synchronized void loadSnapshot() {
+        if (sensorsLoaded) {
+            return;
+        }
+        try {
+            store.reset(snapshot.readAll());
+        } catch (IOException ioe) {
+            throw new RepositoryException("Sensor snapshot " + snapshotFile + " is corrupt", ioe);
+        }
+        sensorsLoaded = true;
+    }
+
+    private synchronized void saveSensors() {
+        Set<Sensor> sensors = store.snapshot().getSensors();
+        if (snapshotFile == null) {
+            prefs.put(SENSORS, gson.toJson(sensors, SENSOR_SET_TYPE));
+            return;
+        }
+        try {
+            SensorSnapshotFile.write(snapshotFile, sensors);
+            snapshot = SensorSnapshotFile.openForUpdate(snapshotFile);
+        } catch (IOException ioe) {
+            throw new RepositoryException("Unable to write sensor snapshot " + snapshotFile, ioe);
+        }
+    }
+
+    /**
+     * Saves changes to existing sensors, patching their snapshot records where that is enough.
+     */
+    private synchronized void saveChanged(Collection<Sensor> changed) {
+        if (snapshotFile != null && snapshot != null) {
+            boolean patched = true;
+            for (Sensor sensor : changed) {
+                patched &= snapshot.patch(sensor);
+            }
+            if (patched) {
+                return;
+            }
+        }
+        saveSensors();
     }
 
     @Override
     public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors().put(sensor);
+        saveSensors();
     }
     @Override
     public void setCatDisplayed(Boolean cat) {
@@ -64,8 +157,8 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     @Override
     public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors().remove(sensor);
+        saveSensors();
     }
     @Override
     public void changeSensorStatus (Boolean status) {
@@ -77,9 +170,18 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
     }
     @Override
     public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+        sensors().put(sensor);
+        saveChanged(List.of(sensor));
+    }
+
+    /**
+     * Stores the given sensors as one new version, adding any that aren't known yet. Sensors not in the
+     * collection are left as they are. The changed records are then written to the snapshot file once.
+     */
+    @Override
+    public void updateSensors(Collection<Sensor> changed) {
+        sensors().put(changed);
+        saveChanged(changed);
     }
 
     @Override
@@ -96,7 +198,17 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
     @Override
     public Set<Sensor> getSensors() {
-        return sensors;
+        return sensors().snapshot().getSensors();
+    }
+
+    @Override
+    public VersionedSensorStore.Snapshot getSensorSnapshot() {
+        return sensors().snapshot();
+    }
+
+    @Override
+    public Optional<List<VersionedSensorStore.Change>> getSensorChangesSince(long version) {
+        return sensors().changesSince(version);
     }
 
     @Override
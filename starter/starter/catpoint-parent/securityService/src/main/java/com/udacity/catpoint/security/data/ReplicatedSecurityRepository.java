@@ -0,0 +1,703 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository that keeps copies of the security state on other nodes, so losing one node doesn't lose
+ * the alarm and arming status or the sensors. Every node stores its copy in its own local repository.
+ *
+ * The primary applies each write locally, numbers it and ships it to every connected replica as part of
+ * an ordered log over TCP. Shipping is pipelined: each replica has a sender thread that writes everything
+ * queued since its last send as one batch, without waiting for earlier batches to be acknowledged.
+ * Replicas acknowledge the last sequence number they applied after every batch. With
+ * {@link AckMode#SYNC} a write returns once every connected replica has applied it. If a replica
+ * disconnects or doesn't acknowledge within the timeout, or the writing thread is interrupted while it
+ * waits, the write throws a {@link RepositoryException} even though it has been applied locally, so the
+ * caller knows it may be lost if this node fails; a replica that timed out is disconnected. With no
+ * replicas connected, synchronous writes are only stored locally, which {@link #getReplicaCount()} shows.
+ * With {@link AckMode#ASYNC} a write returns as soon as it is applied locally and queued.
+ *
+ * A replica that connects first receives a snapshot of the whole state and then the log from that point.
+ * Replicas are read-only. If the primary fails, one replica is {@link #promote promoted} to primary and
+ * the others {@link #follow follow} it; the promoted node continues the log from the last entry it applied.
+ * Failures are not detected automatically; promotion is left to the caller.
+ *
+ * Sensors, the alarm status and the arming status are replicated. Like in the other repositories, the
+ * cat-displayed and sensor status flags are kept only in the node's memory.
+ */
+public class ReplicatedSecurityRepository implements SecurityRepository, AutoCloseable {
+
+    /**
+     * When a write on the primary returns.
+     */
+    public enum AckMode {
+        /** Once applied locally and queued for the replicas. */
+        ASYNC,
+        /** Once every connected replica has applied it. */
+        SYNC
+    }
+
+    public static final Duration DEFAULT_ACK_TIMEOUT = Duration.ofSeconds(2);
+    //a replica this far behind is disconnected rather than buffered for without limit
+    private static final int MAX_PENDING_ENTRIES = 10_000;
+
+    private static final byte FRAME_SNAPSHOT = 1;
+    private static final byte FRAME_ENTRIES = 2;
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_UPDATE = 3;
+    private static final byte OP_STATUS = 4;
+
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+
+    private final SecurityRepository local;
+    private final AckMode ackMode;
+    private final long ackTimeoutNanos;
+
+    //guarded by lock
+    private final Object lock = new Object();
+    private boolean primary;
+    private long sequence;
+    private ServerSocket server;
+    private Socket upstream;
+    private boolean closed;
+
+    private final List<ReplicaLink> replicas = new CopyOnWriteArrayList<>();
+
+    private ReplicatedSecurityRepository(SecurityRepository local, AckMode ackMode, Duration ackTimeout) {
+        this.local = local;
+        this.ackMode = ackMode;
+        this.ackTimeoutNanos = ackTimeout.toNanos();
+    }
+
+    /**
+     * Starts a primary node that accepts replicas on the given port.
+     * @param local Repository holding this node's copy of the state
+     * @param port Port to listen on, or 0 for any free port (see {@link #getPort()})
+     * @param ackMode When writes return
+     * @throws RepositoryException if the port can't be opened
+     */
+    public static ReplicatedSecurityRepository primary(SecurityRepository local, int port, AckMode ackMode) {
+        return primary(local, port, ackMode, DEFAULT_ACK_TIMEOUT);
+    }
+
+    /**
+     * @param ackTimeout How long a synchronous write waits for a replica before disconnecting it
+     * @see #primary(SecurityRepository, int, AckMode)
+     */
+    public static ReplicatedSecurityRepository primary(SecurityRepository local, int port, AckMode ackMode,
+                                                       Duration ackTimeout) {
+        ReplicatedSecurityRepository repository = new ReplicatedSecurityRepository(local, ackMode, ackTimeout);
+        repository.promote(port);
+        return repository;
+    }
+
+    /**
+     * Starts a replica node and connects it to a primary. The replica's local repository is overwritten
+     * with the primary's snapshot.
+     * @param local Repository holding this node's copy of the state
+     * @param host Primary's host
+     * @param port Primary's port
+     * @param ackMode When writes return, once this node has been promoted
+     * @throws RepositoryException if the primary can't be reached
+     */
+    public static ReplicatedSecurityRepository replica(SecurityRepository local, String host, int port, AckMode ackMode) {
+        ReplicatedSecurityRepository repository = new ReplicatedSecurityRepository(local, ackMode, DEFAULT_ACK_TIMEOUT);
+        repository.follow(host, port);
+        return repository;
+    }
+
+    /**
+     * Makes this replica the primary: it stops following its old primary and accepts replicas on the
+     * given port. Calling this on a node that is already primary does nothing.
+     * @param port Port to listen on, or 0 for any free port
+     * @throws RepositoryException if the port can't be opened
+     */
+    public void promote(int port) {
+        synchronized (lock) {
+            checkOpen();
+            if (primary) {
+                return;
+            }
+            try {
+                server = new ServerSocket(port);
+            } catch (IOException e) {
+                throw new RepositoryException("Unable to listen on port " + port, e);
+            }
+            closeQuietly(upstream);
+            upstream = null;
+            primary = true;
+            ServerSocket listening = server;
+            daemon("replication-acceptor", () -> acceptReplicas(listening)).start();
+        }
+    }
+
+    /**
+     * Connects this replica to a (new) primary, for example after another replica was promoted. The
+     * local state is replaced by the primary's snapshot.
+     * @throws IllegalStateException if this node is the primary
+     * @throws RepositoryException if the primary can't be reached
+     */
+    public void follow(String host, int port) {
+        Socket socket;
+        try {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+        } catch (IOException e) {
+            throw new RepositoryException("Unable to connect to primary " + host + ":" + port, e);
+        }
+        synchronized (lock) {
+            if (closed || primary) {
+                closeQuietly(socket);
+                checkOpen();
+                throw new IllegalStateException("A primary can't follow another primary");
+            }
+            closeQuietly(upstream);
+            upstream = socket;
+        }
+        daemon("replication-receiver", () -> receive(socket)).start();
+    }
+
+    private void acceptReplicas(ServerSocket listening) {
+        while (true) {
+            Socket socket;
+            try {
+                socket = listening.accept();
+                socket.setTcpNoDelay(true);
+            } catch (IOException e) {
+                return; //closed
+            }
+            try {
+                ReplicaLink link = new ReplicaLink(socket);
+                synchronized (lock) {
+                    if (closed) {
+                        closeQuietly(socket);
+                        return;
+                    }
+                    //taken under the lock, so the log the replica receives continues exactly where this ends
+                    link.snapshot = encode(this::writeSnapshot);
+                    replicas.add(link);
+                }
+                link.start();
+            } catch (IOException e) {
+                System.out.println("Unable to set up replica " + socket.getRemoteSocketAddress() + ": " + e.getMessage());
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void receive(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte frame = in.readByte();
+                long applied;
+                synchronized (lock) {
+                    if (upstream != socket) {
+                        return; //promoted or following someone else
+                    }
+                    if (frame == FRAME_SNAPSHOT) {
+                        in.readInt();
+                        applySnapshot(in);
+                    } else if (frame == FRAME_ENTRIES) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            applyEntry(in);
+                        }
+                    } else {
+                        throw new IOException("Unknown frame type " + frame);
+                    }
+                    applied = sequence;
+                }
+                out.writeLong(applied);
+                out.flush();
+            }
+        } catch (IOException e) {
+            synchronized (lock) {
+                if (upstream == socket) {
+                    System.out.println("Lost connection to primary: " + e.getMessage());
+                    upstream = null;
+                }
+            }
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeLong(sequence);
+        writeStatus(out, local.getArmingStatus(), local.getAlarmStatus());
+        List<Sensor> sensors = new ArrayList<>(local.getSensors());
+        out.writeInt(sensors.size());
+        for (Sensor sensor : sensors) {
+            writeSensor(out, sensor);
+        }
+    }
+
+    private void applySnapshot(DataInput in) throws IOException {
+        long snapshotSequence = in.readLong();
+        ArmingStatus arming = readArmingStatus(in);
+        AlarmStatus alarm = readAlarmStatus(in);
+        int count = in.readInt();
+        List<Sensor> sensors = new ArrayList<>(count);
+        Set<UUID> ids = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            Sensor sensor = readSensor(in);
+            sensors.add(sensor);
+            ids.add(sensor.getSensorId());
+        }
+        for (Sensor existing : new ArrayList<>(local.getSensors())) {
+            if (!ids.contains(existing.getSensorId())) {
+                local.removeSensor(existing);
+            }
+        }
+        local.updateSensors(sensors);
+        local.updateStatus(arming, alarm);
+        sequence = snapshotSequence;
+    }
+
+    private void applyEntry(DataInput in) throws IOException {
+        long entrySequence = in.readLong();
+        byte op = in.readByte();
+        switch (op) {
+            case OP_ADD:
+                local.addSensor(readSensor(in));
+                break;
+            case OP_REMOVE:
+                Sensor removed = new Sensor();
+                removed.setSensorId(new UUID(in.readLong(), in.readLong()));
+                local.removeSensor(removed);
+                break;
+            case OP_UPDATE:
+                int count = in.readInt();
+                List<Sensor> sensors = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    sensors.add(readSensor(in));
+                }
+                local.updateSensors(sensors);
+                break;
+            case OP_STATUS:
+                local.updateStatus(readArmingStatus(in), readAlarmStatus(in));
+                break;
+            default:
+                throw new IOException("Unknown log entry type " + op);
+        }
+        sequence = entrySequence;
+    }
+
+    /**
+     * Applies a change locally, appends it to the log and ships it to the replicas.
+     */
+    private void write(Runnable change, byte op, EntryWriter payload) {
+        long written;
+        List<ReplicaLink> waitFor;
+        synchronized (lock) {
+            checkOpen();
+            if (!primary) {
+                throw new IllegalStateException("This node is a replica; promote it before writing");
+            }
+            change.run();
+            written = ++sequence;
+            byte[] entry = encode(out -> {
+                out.writeLong(written);
+                out.writeByte(op);
+                payload.write(out);
+            });
+            for (ReplicaLink link : replicas) {
+                link.enqueue(entry);
+            }
+            waitFor = ackMode == AckMode.SYNC ? List.copyOf(replicas) : List.of();
+        }
+        long deadline = System.nanoTime() + ackTimeoutNanos;
+        int unacknowledged = 0;
+        for (ReplicaLink link : waitFor) {
+            if (link.awaitAck(written, deadline)) {
+                continue;
+            }
+            unacknowledged++;
+            //an interrupted writer stopped waiting early, which isn't the replica's fault
+            if (link.isOpen() && !Thread.currentThread().isInterrupted()) {
+                System.out.println("Replica " + link.socket.getRemoteSocketAddress() + " did not acknowledge in time, disconnecting it");
+                link.close();
+            }
+        }
+        if (unacknowledged > 0) {
+            throw new RepositoryException("Write " + written + " was applied locally but not acknowledged by "
+                    + unacknowledged + " of " + waitFor.size() + " replicas", null);
+        }
+    }
+
+    @Override
+    public String add(String input1, String input2) {
+        return input1 + input2;
+    }
+
+    @Override
+    public void addSensor(Sensor sensor) {
+        write(() -> local.addSensor(sensor), OP_ADD, out -> writeSensor(out, sensor));
+    }
+
+    @Override
+    public void removeSensor(Sensor sensor) {
+        write(() -> local.removeSensor(sensor), OP_REMOVE, out -> {
+            out.writeLong(sensor.getSensorId().getMostSignificantBits());
+            out.writeLong(sensor.getSensorId().getLeastSignificantBits());
+        });
+    }
+
+    @Override
+    public void updateSensor(Sensor sensor) {
+        updateSensors(List.of(sensor));
+    }
+
+    /**
+     * Applies all the changes locally and ships them to the replicas as a single log entry.
+     */
+    @Override
+    public void updateSensors(Collection<Sensor> sensors) {
+        write(() -> local.updateSensors(sensors), OP_UPDATE, out -> {
+            out.writeInt(sensors.size());
+            for (Sensor sensor : sensors) {
+                writeSensor(out, sensor);
+            }
+        });
+    }
+
+    @Override
+    public void setAlarmStatus(AlarmStatus alarmStatus) {
+        updateStatus(null, alarmStatus);
+    }
+
+    @Override
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        updateStatus(armingStatus, null);
+    }
+
+    /**
+     * Applies both statuses locally and ships them to the replicas as a single log entry.
+     */
+    @Override
+    public void updateStatus(ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        write(() -> local.updateStatus(armingStatus, alarmStatus), OP_STATUS,
+                out -> writeStatus(out, armingStatus, alarmStatus));
+    }
+
+    @Override
+    public void setCatDisplayed(Boolean cat) {
+        local.setCatDisplayed(cat);
+    }
+
+    @Override
+    public void changeSensorStatus(Boolean status) {
+        local.changeSensorStatus(status);
+    }
+
+    @Override
+    public Boolean getCatDisplayed() {
+        return local.getCatDisplayed();
+    }
+
+    @Override
+    public Set<Sensor> getSensors() {
+        return local.getSensors();
+    }
+
+    @Override
+    public VersionedSensorStore.Snapshot getSensorSnapshot() {
+        return local.getSensorSnapshot();
+    }
+
+    @Override
+    public Optional<List<VersionedSensorStore.Change>> getSensorChangesSince(long version) {
+        return local.getSensorChangesSince(version);
+    }
+
+    @Override
+    public AlarmStatus getAlarmStatus() {
+        return local.getAlarmStatus();
+    }
+
+    @Override
+    public ArmingStatus getArmingStatus() {
+        return local.getArmingStatus();
+    }
+
+    public boolean isPrimary() {
+        synchronized (lock) {
+            return primary;
+        }
+    }
+
+    /**
+     * @return sequence number of the last log entry written (on the primary) or applied (on a replica)
+     */
+    public long getSequence() {
+        synchronized (lock) {
+            return sequence;
+        }
+    }
+
+    /**
+     * @return port the primary accepts replicas on, or -1 on a replica
+     */
+    public int getPort() {
+        synchronized (lock) {
+            return primary ? server.getLocalPort() : -1;
+        }
+    }
+
+    /**
+     * @return number of replicas connected to this primary
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * @return true if this replica is connected to a primary
+     */
+    public boolean isFollowing() {
+        synchronized (lock) {
+            return upstream != null;
+        }
+    }
+
+    /**
+     * Disconnects from the primary or from all replicas. The local repository is left open.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(server);
+            closeQuietly(upstream);
+            upstream = null;
+        }
+        for (ReplicaLink link : replicas) {
+            link.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Repository is closed");
+        }
+    }
+
+    private static void writeSensor(DataOutputStream out, Sensor sensor) throws IOException {
+        out.writeLong(sensor.getSensorId().getMostSignificantBits());
+        out.writeLong(sensor.getSensorId().getLeastSignificantBits());
+        out.writeUTF(sensor.getName());
+        out.writeByte(sensor.getSensorType().ordinal());
+        out.writeBoolean(Boolean.TRUE.equals(sensor.getActive()));
+    }
+
+    private static Sensor readSensor(DataInput in) throws IOException {
+        Sensor sensor = new Sensor();
+        sensor.setSensorId(new UUID(in.readLong(), in.readLong()));
+        sensor.setName(in.readUTF());
+        sensor.setSensorType(SENSOR_TYPES[in.readByte()]);
+        sensor.setActive(in.readBoolean());
+        return sensor;
+    }
+
+    private static void writeStatus(DataOutputStream out, ArmingStatus arming, AlarmStatus alarm) throws IOException {
+        out.writeByte(arming == null ? -1 : arming.ordinal());
+        out.writeByte(alarm == null ? -1 : alarm.ordinal());
+    }
+
+    private static ArmingStatus readArmingStatus(DataInput in) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : ARMING_STATUSES[ordinal];
+    }
+
+    private static AlarmStatus readAlarmStatus(DataInput in) throws IOException {
+        byte ordinal = in.readByte();
+        return ordinal < 0 ? null : ALARM_STATUSES[ordinal];
+    }
+
+    private static byte[] encode(EntryWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //can't happen writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            //already broken, nothing else to do
+        }
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The primary's end of the connection to one replica: log entries queued for it, a thread that ships
+     * them in batches and a thread that reads its acknowledgements.
+     */
+    private final class ReplicaLink {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+
+        //guarded by this
+        private byte[] snapshot;
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private long acknowledged = -1;
+        private boolean open = true;
+
+        ReplicaLink(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        void start() {
+            daemon("replication-sender", this::send).start();
+            daemon("replication-acks", this::readAcks).start();
+        }
+
+        synchronized void enqueue(byte[] entry) {
+            if (!open) {
+                return;
+            }
+            if (pending.size() >= MAX_PENDING_ENTRIES) {
+                System.out.println("Replica " + socket.getRemoteSocketAddress() + " is too far behind, disconnecting it");
+                close();
+                return;
+            }
+            pending.addLast(entry);
+            notifyAll();
+        }
+
+        private void send() {
+            List<byte[]> batch = new ArrayList<>();
+            try {
+                while (true) {
+                    byte[] snapshotToSend;
+                    synchronized (this) {
+                        while (open && snapshot == null && pending.isEmpty()) {
+                            wait();
+                        }
+                        if (!open) {
+                            return;
+                        }
+                        snapshotToSend = snapshot;
+                        snapshot = null;
+                        batch.addAll(pending);
+                        pending.clear();
+                    }
+                    if (snapshotToSend != null) {
+                        out.writeByte(FRAME_SNAPSHOT);
+                        out.writeInt(snapshotToSend.length);
+                        out.write(snapshotToSend);
+                    }
+                    if (!batch.isEmpty()) {
+                        out.writeByte(FRAME_ENTRIES);
+                        out.writeInt(batch.size());
+                        for (byte[] entry : batch) {
+                            out.write(entry);
+                        }
+                        batch.clear();
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                close();
+            }
+        }
+
+        private void readAcks() {
+            try {
+                while (true) {
+                    long applied = in.readLong();
+                    synchronized (this) {
+                        acknowledged = applied;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * @return true only if the replica acknowledged the entry. False if the deadline passed, the
+         * replica disconnected first, or the calling thread was interrupted (its interrupt flag is kept)
+         */
+        synchronized boolean awaitAck(long entry, long deadline) {
+            try {
+                while (open && acknowledged < entry) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+                return acknowledged >= entry;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        synchronized boolean isOpen() {
+            return open;
+        }
+
+        void close() {
+            synchronized (this) {
+                if (!open) {
+                    return;
+                }
+                open = false;
+                pending.clear();
+                notifyAll();
+            }
+            closeQuietly(socket);
+            replicas.remove(this);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.udacity.catpoint.security.data;
+
+/**
+ * Thrown when a repository can't read or write its backing storage.
+ */
+public class RepositoryException extends RuntimeException {
+
+    public RepositoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
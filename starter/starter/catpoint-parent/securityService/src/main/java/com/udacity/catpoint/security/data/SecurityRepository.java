@@ -1,6 +1,10 @@
 package com.udacity.catpoint.security.data;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 
 public interface SecurityRepository {
@@ -17,5 +21,84 @@ public interface SecurityRepository {
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * Stores changes to several sensors. The default updates them one at a time; repositories that
+     * can write in bulk should override this so the cost doesn't grow with every sensor.
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        for (Sensor sensor : sensors) {
+            updateSensor(sensor);
+        }
+    }
 
+    /**
+     * Stores the arming and alarm status together. Repositories that can should apply both in a
+     * single write, so that no reader sees one without the other.
+     * @param armingStatus New arming status, or null to leave it unchanged
+     * @param alarmStatus New alarm status, or null to leave it unchanged
+     */
+    default void updateStatus(ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        if (armingStatus != null) {
+            setArmingStatus(armingStatus);
+        }
+        if (alarmStatus != null) {
+            setAlarmStatus(alarmStatus);
+        }
+    }
+
+    /**
+     * Asynchronous {@link #updateSensor}. The default runs the write on the calling thread and returns a
+     * completed future; repositories backed by remote storage should override it to not block.
+     */
+    default CompletableFuture<Void> updateSensorAsync(Sensor sensor) {
+        return completed(() -> updateSensor(sensor));
+    }
+
+    /**
+     * Asynchronous {@link #updateSensors}, with the same default as {@link #updateSensorAsync}.
+     */
+    default CompletableFuture<Void> updateSensorsAsync(Collection<Sensor> sensors) {
+        return completed(() -> updateSensors(sensors));
+    }
+
+    /**
+     * Asynchronous {@link #updateStatus}, with the same default as {@link #updateSensorAsync}.
+     */
+    default CompletableFuture<Void> updateStatusAsync(ArmingStatus armingStatus, AlarmStatus alarmStatus) {
+        return completed(() -> updateStatus(armingStatus, alarmStatus));
+    }
+
+    /**
+     * Asynchronous {@link #setAlarmStatus}, with the same default as {@link #updateSensorAsync}.
+     */
+    default CompletableFuture<Void> setAlarmStatusAsync(AlarmStatus alarmStatus) {
+        return completed(() -> setAlarmStatus(alarmStatus));
+    }
+
+    /**
+     * Returns the sensors as an immutable snapshot with a version number. The default wraps
+     * {@link #getSensors()} in a snapshot with version -1; repositories backed by a
+     * {@link VersionedSensorStore} return the store's snapshot, which costs nothing.
+     */
+    default VersionedSensorStore.Snapshot getSensorSnapshot() {
+        return VersionedSensorStore.Snapshot.of(getSensors());
+    }
+
+    /**
+     * Returns the sensor changes made after the given snapshot version, oldest first.
+     * @return the changes, or empty if they aren't available and a new snapshot should be taken. The
+     * default never has them
+     */
+    default Optional<List<VersionedSensorStore.Change>> getSensorChangesSince(long version) {
+        return Optional.empty();
+    }
+
+    private static CompletableFuture<Void> completed(Runnable write) {
+        try {
+            write.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
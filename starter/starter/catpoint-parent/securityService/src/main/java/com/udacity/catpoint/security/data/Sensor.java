@@ -3,7 +3,6 @@ package com.udacity.catpoint.security.data;
 
 import com.google.common.collect.ComparisonChain;
 
-import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -24,17 +23,19 @@ public class Sensor implements Comparable<Sensor> {
     public Sensor() {}
 
 
+    //equality goes through the getters so that views over other storage (see ColumnarSensorStore)
+    // compare equal to plain sensors with the same id
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Sensor)) return false;
         Sensor sensor = (Sensor) o;
-        return sensorId.equals(sensor.sensorId);
+        return getSensorId().equals(sensor.getSensorId());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sensorId);
+        return getSensorId().hashCode();
     }
 
     public String getName() {
@@ -72,9 +73,9 @@ public class Sensor implements Comparable<Sensor> {
     @Override
     public int compareTo(Sensor o) {
         return ComparisonChain.start()
-                .compare(this.name, o.name)
-                .compare(this.sensorType.toString(), o.sensorType.toString())
-                .compare(this.sensorId, o.sensorId)
+                .compare(getName(), o.getName())
+                .compare(getSensorType().toString(), o.getSensorType().toString())
+                .compare(getSensorId(), o.getSensorId())
                 .result();
     }
 }
@@ -0,0 +1,295 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the sensor list that can be memory-mapped and read lazily. Opening a snapshot only
+ * checks its header, so startup cost doesn't grow with the number of sensors; individual sensors can be
+ * looked up by id without reading the rest, and the whole list is only decoded by {@link #readAll()}.
+ *
+ * Records have a fixed size and their own checksum, so a snapshot opened with {@link #openForUpdate}
+ * can change a sensor's type or activation by rewriting just its record, see {@link #patch(Sensor)}.
+ * Anything that changes the names or the set of sensors needs a new snapshot.
+ *
+ * File layout, all big-endian:
+ * <pre>
+ *  header  (64 bytes)  magic, version, sensor count, names offset and length, names CRC32, header CRC32
+ *  records (32 bytes each, sorted by sensor id so the records double as the id index)
+ *          id high, id low, name offset, name length, type ordinal, active flag, record CRC32, padding
+ *  names   UTF-8 bytes of every sensor name, at most {@value #MAX_NAME_LENGTH} bytes each
+ * </pre>
+ */
+public class SensorSnapshotFile {
+
+    private static final int MAGIC = 0x43415453; //"CATS"
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 32;
+
+    /**
+     * Longest sensor name a snapshot can hold, in UTF-8 bytes.
+     */
+    public static final int MAX_NAME_LENGTH = Short.MAX_VALUE;
+
+    //header field offsets
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int NAMES_OFFSET_OFFSET = 12;
+    private static final int NAMES_LENGTH_OFFSET = 16;
+    private static final int NAMES_CRC_OFFSET = 20;
+    private static final int HEADER_CRC_OFFSET = 24;
+
+    //record field offsets
+    private static final int NAME_OFFSET_OFFSET = 16;
+    private static final int NAME_LENGTH_OFFSET = 20;
+    private static final int TYPE_OFFSET = 22;
+    private static final int ACTIVE_OFFSET = 23;
+    private static final int RECORD_CRC_OFFSET = 24;
+
+    private static final SensorType[] TYPES = SensorType.values();
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesOffset;
+    private final int namesLength;
+
+    private SensorSnapshotFile(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException("Not a sensor snapshot");
+        }
+        if (buffer.getShort(VERSION_OFFSET) != VERSION) {
+            throw new IOException("Unsupported sensor snapshot version " + buffer.getShort(VERSION_OFFSET));
+        }
+        if (buffer.getInt(HEADER_CRC_OFFSET) != crc(buffer, 0, HEADER_CRC_OFFSET)) {
+            throw new IOException("Sensor snapshot header is corrupt");
+        }
+        count = buffer.getInt(COUNT_OFFSET);
+        namesOffset = buffer.getInt(NAMES_OFFSET_OFFSET);
+        namesLength = buffer.getInt(NAMES_LENGTH_OFFSET);
+        if (namesOffset != HEADER_SIZE + count * RECORD_SIZE || namesOffset + namesLength != buffer.capacity()) {
+            throw new IOException("Sensor snapshot is truncated");
+        }
+    }
+
+    /**
+     * Maps a snapshot file read only and checks its header. Sensor records are not read.
+     * @throws IOException if the file can't be read or isn't a valid snapshot
+     */
+    public static SensorSnapshotFile open(Path file) throws IOException {
+        return open(file, StandardOpenOption.READ, FileChannel.MapMode.READ_ONLY);
+    }
+
+    /**
+     * Maps a snapshot file so that its records can be patched, and checks its header.
+     * @throws IOException if the file can't be opened for writing or isn't a valid snapshot
+     */
+    public static SensorSnapshotFile openForUpdate(Path file) throws IOException {
+        return open(file, StandardOpenOption.WRITE, FileChannel.MapMode.READ_WRITE);
+    }
+
+    private static SensorSnapshotFile open(Path file, StandardOpenOption mode, FileChannel.MapMode mapMode)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, mode)) {
+            MappedByteBuffer mapped = channel.map(mapMode, 0, channel.size());
+            return new SensorSnapshotFile(mapped);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given sensors. The file is written next to its destination and then moved
+     * over it, so readers never see a half written snapshot.
+     * @throws IllegalArgumentException if a sensor's name is longer than {@value #MAX_NAME_LENGTH} bytes
+     */
+    public static void write(Path file, Collection<Sensor> sensors) throws IOException {
+        List<Sensor> sorted = new ArrayList<>(sensors);
+        sorted.sort(Comparator.comparing(Sensor::getSensorId));
+
+        List<byte[]> names = new ArrayList<>(sorted.size());
+        int namesLength = 0;
+        for (Sensor s : sorted) {
+            byte[] name = s.getName().getBytes(StandardCharsets.UTF_8);
+            if (name.length > MAX_NAME_LENGTH) {
+                throw new IllegalArgumentException("Sensor name is longer than " + MAX_NAME_LENGTH + " bytes: "
+                        + s.getSensorId());
+            }
+            names.add(name);
+            namesLength += name.length;
+        }
+        int namesOffset = HEADER_SIZE + sorted.size() * RECORD_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(namesOffset + namesLength);
+
+        int nameOffset = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Sensor s = sorted.get(i);
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            out.putLong(record, s.getSensorId().getMostSignificantBits());
+            out.putLong(record + 8, s.getSensorId().getLeastSignificantBits());
+            out.putInt(record + NAME_OFFSET_OFFSET, nameOffset);
+            out.putShort(record + NAME_LENGTH_OFFSET, (short) names.get(i).length);
+            writeState(out, record, s);
+            nameOffset += names.get(i).length;
+        }
+        out.position(namesOffset);
+        for (byte[] name : names) {
+            out.put(name);
+        }
+
+        out.putInt(MAGIC_OFFSET, MAGIC);
+        out.putShort(VERSION_OFFSET, VERSION);
+        out.putInt(COUNT_OFFSET, sorted.size());
+        out.putInt(NAMES_OFFSET_OFFSET, namesOffset);
+        out.putInt(NAMES_LENGTH_OFFSET, namesLength);
+        out.putInt(NAMES_CRC_OFFSET, crc(out, namesOffset, out.capacity()));
+        out.putInt(HEADER_CRC_OFFSET, crc(out, 0, HEADER_CRC_OFFSET));
+        out.rewind();
+
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return number of sensors in the snapshot
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Looks up a single sensor by binary search over the records.
+     * @return the sensor, or null if the snapshot doesn't contain it
+     */
+    public Sensor find(UUID sensorId) {
+        int i = indexOf(sensorId);
+        return i < 0 ? null : readRecord(i);
+    }
+
+    /**
+     * Writes a sensor's type and activation over its record and flushes just that record, provided the
+     * snapshot has the sensor under the same name.
+     * @return true if the record was patched, false if the snapshot doesn't have the sensor or it has a
+     * different name, in which case a new snapshot has to be written
+     * @throws java.nio.ReadOnlyBufferException if the snapshot wasn't opened with {@link #openForUpdate}
+     */
+    public boolean patch(Sensor sensor) {
+        int i = indexOf(sensor.getSensorId());
+        if (i < 0 || !readName(i).equals(sensor.getName())) {
+            return false;
+        }
+        int record = HEADER_SIZE + i * RECORD_SIZE;
+        writeState(buffer, record, sensor);
+        ((MappedByteBuffer) buffer).force(record, RECORD_SIZE);
+        return true;
+    }
+
+    private int indexOf(UUID sensorId) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = HEADER_SIZE + mid * RECORD_SIZE;
+            int cmp = Long.compare(buffer.getLong(record), sensorId.getMostSignificantBits());
+            if (cmp == 0) {
+                cmp = Long.compare(buffer.getLong(record + 8), sensorId.getLeastSignificantBits());
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if every record and the names match their checksums
+     */
+    public boolean verify() {
+        if (buffer.getInt(NAMES_CRC_OFFSET) != crc(buffer, namesOffset, buffer.capacity())) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            if (buffer.getInt(record + RECORD_CRC_OFFSET) != crc(buffer, record, record + RECORD_CRC_OFFSET)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifies the checksum and decodes every sensor.
+     * @throws IOException if the checksum doesn't match
+     */
+    public Set<Sensor> readAll() throws IOException {
+        if (!verify()) {
+            throw new IOException("Sensor snapshot checksum mismatch");
+        }
+        Set<Sensor> sensors = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            sensors.add(readRecord(i));
+        }
+        return sensors;
+    }
+
+    private Sensor readRecord(int i) {
+        int record = HEADER_SIZE + i * RECORD_SIZE;
+        Sensor sensor = new Sensor(readName(i), TYPES[buffer.get(record + TYPE_OFFSET)]);
+        sensor.setSensorId(new UUID(buffer.getLong(record), buffer.getLong(record + 8)));
+        sensor.setActive(buffer.get(record + ACTIVE_OFFSET) != 0);
+        return sensor;
+    }
+
+    private String readName(int i) {
+        int record = HEADER_SIZE + i * RECORD_SIZE;
+        byte[] name = new byte[buffer.getShort(record + NAME_LENGTH_OFFSET)];
+        buffer.duplicate().position(namesOffset + buffer.getInt(record + NAME_OFFSET_OFFSET)).get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the changeable fields of a record and its checksum.
+     */
+    private static void writeState(ByteBuffer buffer, int record, Sensor sensor) {
+        buffer.put(record + TYPE_OFFSET, (byte) sensor.getSensorType().ordinal());
+        buffer.put(record + ACTIVE_OFFSET, (byte) (Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0));
+        buffer.putInt(record + RECORD_CRC_OFFSET, crc(buffer, record, record + RECORD_CRC_OFFSET));
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(from).limit(to));
+        return (int) crc.getValue();
+    }
+}
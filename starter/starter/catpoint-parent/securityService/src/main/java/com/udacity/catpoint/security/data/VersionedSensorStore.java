@@ -0,0 +1,242 @@
+package com.udacity.catpoint.security.data;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Sensor set with copy-on-write, versioned snapshots. Every write builds a new immutable sorted set
+ * and publishes it with a new version number, so readers take the current {@link Snapshot} with a single
+ * volatile read and can iterate it for as long as they like without copying or locking. Writes are
+ * serialized and cost one rebuild of the set per write, however many sensors the write changes.
+ *
+ * The store also keeps the most recent changes, so a reader holding an older version can catch up with
+ * {@link #changesSince(long)} instead of reading the whole set again.
+ *
+ * Sensors are copied when they are written, so later changes to the caller's objects don't leak into
+ * the store. The copies in a snapshot are shared with every reader of that snapshot and must not be
+ * changed; to change a sensor, write a changed copy with {@link #put(Sensor)}.
+ */
+public class VersionedSensorStore {
+
+    public static final int DEFAULT_RETAINED_CHANGES = 1024;
+
+    /**
+     * The sensors as of one version.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(0, ImmutableSortedSet.of(), ImmutableMap.of());
+
+        private final long version;
+        private final ImmutableSortedSet<Sensor> sensors;
+        private final ImmutableMap<UUID, Sensor> byId;
+
+        private Snapshot(long version, ImmutableSortedSet<Sensor> sensors, ImmutableMap<UUID, Sensor> byId) {
+            this.version = version;
+            this.sensors = sensors;
+            this.byId = byId;
+        }
+
+        /**
+         * Wraps sensors that don't come from a store, with version -1, which no store ever has.
+         */
+        public static Snapshot of(Collection<Sensor> sensors) {
+            return build(-1, sensors);
+        }
+
+        /**
+         * Wraps sensors with a version number chosen by the caller, for repositories that keep their own.
+         */
+        static Snapshot build(long version, Collection<Sensor> sensors) {
+            Map<UUID, Sensor> byId = new HashMap<>();
+            for (Sensor sensor : sensors) {
+                byId.put(sensor.getSensorId(), sensor);
+            }
+            return new Snapshot(version, ImmutableSortedSet.copyOf(byId.values()), ImmutableMap.copyOf(byId));
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the sensors in display order
+         */
+        public ImmutableSortedSet<Sensor> getSensors() {
+            return sensors;
+        }
+
+        /**
+         * @return the sensor with the given id, or null if there is none
+         */
+        public Sensor get(UUID sensorId) {
+            return byId.get(sensorId);
+        }
+    }
+
+    /**
+     * One sensor added, changed or removed in some version.
+     */
+    public static final class Change {
+        public enum Type { ADDED, UPDATED, REMOVED }
+
+        private final long version;
+        private final Type type;
+        private final Sensor sensor;
+
+        private Change(long version, Type type, Sensor sensor) {
+            this.version = version;
+            this.type = type;
+            this.sensor = sensor;
+        }
+
+        /**
+         * @return the version this change first appears in
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the sensor as of that version; for a removal, the sensor as it was before
+         */
+        public Sensor getSensor() {
+            return sensor;
+        }
+    }
+
+    private final int retainedChanges;
+    private volatile Snapshot current = Snapshot.EMPTY;
+    //guarded by this
+    private final ArrayDeque<Change> changes = new ArrayDeque<>();
+    //oldest version that changesSince can still answer from
+    private long oldestCoveredVersion;
+
+    public VersionedSensorStore() {
+        this(DEFAULT_RETAINED_CHANGES);
+    }
+
+    /**
+     * @param retainedChanges Number of recent changes kept for {@link #changesSince(long)}
+     */
+    public VersionedSensorStore(int retainedChanges) {
+        if (retainedChanges < 0) {
+            throw new IllegalArgumentException("retainedChanges must not be negative: " + retainedChanges);
+        }
+        this.retainedChanges = retainedChanges;
+    }
+
+    /**
+     * @return the current sensors. Never blocks
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Adds or replaces sensors, matched by id, as one new version.
+     */
+    public synchronized void put(Collection<Sensor> sensors) {
+        Snapshot before = current;
+        Map<UUID, Sensor> byId = new HashMap<>(before.byId);
+        List<Change> made = new ArrayList<>(sensors.size());
+        long version = before.version + 1;
+        for (Sensor sensor : sensors) {
+            Sensor copy = copy(sensor);
+            Sensor previous = byId.put(copy.getSensorId(), copy);
+            made.add(new Change(version, previous == null ? Change.Type.ADDED : Change.Type.UPDATED, copy));
+        }
+        publish(version, byId, made);
+    }
+
+    public void put(Sensor sensor) {
+        put(List.of(sensor));
+    }
+
+    /**
+     * Removes a sensor, matched by id. Does nothing if the store doesn't have it.
+     */
+    public synchronized void remove(Sensor sensor) {
+        Snapshot before = current;
+        Sensor previous = before.byId.get(sensor.getSensorId());
+        if (previous == null) {
+            return;
+        }
+        Map<UUID, Sensor> byId = new HashMap<>(before.byId);
+        byId.remove(sensor.getSensorId());
+        long version = before.version + 1;
+        publish(version, byId, List.of(new Change(version, Change.Type.REMOVED, previous)));
+    }
+
+    /**
+     * Replaces the whole set, for example when loading stored sensors. Readers holding an older version
+     * have to read the whole set again.
+     */
+    public synchronized void reset(Collection<Sensor> sensors) {
+        List<Sensor> copies = new ArrayList<>(sensors.size());
+        for (Sensor sensor : sensors) {
+            copies.add(copy(sensor));
+        }
+        long version = current.version + 1;
+        changes.clear();
+        oldestCoveredVersion = version;
+        current = Snapshot.build(version, copies);
+    }
+
+    private void publish(long version, Map<UUID, Sensor> byId, List<Change> made) {
+        changes.addAll(made);
+        while (changes.size() > retainedChanges) {
+            oldestCoveredVersion = changes.removeFirst().version;
+        }
+        //drop the rest of a partly evicted version, so what is kept always covers whole versions
+        while (!changes.isEmpty() && changes.peekFirst().version == oldestCoveredVersion) {
+            changes.removeFirst();
+        }
+        current = new Snapshot(version, ImmutableSortedSet.copyOf(byId.values()), ImmutableMap.copyOf(byId));
+    }
+
+    /**
+     * Returns the changes made after the given version, oldest first, so a reader can bring its copy of
+     * that version up to date.
+     * @param version Version the reader has
+     * @return the changes, or empty if they are no longer kept and the reader should take a new snapshot
+     */
+    public synchronized Optional<List<Change>> changesSince(long version) {
+        long latest = current.version;
+        if (version == latest) {
+            return Optional.of(ImmutableList.of());
+        }
+        if (version < oldestCoveredVersion || version > latest) {
+            return Optional.empty();
+        }
+        ImmutableList.Builder<Change> newer = ImmutableList.builder();
+        for (Change change : changes) {
+            if (change.version > version) {
+                newer.add(change);
+            }
+        }
+        return Optional.of(newer.build());
+    }
+
+    private static Sensor copy(Sensor sensor) {
+        Sensor copy = new Sensor();
+        copy.setSensorId(sensor.getSensorId());
+        copy.setName(sensor.getName());
+        copy.setSensorType(sensor.getSensorType());
+        copy.setActive(sensor.getActive());
+        return copy;
+    }
+}
@@ -0,0 +1,168 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+
+import static com.udacity.catpoint.security.data.AlarmStatus.*;
+
+/**
+ * The alarm state machine as a lookup table. Every combination of arming status, alarm status, event,
+ * "any sensor active" and "cat on camera" maps to a single action code, so evaluating an event is one
+ * array read with no branching on the inputs and no allocation.
+ *
+ * The table is compiled once from {@link #rule}, which is the readable statement of the rules.
+ */
+final class AlarmTransitions {
+
+    /**
+     * Things that can happen to the system.
+     */
+    enum Event {
+        SENSOR_ACTIVATED,
+        SENSOR_DEACTIVATED,
+        CAT_DETECTED,
+        CAT_CLEARED,
+        DISARM,
+        ARM_HOME,
+        ARM_AWAY,
+        REQUEST_NO_ALARM,
+        REQUEST_PENDING_ALARM,
+        REQUEST_ALARM;
+
+        static Event requestFor(AlarmStatus status) {
+            return switch (status) {
+                case NO_ALARM -> REQUEST_NO_ALARM;
+                case PENDING_ALARM -> REQUEST_PENDING_ALARM;
+                case ALARM -> REQUEST_ALARM;
+            };
+        }
+
+        static Event armingFor(ArmingStatus status) {
+            return switch (status) {
+                case DISARMED -> DISARM;
+                case ARMED_HOME -> ARM_HOME;
+                case ARMED_AWAY -> ARM_AWAY;
+            };
+        }
+    }
+
+    //action code layout: bits 0-1 alarm status to write (ordinal + 1, 0 for none), bit 2 notify listeners,
+    // bits 3-4 sensor status flag to record in the repository
+    private static final int WRITE_MASK = 0b11;
+    static final int NOTIFY = 1 << 2;
+    static final int SENSOR_FLAG_FALSE = 1 << 3;
+    static final int SENSOR_FLAG_TRUE = 1 << 4;
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final Event[] EVENTS = Event.values();
+
+    private static final byte[] TABLE = new byte[ARMING_STATUSES.length * ALARM_STATUSES.length * EVENTS.length * 4];
+
+    static {
+        for (ArmingStatus arming : ARMING_STATUSES) {
+            for (AlarmStatus alarm : ALARM_STATUSES) {
+                for (Event event : EVENTS) {
+                    for (int active = 0; active < 2; active++) {
+                        for (int cat = 0; cat < 2; cat++) {
+                            TABLE[index(arming, alarm, event, active == 1, cat == 1)] =
+                                    (byte) rule(arming, alarm, event, active == 1, cat == 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private AlarmTransitions() {
+    }
+
+    /**
+     * @param arming Current arming status
+     * @param alarm Current alarm status
+     * @param event What happened
+     * @param anySensorActive Whether any sensor is active, after the event's sensor change was stored
+     * @param catPresent Whether the camera shows a cat, after the event's cat change was stored
+     * @return the action code for this transition
+     */
+    static int lookup(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anySensorActive, boolean catPresent) {
+        return TABLE[index(arming, alarm, event, anySensorActive, catPresent)];
+    }
+
+    /**
+     * @return the alarm status an action writes, or null if it leaves the alarm status alone
+     */
+    static AlarmStatus alarmStatusToWrite(int action) {
+        int write = action & WRITE_MASK;
+        return write == 0 ? null : ALARM_STATUSES[write - 1];
+    }
+
+    private static int index(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anySensorActive, boolean catPresent) {
+        int i = (arming.ordinal() * ALARM_STATUSES.length + alarm.ordinal()) * EVENTS.length + event.ordinal();
+        return (i << 2) | (anySensorActive ? 2 : 0) | (catPresent ? 1 : 0);
+    }
+
+    /**
+     * The rules of the system, evaluated once per table cell.
+     */
+    static int rule(ArmingStatus arming, AlarmStatus alarm, Event event, boolean anySensorActive, boolean catPresent) {
+        switch (event) {
+            case SENSOR_ACTIVATED: {
+                if (arming == ArmingStatus.DISARMED) {
+                    return 0; //no problem if the system is disarmed
+                }
+                int action = 0;
+                if (alarm == NO_ALARM) {
+                    action = request(PENDING_ALARM, anySensorActive, catPresent);
+                } else if (alarm == PENDING_ALARM) {
+                    action = request(ALARM, anySensorActive, catPresent);
+                }
+                return anySensorActive ? action : action | SENSOR_FLAG_FALSE;
+            }
+            case SENSOR_DEACTIVATED: {
+                int action = 0;
+                if (alarm == PENDING_ALARM && !anySensorActive) {
+                    action = request(NO_ALARM, anySensorActive, catPresent);
+                }
+                return anySensorActive ? action : action | SENSOR_FLAG_TRUE;
+            }
+            case CAT_DETECTED:
+                return arming == ArmingStatus.ARMED_HOME ? request(ALARM, anySensorActive, catPresent) : 0;
+            case CAT_CLEARED:
+                return anySensorActive ? 0 : request(NO_ALARM, anySensorActive, catPresent);
+            case DISARM:
+                return request(NO_ALARM, anySensorActive, catPresent);
+            case ARM_HOME:
+                return catPresent ? request(ALARM, anySensorActive, catPresent) : 0;
+            case ARM_AWAY:
+                return 0;
+            case REQUEST_NO_ALARM:
+                return request(NO_ALARM, anySensorActive, catPresent);
+            case REQUEST_PENDING_ALARM:
+                return request(PENDING_ALARM, anySensorActive, catPresent);
+            case REQUEST_ALARM:
+                return request(ALARM, anySensorActive, catPresent);
+            default:
+                throw new IllegalArgumentException("Unknown event " + event);
+        }
+    }
+
+    /**
+     * A request to move to a status. Pending alarm is skipped when it would be meaningless: with no
+     * active sensor and no cat there's nothing to be pending about, and with a cat the alarm goes off.
+     * Neither redirect notifies listeners.
+     */
+    private static int request(AlarmStatus status, boolean anySensorActive, boolean catPresent) {
+        if (status == PENDING_ALARM && !anySensorActive && !catPresent) {
+            return write(NO_ALARM);
+        }
+        if (status == PENDING_ALARM && catPresent) {
+            return write(ALARM);
+        }
+        return write(status) | NOTIFY;
+    }
+
+    private static int write(AlarmStatus status) {
+        return status.ordinal() + 1;
+    }
+}
@@ -0,0 +1,142 @@
+package com.udacity.catpoint.security.service;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A camera known to the {@link CameraScheduler}. Each camera holds only its latest unscanned frame: a
+ * frame that arrives before the previous one was scanned replaces it, so a busy camera never builds up
+ * a backlog. It also remembers its own cat verdict, which {@link SecurityService} combines across cameras.
+ *
+ * Scheduling state is only changed by the scheduler that owns the camera, while holding its lock.
+ */
+public class Camera {
+
+    private final String name;
+    private final int weight;
+    private final long minScanIntervalNanos;
+
+    //written while holding the owning scheduler's lock
+    private BufferedImage pendingFrame;
+    private boolean scanning;
+    private long nextScanNanos;
+    private int currentWeight;
+    private volatile long scans;
+    private volatile long coalescedFrames;
+
+    //written while holding the security service's camera lock
+    private volatile boolean catDetected;
+    private volatile boolean removed;
+
+    /**
+     * @param name Name shown for this camera
+     * @param weight Share of classifier capacity relative to other cameras, at least 1
+     * @param maxScansPerSecond Upper limit on scans for this camera, or 0 for no limit
+     */
+    public Camera(String name, int weight, double maxScansPerSecond) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be at least 1: " + weight);
+        }
+        if (maxScansPerSecond < 0) {
+            throw new IllegalArgumentException("maxScansPerSecond must not be negative: " + maxScansPerSecond);
+        }
+        this.name = name;
+        this.weight = weight;
+        this.minScanIntervalNanos = maxScansPerSecond == 0 ? 0 : (long) (1_000_000_000L / maxScansPerSecond);
+        this.nextScanNanos = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return whether the last scanned frame from this camera contained a cat
+     */
+    public boolean isCatDetected() {
+        return catDetected;
+    }
+
+    /**
+     * @return number of frames scanned from this camera
+     */
+    public long getScans() {
+        return scans;
+    }
+
+    /**
+     * @return number of frames replaced by a newer frame before they were scanned
+     */
+    public long getCoalescedFrames() {
+        return coalescedFrames;
+    }
+
+    boolean isRemoved() {
+        return removed;
+    }
+
+    void setRemoved() {
+        removed = true;
+    }
+
+    boolean setCatDetected(boolean cat) {
+        boolean previous = catDetected;
+        catDetected = cat;
+        return previous;
+    }
+
+    void offerFrame(BufferedImage frame) {
+        if (pendingFrame != null) {
+            coalescedFrames++;
+        }
+        pendingFrame = frame;
+    }
+
+    /**
+     * @return true if the camera has a frame, isn't being scanned and its rate limit allows a scan
+     */
+    boolean isReady(long now) {
+        return pendingFrame != null && !scanning && now - nextScanNanos >= 0;
+    }
+
+    /**
+     * @return true if the camera has a frame and is only held back by its rate limit
+     */
+    boolean isWaitingForRateLimit(long now) {
+        return pendingFrame != null && !scanning && now - nextScanNanos < 0;
+    }
+
+    long getNextScanNanos() {
+        return nextScanNanos;
+    }
+
+    int addCurrentWeight(int delta) {
+        currentWeight += delta;
+        return currentWeight;
+    }
+
+    int getCurrentWeight() {
+        return currentWeight;
+    }
+
+    BufferedImage startScan(long now) {
+        BufferedImage frame = pendingFrame;
+        pendingFrame = null;
+        scanning = true;
+        nextScanNanos = now + minScanIntervalNanos;
+        scans++;
+        return frame;
+    }
+
+    void finishScan() {
+        scanning = false;
+    }
+
+    @Override
+    public String toString() {
+        return "Camera[" + name + "]";
+    }
+}
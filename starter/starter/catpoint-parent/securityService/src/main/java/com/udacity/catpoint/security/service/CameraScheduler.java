@@ -0,0 +1,213 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares a fixed number of classifier threads between any number of {@link Camera}s. Cameras with a
+ * waiting frame are picked by smooth weighted round-robin, so over time every camera gets scans in
+ * proportion to its weight and a busy camera can't starve the others. A camera is skipped while its
+ * rate limit hasn't expired or while one of its frames is still being scanned, which also keeps each
+ * camera's verdicts in order.
+ *
+ * Verdicts are reported to {@link SecurityService#cameraScanned}. When the security service's work runs
+ * on a {@link SecurityScheduler}, they are queued there as image work, so every state change still
+ * happens on its state thread; otherwise they are reported from this scheduler's threads.
+ */
+public class CameraScheduler implements AutoCloseable {
+
+    private final SecurityService securityService;
+    private final SecurityScheduler securityScheduler;
+    private final ImageService imageService;
+    private final float confidenceThreshhold;
+    private final List<Camera> cameras = new ArrayList<>();
+    private final Object lock = new Object();
+    private boolean closed;
+
+    /**
+     * Creates a scheduler and starts its classifier threads.
+     * @param securityService Service that receives each camera's verdicts
+     * @param imageService Classifier used for every camera
+     * @param confidenceThreshhold Minimum confidence to consider a frame a cat
+     * @param threads Number of frames classified at the same time
+     */
+    public CameraScheduler(SecurityService securityService, ImageService imageService,
+                           float confidenceThreshhold, int threads) {
+        this(securityService, null, imageService, confidenceThreshhold, threads);
+    }
+
+    /**
+     * Creates a scheduler that reports verdicts through the security service's scheduler, and starts its
+     * classifier threads.
+     * @param securityService Service that receives each camera's verdicts
+     * @param securityScheduler Scheduler the verdicts are applied on, or null to apply them directly
+     * @param imageService Classifier used for every camera
+     * @param confidenceThreshhold Minimum confidence to consider a frame a cat
+     * @param threads Number of frames classified at the same time
+     */
+    public CameraScheduler(SecurityService securityService, SecurityScheduler securityScheduler,
+                           ImageService imageService, float confidenceThreshhold, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        this.securityService = securityService;
+        this.securityScheduler = securityScheduler;
+        this.imageService = imageService;
+        this.confidenceThreshhold = confidenceThreshhold;
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::work, "camera-scheduler-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Starts scheduling a camera. A camera that was removed can't be added again.
+     */
+    public void addCamera(Camera camera) {
+        if (camera.isRemoved()) {
+            throw new IllegalArgumentException(camera + " was removed");
+        }
+        synchronized (lock) {
+            if (!cameras.contains(camera)) {
+                cameras.add(camera);
+            }
+        }
+    }
+
+    /**
+     * Stops scanning a camera and withdraws its cat verdict. A scan of the camera that is still running
+     * is ignored when it finishes.
+     */
+    public void removeCamera(Camera camera) {
+        synchronized (lock) {
+            cameras.remove(camera);
+        }
+        report(() -> securityService.cameraRemoved(camera));
+    }
+
+    /**
+     * Applies a change on the security scheduler's state thread if there is one, or else straight away.
+     */
+    private void report(Runnable change) {
+        if (securityScheduler == null) {
+            change.run();
+        } else {
+            securityScheduler.submit(SecurityScheduler.Priority.IMAGE, change);
+        }
+    }
+
+    public List<Camera> getCameras() {
+        synchronized (lock) {
+            return new ArrayList<>(cameras);
+        }
+    }
+
+    /**
+     * Hands a new frame from a camera to the scheduler. If the camera's previous frame hasn't been
+     * scanned yet it is dropped in favor of this one.
+     */
+    public void submitFrame(Camera camera, BufferedImage frame) {
+        synchronized (lock) {
+            if (!cameras.contains(camera)) {
+                throw new IllegalArgumentException(camera + " is not scheduled");
+            }
+            camera.offerFrame(frame);
+            lock.notify();
+        }
+    }
+
+    /**
+     * Stops the classifier threads. Frames that are being classified finish first.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Camera camera;
+            BufferedImage frame;
+            synchronized (lock) {
+                try {
+                    camera = awaitNextCamera();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (camera == null) {
+                    return;
+                }
+                frame = camera.startScan(System.nanoTime());
+            }
+            try {
+                boolean cat = imageService.imageContainsCat(frame, confidenceThreshhold);
+                report(() -> securityService.cameraScanned(camera, cat));
+            } catch (Throwable e) {
+                //an Error from the image service fails only this frame, so the other cameras keep being scanned
+                System.out.println("Unable to scan frame from " + camera + ": " + e);
+            } finally {
+                synchronized (lock) {
+                    camera.finishScan();
+                    lock.notify();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until some camera is ready to be scanned and picks it. Must be called holding the lock.
+     * @return the camera to scan, or null once the scheduler is closed
+     */
+    private Camera awaitNextCamera() throws InterruptedException {
+        while (!closed) {
+            long now = System.nanoTime();
+            Camera next = pick(now);
+            if (next != null) {
+                return next;
+            }
+            long wakeUp = Long.MAX_VALUE;
+            for (Camera c : cameras) {
+                if (c.isWaitingForRateLimit(now)) {
+                    wakeUp = Math.min(wakeUp, c.getNextScanNanos() - now);
+                }
+            }
+            if (wakeUp == Long.MAX_VALUE) {
+                lock.wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(lock, wakeUp);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Smooth weighted round-robin over the cameras that are ready: each gains its weight, the one with
+     * the highest total is chosen and pays back the weight of every candidate.
+     */
+    private Camera pick(long now) {
+        Camera best = null;
+        int totalWeight = 0;
+        for (Camera c : cameras) {
+            if (!c.isReady(now)) {
+                continue;
+            }
+            c.addCurrentWeight(c.getWeight());
+            totalWeight += c.getWeight();
+            if (best == null || c.getCurrentWeight() > best.getCurrentWeight()) {
+                best = c;
+            }
+        }
+        if (best != null) {
+            best.addCurrentWeight(-totalWeight);
+        }
+        return best;
+    }
+}
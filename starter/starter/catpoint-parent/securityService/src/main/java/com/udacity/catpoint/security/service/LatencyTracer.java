@@ -0,0 +1,237 @@
+package com.udacity.catpoint.security.service;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ToLongFunction;
+
+/**
+ * Traces where the time goes while the security service handles an event, from a sensor change or
+ * camera image through to the listeners being notified. Every {@link Stage} has its own
+ * {@link LatencyHistogram}, so the report shows which stage dominates the tail.
+ *
+ * Events are sampled: the decision is made once per event, when it begins, and every stage inside a
+ * sampled event is timed, so the stages of one event are always recorded together. Stages nest, so an
+ * event's total includes the stages within it. Stage timings are only recorded on the thread the event
+ * is running on; an event that moves to another thread is carried over with {@link #suspendEvent} and
+ * {@link #resumeEvent}. Listeners with their own executor are timed only for handing the event over.
+ */
+public class LatencyTracer implements LatencyTracerMXBean {
+
+    /**
+     * Returned in place of a start time for events and stages that are not being traced.
+     */
+    public static final long NOT_TRACED = Long.MIN_VALUE;
+
+    public static final String DEFAULT_OBJECT_NAME = "com.udacity.catpoint:type=LatencyTracer";
+
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    public enum Stage {
+        /** a sensor activation change, from start to finish */
+        SENSOR_EVENT,
+        /** a camera image, from start to finish */
+        IMAGE_EVENT,
+        /** the image service deciding whether an image has a cat */
+        IMAGE_SERVICE,
+        /** handling a cat verdict, including its alarm evaluation and notification */
+        CAT_DETECTED,
+        /** writes to the security repository */
+        REPOSITORY_WRITE,
+        /** reading the current state and looking up the alarm transition */
+        ALARM_EVALUATION,
+        /** publishing a status event, including any listeners called on the same thread */
+        LISTENER_DISPATCH
+    }
+
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private volatile int sampleEvery;
+
+    /**
+     * Creates a tracer that traces nothing until a sampling rate is set.
+     */
+    public LatencyTracer() {
+        this(0);
+    }
+
+    /**
+     * @param sampleEvery 1 to trace every event, n to trace one event in n at random, 0 to trace none
+     */
+    public LatencyTracer(int sampleEvery) {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        setSampleEvery(sampleEvery);
+    }
+
+    @Override
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    @Override
+    public void setSampleEvery(int sampleEvery) {
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException("sampleEvery must not be negative: " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Begins an event on the current thread, deciding whether it is sampled. An event begun inside
+     * a traced event is part of it and always traced. Every call must be paired with {@link #endEvent}.
+     * @return the start time, or {@link #NOT_TRACED}
+     */
+    public long beginEvent() {
+        int every = sampleEvery;
+        if (every == 0) {
+            return NOT_TRACED;
+        }
+        int[] d = depth.get();
+        if (d[0] == 0 && every > 1 && ThreadLocalRandom.current().nextInt(every) != 0) {
+            return NOT_TRACED;
+        }
+        d[0]++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends an event begun with {@link #beginEvent()} and records its total time.
+     * @param stage Stage the event's total is recorded under
+     * @param start Value returned by {@link #beginEvent()}
+     */
+    public void endEvent(Stage stage, long start) {
+        if (start == NOT_TRACED) {
+            return;
+        }
+        histograms.get(stage).record(System.nanoTime() - start);
+        depth.get()[0]--;
+    }
+
+    /**
+     * Stops tracing an event on the current thread without recording it, so it can be continued on another
+     * thread with {@link #resumeEvent}. The event's total still counts from when it began.
+     * @param start Value returned by {@link #beginEvent()}
+     */
+    public void suspendEvent(long start) {
+        if (start != NOT_TRACED) {
+            depth.get()[0]--;
+        }
+    }
+
+    /**
+     * Continues an event suspended on another thread. Every call must be paired with {@link #endEvent}.
+     * @param start Value returned by {@link #beginEvent()}
+     */
+    public void resumeEvent(long start) {
+        if (start != NOT_TRACED) {
+            depth.get()[0]++;
+        }
+    }
+
+    /**
+     * @return the start time of a stage, or {@link #NOT_TRACED} if the current thread isn't in a traced event
+     */
+    public long stageStart() {
+        if (sampleEvery == 0 || depth.get()[0] == 0) {
+            return NOT_TRACED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time since a stage started.
+     * @param stage Stage to record
+     * @param start Value returned by {@link #stageStart()}
+     */
+    public void stageEnd(Stage stage, long start) {
+        if (start != NOT_TRACED) {
+            histograms.get(stage).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the histogram for a stage, in nanoseconds
+     */
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms.get(stage);
+    }
+
+    @Override
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        histograms.forEach((stage, histogram) -> counts.put(stage.name(), histogram.snapshot().getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getP50Micros() {
+        return micros(s -> s.getValueAtPercentile(50));
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return micros(s -> s.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getP999Micros() {
+        return micros(s -> s.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return micros(LatencyHistogram.Snapshot::getMax);
+    }
+
+    private Map<String, Double> micros(ToLongFunction<LatencyHistogram.Snapshot> value) {
+        Map<String, Double> result = new LinkedHashMap<>();
+        histograms.forEach((stage, histogram) ->
+                result.put(stage.name(), value.applyAsLong(histogram.snapshot()) / NANOS_PER_MICRO));
+        return result;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("%-18s %10s %10s %10s %10s %10s %10s %10s%n",
+                "stage (us)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        histograms.forEach((stage, histogram) -> {
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            report.append(String.format("%-18s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    stage.name(), s.getCount(), s.getMean() / NANOS_PER_MICRO,
+                    s.getValueAtPercentile(50) / NANOS_PER_MICRO, s.getValueAtPercentile(90) / NANOS_PER_MICRO,
+                    s.getValueAtPercentile(99) / NANOS_PER_MICRO, s.getValueAtPercentile(99.9) / NANOS_PER_MICRO,
+                    s.getMax() / NANOS_PER_MICRO));
+        });
+        return report.toString();
+    }
+
+    /**
+     * Registers this tracer with the platform MBean server under {@value #DEFAULT_OBJECT_NAME}.
+     * @return the name it was registered under
+     */
+    public ObjectName registerMBean() {
+        try {
+            ObjectName name = new ObjectName(DEFAULT_OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Unable to register latency tracer MBean", e);
+        }
+    }
+}
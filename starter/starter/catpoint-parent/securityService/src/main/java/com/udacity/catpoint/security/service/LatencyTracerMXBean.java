@@ -0,0 +1,33 @@
+package com.udacity.catpoint.security.service;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link LatencyTracer}. Latencies are in microseconds and keyed by stage name.
+ */
+public interface LatencyTracerMXBean {
+
+    /**
+     * @return the tracer's sampling rate: 1 traces every event, n one event in n, 0 none
+     */
+    int getSampleEvery();
+
+    void setSampleEvery(int sampleEvery);
+
+    Map<String, Long> getCounts();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getP999Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return the per-stage percentile table, as text
+     */
+    String report();
+
+    void reset();
+}
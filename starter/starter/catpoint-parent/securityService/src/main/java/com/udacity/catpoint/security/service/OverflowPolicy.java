@@ -0,0 +1,13 @@
+package com.udacity.catpoint.security.service;
+
+/**
+ * What a {@link StatusPublisher} subscription does when its buffer is full.
+ */
+public enum OverflowPolicy {
+    /** Discard the oldest undelivered event to make room. */
+    DROP_OLDEST,
+    /** Keep only the most recent undelivered event. */
+    LATEST_ONLY,
+    /** Cancel the subscription and signal an error to the subscriber. */
+    FAIL
+}
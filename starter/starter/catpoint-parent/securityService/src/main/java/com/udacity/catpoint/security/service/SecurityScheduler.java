@@ -0,0 +1,393 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs security service work in priority order, so an expensive image scan can't hold up an alarm.
+ * Every change to the system's state runs on one state thread, taking queued work by {@link Priority}:
+ * alarm and arming changes first, then sensor changes, then image verdicts. Work of a lower priority that
+ * has waited longer than the starvation limit is taken ahead of everything else, oldest first, so a steady
+ * stream of urgent work can delay it but never starve it.
+ *
+ * Image classification itself runs on low priority background threads, and only the verdict is queued for
+ * the state thread. Before starting a scan those threads yield to any alarm or sensor work that is waiting,
+ * for up to the starvation limit, so the state thread isn't competing with the classifier for the CPU.
+ * Scans beyond the classifier queue's capacity are rejected rather than queued without bound. A scan is
+ * traced by the service's {@link LatencyTracer} as one image event, from classification through to the
+ * verdict being acted on.
+ *
+ * Callers get a future for each piece of work, completed once it has run on the state thread.
+ */
+public class SecurityScheduler implements AutoCloseable {
+
+    public enum Priority {
+        /** alarm transitions and arming changes */
+        ALARM,
+        /** sensor activation changes */
+        SENSOR,
+        /** acting on image classification verdicts */
+        IMAGE
+    }
+
+    public static final int DEFAULT_CLASSIFIER_QUEUE = 16;
+    public static final Duration DEFAULT_STARVATION_LIMIT = Duration.ofMillis(250);
+
+    private final SecurityService securityService;
+    private final int classifierQueueSize;
+    private final long starvationNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateWork = lock.newCondition();
+    private final Condition classifierWork = lock.newCondition();
+    private final Map<Priority, ArrayDeque<Task>> queues = new EnumMap<>(Priority.class);
+    private final ArrayDeque<Scan> scans = new ArrayDeque<>();
+    private boolean closed;
+
+    private final Map<Priority, LatencyHistogram> waits = new EnumMap<>(Priority.class);
+    private final AtomicLong promotions = new AtomicLong();
+    private final AtomicLong rejectedScans = new AtomicLong();
+
+    /**
+     * Creates a scheduler with a classifier queue of {@value #DEFAULT_CLASSIFIER_QUEUE} scans and a
+     * starvation limit of 250ms.
+     * @param securityService Service the work runs against
+     * @param classifierThreads Number of images classified at the same time
+     */
+    public SecurityScheduler(SecurityService securityService, int classifierThreads) {
+        this(securityService, classifierThreads, DEFAULT_CLASSIFIER_QUEUE, DEFAULT_STARVATION_LIMIT);
+    }
+
+    /**
+     * Creates a scheduler and starts its threads.
+     * @param securityService Service the work runs against
+     * @param classifierThreads Number of images classified at the same time
+     * @param classifierQueueSize Most scans that may wait for a classifier thread
+     * @param starvationLimit Longest that lower priority work waits before it is taken ahead of urgent work
+     */
+    public SecurityScheduler(SecurityService securityService, int classifierThreads, int classifierQueueSize,
+                             Duration starvationLimit) {
+        if (classifierThreads < 1 || classifierQueueSize < 1 || starvationLimit.isNegative()) {
+            throw new IllegalArgumentException("Invalid scheduler settings");
+        }
+        this.securityService = securityService;
+        this.classifierQueueSize = classifierQueueSize;
+        this.starvationNanos = starvationLimit.toNanos();
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            waits.put(priority, new LatencyHistogram());
+        }
+
+        Thread state = new Thread(this::runState, "security-state");
+        state.setDaemon(true);
+        state.setPriority(Thread.MAX_PRIORITY);
+        state.start();
+        for (int i = 0; i < classifierThreads; i++) {
+            Thread classifier = new Thread(this::runClassifier, "security-classifier-" + i);
+            classifier.setDaemon(true);
+            classifier.setPriority(Thread.MIN_PRIORITY);
+            classifier.start();
+        }
+    }
+
+    public CompletableFuture<Void> setArmingStatus(ArmingStatus armingStatus) {
+        return submit(Priority.ALARM, () -> securityService.setArmingStatus(armingStatus));
+    }
+
+    public CompletableFuture<Void> setAlarmStatus(AlarmStatus alarmStatus) {
+        return submit(Priority.ALARM, () -> securityService.setAlarmStatus(alarmStatus));
+    }
+
+    public CompletableFuture<Void> changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        return submit(Priority.SENSOR, () -> securityService.changeSensorActivationStatus(sensor, active));
+    }
+
+    public CompletableFuture<Void> addSensor(Sensor sensor) {
+        return submit(Priority.SENSOR, () -> securityService.addSensor(sensor));
+    }
+
+    public CompletableFuture<Void> removeSensor(Sensor sensor) {
+        return submit(Priority.SENSOR, () -> securityService.removeSensor(sensor));
+    }
+
+    /**
+     * Classifies an image in the background, then acts on the verdict on the state thread.
+     * @return the verdict, once it has been acted on. Fails with {@link RejectedExecutionException}
+     * if the classifier queue is full
+     */
+    public CompletableFuture<Boolean> processImage(BufferedImage image) {
+        return scan(() -> securityService.containsCat(image));
+    }
+
+    /**
+     * Same as {@link #processImage(BufferedImage)}, for an image that is still encoded.
+     */
+    public CompletableFuture<Boolean> processImage(ByteBuffer encodedImage) {
+        return scan(() -> securityService.containsCat(encodedImage));
+    }
+
+    /**
+     * Queues any work for the state thread.
+     * @param priority Priority class the work is queued in
+     * @param work Work to run; it should be short, since nothing else runs on the state thread meanwhile
+     * @return a future completed once the work has run, exceptionally if it threw
+     */
+    public CompletableFuture<Void> submit(Priority priority, Runnable work) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(new Task(priority, System.nanoTime(), () -> {
+            work.run();
+            done.complete(null);
+        }, done));
+        return done;
+    }
+
+    private void enqueue(Task task) {
+        lock.lock();
+        try {
+            if (closed) {
+                task.done.completeExceptionally(new RejectedExecutionException("Scheduler is closed"));
+                return;
+            }
+            queues.get(task.priority).addLast(task);
+            stateWork.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CompletableFuture<Boolean> scan(BooleanSupplier classify) {
+        CompletableFuture<Boolean> verdict = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (closed || scans.size() >= classifierQueueSize) {
+                rejectedScans.incrementAndGet();
+                verdict.completeExceptionally(new RejectedExecutionException(
+                        closed ? "Scheduler is closed" : "Too many images waiting to be classified"));
+                return verdict;
+            }
+            scans.addLast(new Scan(classify, verdict));
+            //all, since some of the waiting threads may be yielding rather than idle
+            classifierWork.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return verdict;
+    }
+
+    private void runState() {
+        while (true) {
+            Task task;
+            lock.lock();
+            try {
+                while ((task = next(System.nanoTime())) == null) {
+                    if (closed) {
+                        return;
+                    }
+                    stateWork.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+            waits.get(task.priority).record(System.nanoTime() - task.enqueuedNanos);
+            try {
+                task.work.run();
+            } catch (Throwable e) {
+                //an Error fails only this task; the state thread keeps going so later work isn't stranded
+                System.out.println("Scheduled " + task.priority + " work failed: " + e);
+                task.done.completeExceptionally(e);
+            }
+            lock.lock();
+            try {
+                if (queues.get(Priority.ALARM).isEmpty() && queues.get(Priority.SENSOR).isEmpty()) {
+                    //classifier threads yielding to urgent work may go ahead
+                    classifierWork.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Takes the next task: the oldest task that has waited past the starvation limit, if there is one,
+     * otherwise the first task of the most urgent priority. Must be called holding the lock.
+     * @return the task, or null if nothing is queued
+     */
+    private Task next(long now) {
+        Task starved = null;
+        for (ArrayDeque<Task> queue : queues.values()) {
+            Task head = queue.peekFirst();
+            if (head != null && now - head.enqueuedNanos >= starvationNanos
+                    && (starved == null || head.enqueuedNanos - starved.enqueuedNanos < 0)) {
+                starved = head;
+            }
+        }
+        if (starved != null) {
+            queues.get(starved.priority).removeFirst();
+            if (starved.priority != Priority.ALARM) {
+                promotions.incrementAndGet();
+            }
+            return starved;
+        }
+        for (ArrayDeque<Task> queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                return queue.removeFirst();
+            }
+        }
+        return null;
+    }
+
+    private void runClassifier() {
+        while (true) {
+            Scan scan;
+            lock.lock();
+            try {
+                while (scans.isEmpty() && !closed) {
+                    classifierWork.awaitUninterruptibly();
+                }
+                if (closed) {
+                    for (Scan dropped : scans) {
+                        dropped.verdict.completeExceptionally(new RejectedExecutionException("Scheduler is closed"));
+                    }
+                    scans.clear();
+                    return;
+                }
+                //give way to urgent work before starting, but never for longer than the starvation limit
+                long yieldNanos = starvationNanos;
+                while (yieldNanos > 0 && !closed
+                        && (!queues.get(Priority.ALARM).isEmpty() || !queues.get(Priority.SENSOR).isEmpty())) {
+                    try {
+                        yieldNanos = classifierWork.awaitNanos(yieldNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                scan = scans.pollFirst();
+            } finally {
+                lock.unlock();
+            }
+            if (scan == null) {
+                continue;
+            }
+            LatencyTracer tracer = securityService.getLatencyTracer();
+            long start = tracer.beginEvent();
+            boolean cat;
+            try {
+                cat = scan.classify.getAsBoolean();
+            } catch (Throwable e) {
+                tracer.endEvent(LatencyTracer.Stage.IMAGE_EVENT, start);
+                System.out.println("Unable to classify image: " + e);
+                scan.verdict.completeExceptionally(e);
+                continue;
+            }
+            //the event goes on when the state thread acts on the verdict
+            tracer.suspendEvent(start);
+            enqueue(new Task(Priority.IMAGE, System.nanoTime(), () -> {
+                tracer.resumeEvent(start);
+                try {
+                    securityService.imageScanned(cat);
+                } finally {
+                    tracer.endEvent(LatencyTracer.Stage.IMAGE_EVENT, start);
+                }
+                scan.verdict.complete(cat);
+            }, scan.verdict));
+        }
+    }
+
+    /**
+     * Stops accepting work. Work already queued for the state thread still runs, then the threads exit.
+     * Images that are waiting for or being classified are dropped and their futures fail.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            stateWork.signalAll();
+            classifierWork.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for the state thread in the given priority class
+     */
+    public int getQueueDepth(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of images waiting for a classifier thread
+     */
+    public int getClassifierQueueDepth() {
+        lock.lock();
+        try {
+            return scans.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how long tasks of the given priority waited for the state thread, in nanoseconds
+     */
+    public LatencyHistogram getWaitHistogram(Priority priority) {
+        return waits.get(priority);
+    }
+
+    /**
+     * @return number of lower priority tasks taken ahead of urgent work because they hit the starvation limit
+     */
+    public long getStarvationPromotions() {
+        return promotions.get();
+    }
+
+    public long getRejectedScans() {
+        return rejectedScans.get();
+    }
+
+    private static final class Task {
+        private final Priority priority;
+        private final long enqueuedNanos;
+        private final Runnable work;
+        private final CompletableFuture<?> done;
+
+        Task(Priority priority, long enqueuedNanos, Runnable work, CompletableFuture<?> done) {
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.work = work;
+            this.done = done;
+        }
+    }
+
+    private static final class Scan {
+        private final BooleanSupplier classify;
+        private final CompletableFuture<Boolean> verdict;
+
+        Scan(BooleanSupplier classify, CompletableFuture<Boolean> verdict) {
+            this.classify = classify;
+            this.verdict = verdict;
+        }
+    }
+}
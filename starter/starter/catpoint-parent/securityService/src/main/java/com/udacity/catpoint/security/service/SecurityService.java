@@ -3,15 +3,25 @@ package com.udacity.catpoint.security.service;
 import com.udacity.catpoint.image.service.ImageService;
 import com.udacity.catpoint.security.application.StatusListener;
 import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.PooledFrame;
 import com.udacity.catpoint.security.data.AlarmStatus;
 import com.udacity.catpoint.security.data.ArmingStatus;
 import com.udacity.catpoint.security.data.SecurityRepository;
 import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.VersionedSensorStore;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
 
 import static com.udacity.catpoint.security.data.AlarmStatus.*;
 
@@ -19,149 +29,407 @@ public class SecurityService {
 
     private ImageService imageService;
     private SecurityRepository securityRepository;
-    private Set<StatusListener> statusListeners = new HashSet<>();
+    private final StatusPublisher statusPublisher = new StatusPublisher();
+    private final Map<StatusListener, StatusListenerSubscriber> statusListeners = new ConcurrentHashMap<>();
+    private final Object cameraLock = new Object();
+    private int camerasSeeingCat;
+    //verdicts of images scanned on their own rather than by a scheduled camera
+    private final Camera singleImages = new Camera("single images", 1, 0);
+    private final SensorActivityHistory activityHistory;
+    private final LatencyTracer tracer;
 
 
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
+        this(securityRepository, imageService, new SensorActivityHistory());
+    }
+
+    /**
+     * @param activityHistory History that sensor activations are recorded in
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageService imageService,
+                           SensorActivityHistory activityHistory) {
+        this(securityRepository, imageService, activityHistory, new LatencyTracer());
+    }
+
+    /**
+     * @param activityHistory History that sensor activations are recorded in
+     * @param tracer Tracer that sensor and image events are timed with; traces nothing until it is given a sampling rate
+     */
+    public SecurityService(SecurityRepository securityRepository, ImageService imageService,
+                           SensorActivityHistory activityHistory, LatencyTracer tracer) {
         this.securityRepository = securityRepository;
         this.imageService = imageService;
+        this.activityHistory = activityHistory;
+        this.tracer = tracer;
     }
 
+    /**
+     * Deactivates every sensor. The changed sensors are stored in one bulk write and the alarm is
+     * evaluated once, rather than once per sensor. The sensors read from the repository are left as they
+     * are, since other threads may be iterating them; deactivated copies are written instead.
+     */
     public void resetSensors() {
+        List<Sensor> changed = deactivatedCopies();
+        if (!changed.isEmpty()) {
+            sensorsReset(securityRepository.updateSensorsAsync(changed));
+        }
+    }
 
-        ConcurrentSkipListSet<Sensor> sensors = new ConcurrentSkipListSet<>(getSensors());
-        for (Sensor s : sensors) {
-            changeSensorActivationStatus(s, false);
+    /**
+     * @return inactive copies of the sensors that are active
+     */
+    private List<Sensor> deactivatedCopies() {
+        List<Sensor> changed = new ArrayList<>();
+        for (Sensor s : getSensors()) {
+            if (s.getActive()) {
+                changed.add(withActive(s, false));
+            }
         }
+        return changed;
     }
 
-    public boolean verifySensorsInactive() {
+    /**
+     * Waits for the bulk write of reset sensors, then evaluates the alarm once for all of them.
+     */
+    private void sensorsReset(CompletableFuture<Void> written) {
+        long write = tracer.stageStart();
+        try {
+            written.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            tracer.stageEnd(LatencyTracer.Stage.REPOSITORY_WRITE, write);
+        }
+        //every sensor is now inactive, so there is no need to scan them again
+        evaluate(AlarmTransitions.Event.SENSOR_DEACTIVATED, Boolean.TRUE.equals(getCatDisplayed()), null, false);
+        publish(StatusEvent.sensorStatusChanged());
+    }
 
-        ConcurrentSkipListSet<Sensor> sensors = new ConcurrentSkipListSet<>(getSensors());
-        ConcurrentSkipListSet<Sensor> active = new ConcurrentSkipListSet<>();
-        for (Sensor s : sensors) {
+    public boolean verifySensorsInactive() {
+        for (Sensor s : getSensors()) {
             if (s.getActive()) {
-                active.add(s);
+                return false;
             }
         }
-        return active.isEmpty();
+        return true;
     }
 
+    /**
+     * Changes the arming status. The new arming status is stored in one write together with the alarm
+     * status it leads to, so no reader sees one without the other. When arming, the reset sensors are
+     * written at the same time, since neither write depends on the other, so a remote repository costs
+     * one round trip rather than two; the alarm is evaluated for the reset once both have finished.
+     */
     public void setArmingStatus(ArmingStatus armingStatus) {
-
-        if (armingStatus == ArmingStatus.ARMED_AWAY) {
-            resetSensors();
-        } else {
-            if (armingStatus == ArmingStatus.DISARMED) {
-                setAlarmStatus(NO_ALARM);
-            } else if (armingStatus == ArmingStatus.ARMED_HOME) {
-                if (getCatDisplayed()) {
-                    setAlarmStatus(ALARM);
-                }
-                resetSensors();
-            }
+        List<Sensor> reset = armingStatus == ArmingStatus.DISARMED ? List.of() : deactivatedCopies();
+        boolean anyActive = !verifySensorsInactive();
+        CompletableFuture<Void> sensorsWritten = reset.isEmpty() ? null : securityRepository.updateSensorsAsync(reset);
+        evaluate(AlarmTransitions.Event.armingFor(armingStatus), Boolean.TRUE.equals(getCatDisplayed()), armingStatus,
+                anyActive);
+        if (sensorsWritten != null) {
+            sensorsReset(sensorsWritten);
         }
-        securityRepository.setArmingStatus(armingStatus);
         System.out.println("Arming status: " + armingStatus);
     }
 
+    /**
+     * Acts on the combined cat verdict. Only called holding the camera lock, so it always agrees with
+     * the count of cameras seeing a cat.
+     */
     private void catDetected(Boolean cat) {
-
+        long start = tracer.stageStart();
         setCatDisplayed(cat);
-        if (cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(ALARM);
-        } else if (!cat && verifySensorsInactive()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        }
-        for (StatusListener sl : statusListeners) {
-            sl.catDetected(cat);
-        }
+        evaluate(cat ? AlarmTransitions.Event.CAT_DETECTED : AlarmTransitions.Event.CAT_CLEARED, cat);
+        publish(StatusEvent.catDetected(cat));
+        tracer.stageEnd(LatencyTracer.Stage.CAT_DETECTED, start);
         System.out.println("Cat detected: " + cat);
     }
 
+    /**
+     * Tells listeners that a sensor went offline or came back. Liveness doesn't change the alarm status.
+     */
+    void sensorLivenessChanged(Sensor sensor, boolean online) {
+        publish(StatusEvent.sensorLivenessChanged(sensor, online));
+    }
+
+    private void publish(StatusEvent event) {
+        long start = tracer.stageStart();
+        statusPublisher.publish(event);
+        tracer.stageEnd(LatencyTracer.Stage.LISTENER_DISPATCH, start);
+    }
+
+    /**
+     * Registers a listener that is called synchronously whenever the status changes.
+     */
     public void addStatusListener(StatusListener statusListener) {
-        statusListeners.add(statusListener);
+        addStatusListener(statusListener, Runnable::run, StatusPublisher.DEFAULT_BUFFER_SIZE, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Registers a listener whose callbacks run on the given executor. A slow listener fills its own
+     * buffer and then loses events according to the policy, without holding up the alarm logic.
+     * @param statusListener Listener to notify
+     * @param executor Executor the listener's callbacks run on
+     * @param bufferSize Maximum number of undelivered events kept for this listener
+     * @param policy What to do when the buffer is full
+     */
+    public void addStatusListener(StatusListener statusListener, Executor executor, int bufferSize, OverflowPolicy policy) {
+        StatusListenerSubscriber subscriber = new StatusListenerSubscriber(statusListener);
+        StatusListenerSubscriber previous = statusListeners.put(statusListener, subscriber);
+        if (previous != null) {
+            previous.cancel();
+        }
+        statusPublisher.subscribe(subscriber, executor, bufferSize, policy);
     }
 
     public void removeStatusListener(StatusListener statusListener) {
-        statusListeners.remove(statusListener);
+        StatusListenerSubscriber subscriber = statusListeners.remove(statusListener);
+        if (subscriber != null) {
+            subscriber.cancel();
+        }
+    }
+
+    /**
+     * @return publisher of every status change, for subscribers that want their own buffering and executor
+     */
+    public StatusPublisher getStatusPublisher() {
+        return statusPublisher;
     }
 
     public void setAlarmStatus(AlarmStatus status) {
-        if (verifySensorsInactive() && status == PENDING_ALARM && !getCatDisplayed()) {
-            securityRepository.setAlarmStatus(NO_ALARM);
-            System.out.println("alarm status: " + NO_ALARM);
-        } else if (status == PENDING_ALARM && getCatDisplayed()) {
-            securityRepository.setAlarmStatus(ALARM);
-            System.out.println("alarm status: " + ALARM);
-        } else {
-            securityRepository.setAlarmStatus(status);
-            System.out.println("alarm status: " + status);
-            statusListeners.forEach(sl -> sl.notify(status));
-        }
-    }
-
-    private void handleSensorActivated() {
-        if (securityRepository.getArmingStatus() == ArmingStatus.DISARMED) {
-            return; //no problem if the system is disarmed
-        }
-        switch (securityRepository.getAlarmStatus()) {
-            case NO_ALARM -> {
-                setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        evaluate(AlarmTransitions.Event.requestFor(status), Boolean.TRUE.equals(getCatDisplayed()));
+    }
+
+    /**
+     * Looks up the transition for an event in the alarm table and applies it. The sensors are scanned
+     * once per event, after the event's own change has been stored.
+     * @param event What happened
+     * @param catPresent Whether the camera currently shows a cat
+     */
+    private void evaluate(AlarmTransitions.Event event, boolean catPresent) {
+        evaluate(event, catPresent, null, !verifySensorsInactive());
+    }
+
+    /**
+     * @param armingStatus Arming status to store in the same write as the new alarm status, or null
+     * @param anyActive Whether any sensor is active
+     */
+    private void evaluate(AlarmTransitions.Event event, boolean catPresent, ArmingStatus armingStatus,
+                          boolean anyActive) {
+        long start = tracer.stageStart();
+        //a repository that hasn't stored a status yet reports null. An unknown arming status fails safe to
+        // armed-away, and an unknown alarm status is treated as the initial no-alarm state
+        ArmingStatus arming = securityRepository.getArmingStatus();
+        AlarmStatus alarm = securityRepository.getAlarmStatus();
+        int action = AlarmTransitions.lookup(arming == null ? ArmingStatus.ARMED_AWAY : arming,
+                alarm == null ? NO_ALARM : alarm, event, anyActive, catPresent);
+
+        AlarmStatus newStatus = AlarmTransitions.alarmStatusToWrite(action);
+        tracer.stageEnd(LatencyTracer.Stage.ALARM_EVALUATION, start);
+
+        if (armingStatus != null) {
+            long write = tracer.stageStart();
+            securityRepository.updateStatus(armingStatus, newStatus);
+            tracer.stageEnd(LatencyTracer.Stage.REPOSITORY_WRITE, write);
+        } else if (newStatus != null) {
+            long write = tracer.stageStart();
+            securityRepository.setAlarmStatus(newStatus);
+            tracer.stageEnd(LatencyTracer.Stage.REPOSITORY_WRITE, write);
+        }
+        if (newStatus != null) {
+            System.out.println("alarm status: " + newStatus);
+            if ((action & AlarmTransitions.NOTIFY) != 0) {
+                publish(StatusEvent.alarmStatus(newStatus));
             }
-            case PENDING_ALARM -> {
-                setAlarmStatus(ALARM);
+        }
+        if ((action & (AlarmTransitions.SENSOR_FLAG_FALSE | AlarmTransitions.SENSOR_FLAG_TRUE)) != 0) {
+            long write = tracer.stageStart();
+            securityRepository.changeSensorStatus((action & AlarmTransitions.SENSOR_FLAG_FALSE) == 0);
+            tracer.stageEnd(LatencyTracer.Stage.REPOSITORY_WRITE, write);
+        }
+    }
+
+    /**
+     * Changes a sensor's activation. The given sensor is not changed, since it may be shared with other
+     * readers of a snapshot; a copy with the new state is written instead.
+     */
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        long start = tracer.beginEvent();
+        try {
+            boolean wasActive = isSensorActive(sensor);
+            long write = tracer.stageStart();
+            securityRepository.updateSensor(withActive(sensor, active));
+            tracer.stageEnd(LatencyTracer.Stage.REPOSITORY_WRITE, write);
+            if (active && !wasActive) {
+                activityHistory.recordActivation(sensor.getSensorId());
             }
+            if (active) {
+                evaluate(AlarmTransitions.Event.SENSOR_ACTIVATED, Boolean.TRUE.equals(getCatDisplayed()));
+            } else if (wasActive) {
+                evaluate(AlarmTransitions.Event.SENSOR_DEACTIVATED, Boolean.TRUE.equals(getCatDisplayed()));
+            }
+            publish(StatusEvent.sensorStatusChanged());
+        } finally {
+            tracer.endEvent(LatencyTracer.Stage.SENSOR_EVENT, start);
         }
-        if (verifySensorsInactive()) {
-            securityRepository.changeSensorStatus(false);
+    }
+
+    public void processImage(BufferedImage currentCameraImage) {
+        long start = tracer.beginEvent();
+        try {
+            imageScanned(classify(() -> imageService.imageContainsCat(currentCameraImage, 50.0f)));
+        } finally {
+            tracer.endEvent(LatencyTracer.Stage.IMAGE_EVENT, start);
         }
     }
 
-    private void handleSensorDeactivated() {
+    /**
+     * Asks the image service about an image without acting on the answer.
+     */
+    boolean containsCat(BufferedImage image) {
+        return classify(() -> imageService.imageContainsCat(image, 50.0f));
+    }
+
+    boolean containsCat(ByteBuffer encodedImage) {
+        return classify(() -> imageService.imageContainsCat(encodedImage, 50.0f));
+    }
 
-        if (securityRepository.getAlarmStatus() == PENDING_ALARM) {
-            if (verifySensorsInactive()) {
-                setAlarmStatus(NO_ALARM);
-            }
+    private boolean classify(BooleanSupplier request) {
+        long start = tracer.stageStart();
+        try {
+            return request.getAsBoolean();
+        } finally {
+            tracer.stageEnd(LatencyTracer.Stage.IMAGE_SERVICE, start);
         }
-        if (verifySensorsInactive()) {
-            securityRepository.changeSensorStatus(true);
+    }
+
+    /**
+     * Sends a pooled frame for analysis. The service holds its own reference while the image is being
+     * analysed, so the caller may release theirs at any time; the caller still owns and must release the
+     * reference it passed in.
+     * @param frame Frame to analyse
+     */
+    public void processImage(PooledFrame frame) {
+        long start = tracer.beginEvent();
+        frame.retain();
+        try {
+            imageScanned(classify(() -> imageService.imageContainsCat(frame.getImage(), 50.0f)));
+        } finally {
+            frame.release();
+            tracer.endEvent(LatencyTracer.Stage.IMAGE_EVENT, start);
         }
     }
 
-    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+    /**
+     * Sends an image that is still encoded (for example a JPEG file) for analysis. Image services that
+     * work on compressed images receive the bytes untouched; the others decode them as needed.
+     * @param encodedImage Encoded image bytes between position and limit
+     */
+    public void processImage(ByteBuffer encodedImage) {
+        long start = tracer.beginEvent();
+        try {
+            imageScanned(classify(() -> imageService.imageContainsCat(encodedImage, 50.0f)));
+        } finally {
+            tracer.endEvent(LatencyTracer.Stage.IMAGE_EVENT, start);
+        }
+    }
 
-        if (!sensor.getActive() && active) {
-            sensor.setActive(true);
-            securityRepository.updateSensor(sensor);
-            handleSensorActivated();
-        } else if (sensor.getActive() && !active) {
-            sensor.setActive(false);
-            securityRepository.updateSensor(sensor);
-            handleSensorDeactivated();
-        } else if (sensor.getActive() && active) {
-            sensor.setActive(true);
-            securityRepository.updateSensor(sensor);
-            handleSensorActivated();
-        } else {
-            sensor.setActive(active);
-            securityRepository.updateSensor(sensor);
+    /**
+     * Records the verdict for an image scanned on its own, such as a picture sent with
+     * {@link #processImage}. Those images count as one more camera, so a scan without a cat doesn't clear
+     * a cat that a scheduled camera still sees. The combined verdict is acted on after every such scan,
+     * as a single scan always has been, even if it didn't change. Package-private so a
+     * {@link SecurityScheduler} can apply verdicts it classified in the background.
+     */
+    void imageScanned(boolean cat) {
+        synchronized (cameraLock) {
+            recordVerdict(singleImages, cat);
+            catDetected(camerasSeeingCat > 0);
         }
     }
 
-    public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+    /**
+     * Records the verdict for one camera's latest frame. The cat-present state is kept as a count of
+     * cameras that currently see a cat, so the alarm is only evaluated when the first camera starts or
+     * the last camera stops seeing one, however many cameras there are.
+     * @param camera Camera the frame came from
+     * @param cat Whether the frame contained a cat
+     */
+    public void cameraScanned(Camera camera, boolean cat) {
+        synchronized (cameraLock) {
+            if (recordVerdict(camera, cat)) {
+                catDetected(cat);
+            }
+        }
+    }
+
+    /**
+     * Updates the count of cameras seeing a cat. Must be called holding the camera lock.
+     * @return whether the combined verdict changed to the given one
+     */
+    private boolean recordVerdict(Camera camera, boolean cat) {
+        if (camera.isRemoved() || camera.setCatDetected(cat) == cat) {
+            return false;
+        }
+        camerasSeeingCat += cat ? 1 : -1;
+        return camerasSeeingCat == (cat ? 1 : 0);
+    }
+
+    /**
+     * Withdraws a camera's verdict and ignores any verdict still in flight for it.
+     */
+    void cameraRemoved(Camera camera) {
+        synchronized (cameraLock) {
+            cameraScanned(camera, false);
+            camera.setRemoved();
+        }
+    }
+
+    /**
+     * @return number of cameras whose latest frame contained a cat, counting images scanned on their own
+     * as one camera
+     */
+    public int getCamerasSeeingCat() {
+        synchronized (cameraLock) {
+            return camerasSeeingCat;
+        }
     }
 
     public AlarmStatus getAlarmStatus() {
         return securityRepository.getAlarmStatus();
     }
 
+    /**
+     * @return whether the sensor is active as last stored. A sensor the repository doesn't have is judged
+     * by its own state
+     */
+    public boolean isSensorActive(Sensor sensor) {
+        Sensor stored = getSensorSnapshot().get(sensor.getSensorId());
+        return Boolean.TRUE.equals((stored == null ? sensor : stored).getActive());
+    }
+
     public Set<Sensor> getSensors() {
         return securityRepository.getSensors();
     }
 
+    /**
+     * @return the sensors as an immutable, versioned snapshot that can be iterated without copying
+     */
+    public VersionedSensorStore.Snapshot getSensorSnapshot() {
+        return securityRepository.getSensorSnapshot();
+    }
+
+    /**
+     * Returns the sensor changes made after a snapshot version, so a view can update itself
+     * incrementally. When this is empty, take a new snapshot instead.
+     */
+    public Optional<List<VersionedSensorStore.Change>> getSensorChangesSince(long version) {
+        return securityRepository.getSensorChangesSince(version);
+    }
+
     public void addSensor(Sensor sensor) {
         securityRepository.addSensor(sensor);
     }
@@ -169,6 +437,21 @@ public class SecurityService {
 
     public void removeSensor(Sensor sensor) {
         securityRepository.removeSensor(sensor);
+        activityHistory.forget(sensor.getSensorId());
+    }
+
+    /**
+     * @return tracer timing the stages of sensor and image events
+     */
+    public LatencyTracer getLatencyTracer() {
+        return tracer;
+    }
+
+    /**
+     * @return history of sensor activations, for questions like how often a sensor tripped this week
+     */
+    public SensorActivityHistory getActivityHistory() {
+        return activityHistory;
     }
 
 
@@ -183,4 +466,14 @@ public class SecurityService {
     public void setCatDisplayed(Boolean cat) {
         securityRepository.setCatDisplayed(cat);
     }
+
+    /**
+     * @return a copy of the sensor with the given activation, for writing in place of a shared sensor
+     */
+    static Sensor withActive(Sensor sensor, boolean active) {
+        Sensor copy = new Sensor(sensor.getName(), sensor.getSensorType());
+        copy.setSensorId(sensor.getSensorId());
+        copy.setActive(active);
+        return copy;
+    }
 }
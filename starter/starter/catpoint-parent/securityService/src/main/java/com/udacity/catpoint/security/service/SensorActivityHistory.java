@@ -0,0 +1,304 @@
+package com.udacity.catpoint.security.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact in-memory history of sensor activations, for questions like "how often did the back door trip
+ * this week?".
+ *
+ * Every activation is kept as a raw timestamp for a short time, delta-encoded as a variable-length
+ * integer (usually 2-4 bytes per event), and also counted in per-minute, per-hour and per-day buckets.
+ * Each rollup resolution has its own retention and is stored in a fixed-size ring. Raw timestamps are
+ * kept in 1KB chunks, up to a maximum number of chunks per sensor; a sensor busy enough to fill them
+ * within the raw retention loses its oldest raw timestamps early, though they are still counted. So
+ * memory per sensor is bounded no matter how busy the sensor is. Count queries add up the coarsest
+ * buckets that fit the range, so a week costs a few hundred array reads rather than a scan over raw
+ * events.
+ */
+public class SensorActivityHistory {
+
+    public static final Duration DEFAULT_RAW_RETENTION = Duration.ofDays(1);
+    public static final Duration DEFAULT_MINUTE_RETENTION = Duration.ofDays(1);
+    public static final Duration DEFAULT_HOUR_RETENTION = Duration.ofDays(31);
+    public static final Duration DEFAULT_DAY_RETENTION = Duration.ofDays(366);
+    /** 64KB of raw timestamps per sensor, typically 20,000 or more activations */
+    public static final int DEFAULT_MAX_RAW_CHUNKS = 64;
+
+    private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+    private static final long DAY = Duration.ofDays(1).toMillis();
+    private static final int CHUNK_BYTES = 1024;
+
+    private final Clock clock;
+    private final long rawRetentionMillis;
+    private final int maxRawChunks;
+    private final int minuteSlots;
+    private final int hourSlots;
+    private final int daySlots;
+    private final Map<UUID, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a history using the system clock and the default retentions.
+     */
+    public SensorActivityHistory() {
+        this(Clock.systemUTC(), DEFAULT_RAW_RETENTION, DEFAULT_MINUTE_RETENTION, DEFAULT_HOUR_RETENTION,
+                DEFAULT_DAY_RETENTION);
+    }
+
+    /**
+     * @param clock Source of activation timestamps
+     * @param rawRetention How long individual activation times are kept
+     * @param minuteRetention How long per-minute counts are kept
+     * @param hourRetention How long per-hour counts are kept
+     * @param dayRetention How long per-day counts are kept
+     */
+    public SensorActivityHistory(Clock clock, Duration rawRetention, Duration minuteRetention,
+                                 Duration hourRetention, Duration dayRetention) {
+        this(clock, rawRetention, minuteRetention, hourRetention, dayRetention, DEFAULT_MAX_RAW_CHUNKS);
+    }
+
+    /**
+     * @param clock Source of activation timestamps
+     * @param rawRetention How long individual activation times are kept
+     * @param minuteRetention How long per-minute counts are kept
+     * @param hourRetention How long per-hour counts are kept
+     * @param dayRetention How long per-day counts are kept
+     * @param maxRawChunks Most 1KB chunks of individual activation times kept per sensor, at least 1
+     */
+    public SensorActivityHistory(Clock clock, Duration rawRetention, Duration minuteRetention,
+                                 Duration hourRetention, Duration dayRetention, int maxRawChunks) {
+        if (maxRawChunks < 1) {
+            throw new IllegalArgumentException("maxRawChunks must be at least 1: " + maxRawChunks);
+        }
+        this.clock = clock;
+        this.rawRetentionMillis = rawRetention.toMillis();
+        this.maxRawChunks = maxRawChunks;
+        this.minuteSlots = slots(minuteRetention, MINUTE);
+        this.hourSlots = slots(hourRetention, HOUR);
+        this.daySlots = slots(dayRetention, DAY);
+    }
+
+    private static int slots(Duration retention, long bucketMillis) {
+        long slots = (retention.toMillis() + bucketMillis - 1) / bucketMillis;
+        if (slots < 1 || slots > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported retention " + retention);
+        }
+        return (int) slots;
+    }
+
+    /**
+     * Records that a sensor was activated now.
+     */
+    public void recordActivation(UUID sensorId) {
+        recordActivation(sensorId, clock.instant());
+    }
+
+    /**
+     * Records that a sensor was activated at the given time.
+     */
+    public void recordActivation(UUID sensorId, Instant time) {
+        series.computeIfAbsent(sensorId, id -> new Series()).record(time.toEpochMilli());
+    }
+
+    /**
+     * Counts a sensor's activations in a time range, using the rollups. The range is widened to whole
+     * minutes; parts of it older than the minute retention are answered from the hour buckets (and
+     * then the day buckets), so they are counted at that resolution.
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     */
+    public long countActivations(UUID sensorId, Instant from, Instant to) {
+        Series s = series.get(sensorId);
+        return s == null ? 0 : s.count(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * Counts a sensor's activations during the period that ends now.
+     */
+    public long countActivationsInLast(UUID sensorId, Duration period) {
+        Instant now = clock.instant();
+        return countActivations(sensorId, now.minus(period), now.plusMillis(1));
+    }
+
+    /**
+     * Returns the exact activation times in a range. Only times within the raw retention are available.
+     * @param from Start of the range, inclusive
+     * @param to End of the range, exclusive
+     */
+    public List<Instant> getActivations(UUID sensorId, Instant from, Instant to) {
+        Series s = series.get(sensorId);
+        return s == null ? List.of() : s.raw(from.toEpochMilli(), to.toEpochMilli());
+    }
+
+    /**
+     * Drops the whole history of a sensor, for example when it is removed.
+     */
+    public void forget(UUID sensorId) {
+        series.remove(sensorId);
+    }
+
+    /**
+     * Fixed-size ring of event counts, one slot per bucket. A slot remembers which bucket it counts,
+     * so buckets that have rotated out read as empty.
+     */
+    private static final class Ring {
+        private final long bucketMillis;
+        private final long[] buckets;
+        private final int[] counts;
+        private long newest = Long.MIN_VALUE;
+
+        Ring(long bucketMillis, int slots) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = new long[slots];
+            this.counts = new int[slots];
+            Arrays.fill(buckets, Long.MIN_VALUE);
+        }
+
+        void add(long millis) {
+            long bucket = Math.floorDiv(millis, bucketMillis);
+            int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+            if (buckets[slot] != bucket) {
+                if (buckets[slot] > bucket) {
+                    return; //older than this ring keeps
+                }
+                buckets[slot] = bucket;
+                counts[slot] = 0;
+            }
+            counts[slot]++;
+            newest = Math.max(newest, bucket);
+        }
+
+        int get(long bucket) {
+            int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+            return buckets[slot] == bucket ? counts[slot] : 0;
+        }
+
+        boolean retains(long millis) {
+            return newest != Long.MIN_VALUE && Math.floorDiv(millis, bucketMillis) > newest - buckets.length;
+        }
+    }
+
+    /**
+     * Raw activation times as zigzag varint deltas, in fixed-size chunks that are dropped whole once
+     * their newest event falls out of the raw retention, or once the sensor has too many chunks.
+     */
+    private static final class Chunk {
+        private final byte[] bytes = new byte[CHUNK_BYTES];
+        private final long first;
+        private long last;
+        private int length;
+
+        Chunk(long first) {
+            this.first = first;
+            this.last = first;
+        }
+
+        boolean append(long millis) {
+            if (length + 10 > bytes.length) {
+                return false;
+            }
+            long delta = millis - last;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[length++] = (byte) zigzag;
+            last = millis;
+            return true;
+        }
+
+        void decode(long from, long to, List<Instant> out) {
+            long t = first;
+            if (t >= from && t < to) {
+                out.add(Instant.ofEpochMilli(t));
+            }
+            int i = 0;
+            while (i < length) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[i++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                t += (zigzag >>> 1) ^ -(zigzag & 1);
+                if (t >= from && t < to) {
+                    out.add(Instant.ofEpochMilli(t));
+                }
+            }
+        }
+    }
+
+    private final class Series {
+        private final Ring minutes = new Ring(MINUTE, minuteSlots);
+        private final Ring hours = new Ring(HOUR, hourSlots);
+        private final Ring days = new Ring(DAY, daySlots);
+        private final Ring[] coarseToFine = {days, hours, minutes};
+        private final Ring[] fineToCoarse = {minutes, hours, days};
+        private final ArrayDeque<Chunk> raw = new ArrayDeque<>();
+
+        synchronized void record(long millis) {
+            minutes.add(millis);
+            hours.add(millis);
+            days.add(millis);
+
+            Chunk tail = raw.peekLast();
+            if (tail == null || !tail.append(millis)) {
+                raw.addLast(new Chunk(millis));
+            }
+            long cutoff = millis - rawRetentionMillis;
+            while (raw.size() > maxRawChunks || (raw.size() > 1 && raw.peekFirst().last < cutoff)) {
+                raw.removeFirst();
+            }
+        }
+
+        synchronized long count(long from, long to) {
+            long total = 0;
+            long t = Math.floorDiv(from, MINUTE) * MINUTE;
+            while (t < to) {
+                Ring ring = pick(t, to);
+                long bucket = Math.floorDiv(t, ring.bucketMillis);
+                total += ring.get(bucket);
+                t = (bucket + 1) * ring.bucketMillis;
+            }
+            return total;
+        }
+
+        /**
+         * The coarsest ring whose bucket starting at t fits in the range, or else the finest ring that
+         * still holds t.
+         */
+        private Ring pick(long t, long to) {
+            for (Ring ring : coarseToFine) {
+                if (Math.floorMod(t, ring.bucketMillis) == 0 && t + ring.bucketMillis <= to && ring.retains(t)) {
+                    return ring;
+                }
+            }
+            for (Ring ring : fineToCoarse) {
+                if (ring.retains(t)) {
+                    return ring;
+                }
+            }
+            return days;
+        }
+
+        synchronized List<Instant> raw(long from, long to) {
+            List<Instant> out = new ArrayList<>();
+            for (Chunk chunk : raw) {
+                chunk.decode(from, to, out);
+            }
+            return out;
+        }
+    }
+}
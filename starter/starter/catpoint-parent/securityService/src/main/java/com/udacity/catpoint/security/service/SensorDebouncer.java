@@ -0,0 +1,142 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sits in front of {@link SecurityService#changeSensorActivationStatus} and smooths out chattering
+ * sensors. The first event for a sensor opens a window whose length depends on the sensor type; every
+ * further event inside that window only updates the requested state. When the window closes the sensor
+ * is changed once, and only if the final requested state differs from its current state.
+ *
+ * Only sensors with an open window hold a timer, so the cost is one scheduled task per burst rather
+ * than per event. Windows are closed on the scheduler's thread, which is where the security service
+ * gets called from.
+ */
+public class SensorDebouncer implements AutoCloseable {
+
+    private final SecurityService securityService;
+    private final Map<SensorType, Duration> windows;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Map<UUID, Burst> bursts = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+
+    /**
+     * Creates a debouncer with its own single timer thread.
+     * @param securityService Service that receives the collapsed changes
+     * @param windows Debounce window per sensor type. Types without a window are not debounced
+     */
+    public SensorDebouncer(SecurityService securityService, Map<SensorType, Duration> windows) {
+        this(securityService, windows, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "sensor-debouncer");
+            t.setDaemon(true);
+            return t;
+        }), true);
+    }
+
+    /**
+     * Creates a debouncer that schedules its windows on the provided executor.
+     */
+    public SensorDebouncer(SecurityService securityService, Map<SensorType, Duration> windows,
+                           ScheduledExecutorService scheduler) {
+        this(securityService, windows, scheduler, false);
+    }
+
+    private SensorDebouncer(SecurityService securityService, Map<SensorType, Duration> windows,
+                            ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.securityService = securityService;
+        this.windows = windows.isEmpty() ? new EnumMap<>(SensorType.class) : new EnumMap<>(windows);
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Reports a raw activation change coming from a sensor.
+     * @param sensor The sensor that changed
+     * @param active The state the sensor reported
+     */
+    public void sensorEvent(Sensor sensor, boolean active) {
+        received.increment();
+        Duration window = windows.get(sensor.getSensorType());
+        if (window == null || window.isZero() || window.isNegative()) {
+            forward(sensor, active);
+            return;
+        }
+        bursts.compute(sensor.getSensorId(), (id, burst) -> {
+            if (burst == null) {
+                burst = new Burst(sensor);
+                scheduler.schedule(() -> closeWindow(id), window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+            burst.requested = active;
+            return burst;
+        });
+    }
+
+    private void closeWindow(UUID sensorId) {
+        Burst burst = bursts.remove(sensorId);
+        //compare against the stored state now rather than at the start of the burst, since an earlier
+        // burst may only just have been applied
+        if (burst != null && burst.requested != securityService.isSensorActive(burst.sensor)) {
+            forward(burst.sensor, burst.requested);
+        }
+    }
+
+    private void forward(Sensor sensor, boolean active) {
+        forwarded.increment();
+        securityService.changeSensorActivationStatus(sensor, active);
+    }
+
+    /**
+     * @return number of raw sensor events received
+     */
+    public long getReceivedEvents() {
+        return received.sum();
+    }
+
+    /**
+     * @return number of changes passed on to the security service
+     */
+    public long getForwardedEvents() {
+        return forwarded.sum();
+    }
+
+    /**
+     * @return number of sensors that currently have an open debounce window
+     */
+    public int getPendingSensors() {
+        return bursts.size();
+    }
+
+    /**
+     * Stops the timer thread if this debouncer created it. Open windows are discarded.
+     */
+    @Override
+    public void close() {
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+        bursts.clear();
+    }
+
+    private static class Burst {
+        private final Sensor sensor;
+        private volatile boolean requested;
+
+        Burst(Sensor sensor) {
+            this.sensor = sensor;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks when each sensor last reported in, and marks sensors offline when they miss their deadline.
+ * Each sensor type has its own timeout. An offline sensor comes back online with its next heartbeat.
+ * Both changes are published to {@link com.udacity.catpoint.security.application.StatusListener}s as
+ * liveness events.
+ *
+ * Deadlines are kept in a hierarchical timing wheel: four levels of 256 slots, each level's slot covering
+ * a whole turn of the level below, so a deadline up to 2^32 ticks away is filed in constant time. Slots
+ * are intrusive doubly linked lists over int arrays indexed by a sensor's handle, so the wheel allocates
+ * nothing after it is created, whatever the number of sensors.
+ *
+ * A heartbeat only stores the time it arrived. Sensors stay in the slot of their original deadline; when
+ * that slot comes due, a sensor that has been seen since is filed again under its new deadline. So
+ * heartbeats take no lock and allocate nothing, and each sensor costs the wheel about one refile per
+ * timeout, however often it reports.
+ */
+public class SensorLivenessTracker implements AutoCloseable {
+
+    /**
+     * Returned by {@link #register} for sensors whose type has no timeout.
+     */
+    public static final int NOT_TRACKED = -1;
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final int NIL = -1;
+    //where a handle is when it is not filed in any slot
+    private static final int OFFLINE = -2;
+    private static final int FREE = -3;
+
+    private final SecurityService securityService;
+    private final long tickNanos;
+    private final long[] timeoutNanos = new long[SensorType.values().length];
+    private final LongSupplier nanoClock;
+    private final long origin;
+    private final Thread ticker;
+    private volatile boolean closed;
+
+    //written by heartbeats without the lock
+    private final AtomicLongArray lastSeen;
+    private final AtomicIntegerArray offline;
+    private final Map<UUID, Integer> handles = new ConcurrentHashMap<>();
+
+    //everything below is guarded by the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Sensor[] sensors;
+    private final int[] next;
+    private final int[] prev;
+    //slot a handle is filed in, or OFFLINE or FREE
+    private final int[] slotOf;
+    private final int[] heads = new int[LEVELS * SLOTS];
+    private int freeHead;
+    private int tracked;
+    private int offlineCount;
+    private long currentTick;
+    //sensors that went offline in the current advance, handed to listeners once the lock is released
+    private Sensor[] wentOffline = new Sensor[64];
+
+    /**
+     * Creates a tracker with its own ticker thread.
+     * @param securityService Service whose listeners are told about liveness changes
+     * @param timeouts Longest a sensor of each type may go without a heartbeat. Types without a timeout aren't tracked
+     * @param tick Resolution of the deadlines
+     * @param capacity Most sensors tracked at once
+     */
+    public SensorLivenessTracker(SecurityService securityService, Map<SensorType, Duration> timeouts,
+                                 Duration tick, int capacity) {
+        this(securityService, timeouts, tick, capacity, System::nanoTime, true);
+    }
+
+    /**
+     * Creates a tracker without a ticker thread, for callers that drive {@link #advance()} themselves.
+     */
+    SensorLivenessTracker(SecurityService securityService, Map<SensorType, Duration> timeouts, Duration tick,
+                          int capacity, LongSupplier nanoClock) {
+        this(securityService, timeouts, tick, capacity, nanoClock, false);
+    }
+
+    private SensorLivenessTracker(SecurityService securityService, Map<SensorType, Duration> timeouts, Duration tick,
+                                  int capacity, LongSupplier nanoClock, boolean startTicker) {
+        if (tick.isZero() || tick.isNegative() || capacity < 1) {
+            throw new IllegalArgumentException("Invalid liveness tracker settings");
+        }
+        this.securityService = securityService;
+        this.tickNanos = tick.toNanos();
+        timeouts.forEach((type, timeout) -> timeoutNanos[type.ordinal()] = timeout.toNanos());
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+
+        lastSeen = new AtomicLongArray(capacity);
+        offline = new AtomicIntegerArray(capacity);
+        sensors = new Sensor[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        slotOf = new int[capacity];
+        Arrays.fill(heads, NIL);
+        Arrays.fill(slotOf, FREE);
+        //unused handles are chained through next
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NIL;
+        }
+        freeHead = 0;
+
+        if (startTicker) {
+            ticker = new Thread(this::runTicker, "sensor-liveness");
+            ticker.setDaemon(true);
+            ticker.start();
+        } else {
+            ticker = null;
+        }
+    }
+
+    /**
+     * Starts tracking a sensor, counting registration as its first heartbeat. Registering a sensor that
+     * is already tracked returns its existing handle.
+     * @return the handle to pass to {@link #heartbeat(int)}, or {@link #NOT_TRACKED} if the sensor's type has no timeout
+     * @throws IllegalStateException if the tracker is full
+     */
+    public int register(Sensor sensor) {
+        if (timeoutNanos[sensor.getSensorType().ordinal()] <= 0) {
+            return NOT_TRACKED;
+        }
+        lock.lock();
+        try {
+            Integer existing = handles.get(sensor.getSensorId());
+            if (existing != null) {
+                return existing;
+            }
+            if (freeHead == NIL) {
+                throw new IllegalStateException("Liveness tracker is full (" + sensors.length + " sensors)");
+            }
+            int handle = freeHead;
+            freeHead = next[handle];
+            sensors[handle] = sensor;
+            lastSeen.set(handle, nanoClock.getAsLong());
+            offline.set(handle, 0);
+            file(handle, currentTick + 1);
+            tracked++;
+            handles.put(sensor.getSensorId(), handle);
+            return handle;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops tracking a sensor. Its handle may be given to another sensor afterwards.
+     */
+    public void unregister(Sensor sensor) {
+        lock.lock();
+        try {
+            Integer handle = handles.remove(sensor.getSensorId());
+            if (handle == null) {
+                return;
+            }
+            int h = handle;
+            if (slotOf[h] >= 0) {
+                unlink(h);
+            } else if (slotOf[h] == OFFLINE) {
+                offlineCount--;
+            }
+            slotOf[h] = FREE;
+            sensors[h] = null;
+            next[h] = freeHead;
+            freeHead = h;
+            tracked--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a heartbeat. Takes no lock and allocates nothing, unless the sensor was offline.
+     * @param handle Handle returned by {@link #register}; must not be used after the sensor is unregistered
+     */
+    public void heartbeat(int handle) {
+        lastSeen.set(handle, nanoClock.getAsLong());
+        if (offline.get(handle) != 0) {
+            revive(handle);
+        }
+    }
+
+    /**
+     * Records a heartbeat for a sensor by id. Does nothing if the sensor isn't tracked.
+     */
+    public void heartbeat(UUID sensorId) {
+        Integer handle = handles.get(sensorId);
+        if (handle != null) {
+            heartbeat(handle.intValue());
+        }
+    }
+
+    private void revive(int handle) {
+        Sensor sensor;
+        lock.lock();
+        try {
+            if (slotOf[handle] != OFFLINE) {
+                return;
+            }
+            offline.set(handle, 0);
+            offlineCount--;
+            file(handle, currentTick + 1);
+            sensor = sensors[handle];
+        } finally {
+            lock.unlock();
+        }
+        securityService.sensorLivenessChanged(sensor, true);
+    }
+
+    /**
+     * Processes every tick up to the current time, marking sensors whose deadline has passed offline.
+     * Called by the ticker thread.
+     */
+    void advance() {
+        int count = 0;
+        lock.lock();
+        try {
+            long target = (nanoClock.getAsLong() - origin) / tickNanos;
+            while (currentTick < target) {
+                currentTick++;
+                //refile the slots of higher levels whose turn starts now, highest first, so their sensors
+                // land in lower levels that are refiled in turn
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+                        refile(level * SLOTS + (int) ((currentTick >>> (level * SLOT_BITS)) & (SLOTS - 1)));
+                    }
+                }
+                count = expire((int) (currentTick & (SLOTS - 1)), count);
+            }
+        } finally {
+            lock.unlock();
+        }
+        //listeners are called without the lock, so they may call back into the tracker. A sensor that
+        // reported in again meanwhile has already been announced as back online
+        for (int i = 0; i < count; i++) {
+            Sensor sensor = wentOffline[i];
+            wentOffline[i] = null;
+            if (!isOnline(sensor.getSensorId())) {
+                securityService.sensorLivenessChanged(sensor, false);
+            }
+        }
+    }
+
+    private void refile(int slot) {
+        int handle = heads[slot];
+        heads[slot] = NIL;
+        while (handle != NIL) {
+            int following = next[handle];
+            //a sensor due right now goes into the level-0 slot that is expired next
+            file(handle, currentTick);
+            handle = following;
+        }
+    }
+
+    /**
+     * Marks the due sensors of a level-0 slot offline and refiles the ones seen since they were filed.
+     * @return the number of sensors now in the went-offline buffer
+     */
+    private int expire(int slot, int count) {
+        int handle = heads[slot];
+        heads[slot] = NIL;
+        while (handle != NIL) {
+            int following = next[handle];
+            if (deadlineTick(handle) > currentTick) {
+                file(handle, currentTick + 1);
+            } else {
+                slotOf[handle] = OFFLINE;
+                offline.set(handle, 1);
+                offlineCount++;
+                //a heartbeat that raced with the check above would otherwise be lost: either it sees the
+                // offline flag and revives the sensor, or it is seen here
+                if (deadlineTick(handle) > currentTick) {
+                    offline.set(handle, 0);
+                    offlineCount--;
+                    file(handle, currentTick + 1);
+                } else {
+                    if (count == wentOffline.length) {
+                        wentOffline = Arrays.copyOf(wentOffline, count * 2);
+                    }
+                    wentOffline[count++] = sensors[handle];
+                }
+            }
+            handle = following;
+        }
+        return count;
+    }
+
+    private long deadlineTick(int handle) {
+        long deadline = lastSeen.get(handle) + timeoutNanos[sensors[handle].getSensorType().ordinal()] - origin;
+        //round up, so a sensor is never declared offline before its timeout has passed
+        return Math.floorDiv(deadline + tickNanos - 1, tickNanos);
+    }
+
+    /**
+     * Files a handle in the slot for its deadline. Must be called holding the lock.
+     * @param earliestTick Earliest tick to file it for
+     */
+    private void file(int handle, long earliestTick) {
+        long deadline = Math.max(deadlineTick(handle), earliestTick);
+        long delta = deadline - currentTick;
+        int slot;
+        if (delta < SLOTS) {
+            slot = (int) (deadline & (SLOTS - 1));
+        } else {
+            int level = 1;
+            while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)) {
+                level++;
+            }
+            //deadlines beyond the top level are filed at its far end and refiled when it comes round
+            long clamped = Math.min(deadline, currentTick + (1L << (LEVELS * SLOT_BITS)) - 1);
+            slot = level * SLOTS + (int) ((clamped >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        }
+        int head = heads[slot];
+        next[handle] = head;
+        prev[handle] = NIL;
+        if (head != NIL) {
+            prev[head] = handle;
+        }
+        heads[slot] = handle;
+        slotOf[handle] = slot;
+    }
+
+    private void unlink(int handle) {
+        int slot = slotOf[handle];
+        if (prev[handle] == NIL) {
+            heads[slot] = next[handle];
+        } else {
+            next[prev[handle]] = next[handle];
+        }
+        if (next[handle] != NIL) {
+            prev[next[handle]] = prev[handle];
+        }
+        slotOf[handle] = NIL;
+    }
+
+    private void runTicker() {
+        while (!closed) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(tickNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            advance();
+        }
+    }
+
+    /**
+     * @return whether a tracked sensor is online; untracked sensors count as online
+     */
+    public boolean isOnline(UUID sensorId) {
+        Integer handle = handles.get(sensorId);
+        return handle == null || offline.get(handle) == 0;
+    }
+
+    public int getTrackedCount() {
+        lock.lock();
+        try {
+            return tracked;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getOfflineCount() {
+        lock.lock();
+        try {
+            return offlineCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the ticker thread. Heartbeats are still recorded but nobody is marked offline any more.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ticker != null) {
+            ticker.interrupt();
+        }
+    }
+}
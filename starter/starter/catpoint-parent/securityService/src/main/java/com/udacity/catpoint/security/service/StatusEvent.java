@@ -0,0 +1,101 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+/**
+ * Typed status change published by the {@link SecurityService}. Events are immutable and, except
+ * for liveness events which name their sensor, shared, so publishing one never allocates.
+ */
+public final class StatusEvent {
+
+    public enum Type {
+        ALARM_STATUS, CAT_DETECTED, SENSOR_STATUS, SENSOR_LIVENESS
+    }
+
+    private static final StatusEvent[] ALARM_EVENTS = new StatusEvent[AlarmStatus.values().length];
+    private static final StatusEvent CAT = new StatusEvent(Type.CAT_DETECTED, null, true, null);
+    private static final StatusEvent NO_CAT = new StatusEvent(Type.CAT_DETECTED, null, false, null);
+    private static final StatusEvent SENSOR_STATUS = new StatusEvent(Type.SENSOR_STATUS, null, false, null);
+
+    static {
+        for (AlarmStatus status : AlarmStatus.values()) {
+            ALARM_EVENTS[status.ordinal()] = new StatusEvent(Type.ALARM_STATUS, status, false, null);
+        }
+    }
+
+    private final Type type;
+    private final AlarmStatus alarmStatus;
+    //doubles as the online flag for liveness events
+    private final boolean catDetected;
+    private final Sensor sensor;
+
+    private StatusEvent(Type type, AlarmStatus alarmStatus, boolean catDetected, Sensor sensor) {
+        this.type = type;
+        this.alarmStatus = alarmStatus;
+        this.catDetected = catDetected;
+        this.sensor = sensor;
+    }
+
+    public static StatusEvent alarmStatus(AlarmStatus status) {
+        return ALARM_EVENTS[status.ordinal()];
+    }
+
+    public static StatusEvent catDetected(boolean cat) {
+        return cat ? CAT : NO_CAT;
+    }
+
+    public static StatusEvent sensorStatusChanged() {
+        return SENSOR_STATUS;
+    }
+
+    /**
+     * @param sensor Sensor that went offline or came back
+     * @param online Whether the sensor is now online
+     */
+    public static StatusEvent sensorLivenessChanged(Sensor sensor, boolean online) {
+        return new StatusEvent(Type.SENSOR_LIVENESS, null, online, sensor);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the new alarm status, only set for {@link Type#ALARM_STATUS} events
+     */
+    public AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    /**
+     * @return whether a cat was detected, only meaningful for {@link Type#CAT_DETECTED} events
+     */
+    public boolean isCatDetected() {
+        return catDetected;
+    }
+
+    /**
+     * @return the sensor whose liveness changed, only set for {@link Type#SENSOR_LIVENESS} events
+     */
+    public Sensor getSensor() {
+        return sensor;
+    }
+
+    /**
+     * @return whether the sensor is now online, only meaningful for {@link Type#SENSOR_LIVENESS} events
+     */
+    public boolean isOnline() {
+        return catDetected;
+    }
+
+    @Override
+    public String toString() {
+        return switch (type) {
+            case ALARM_STATUS -> "StatusEvent[" + type + "=" + alarmStatus + "]";
+            case CAT_DETECTED -> "StatusEvent[" + type + "=" + catDetected + "]";
+            case SENSOR_LIVENESS -> "StatusEvent[" + type + "=" + sensor.getName() + (catDetected ? " online" : " offline") + "]";
+            default -> "StatusEvent[" + type + "]";
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.StatusListener;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts a {@link StatusListener} onto the {@link StatusPublisher} so existing listeners
+ * receive the same callbacks they always did.
+ */
+class StatusListenerSubscriber implements Flow.Subscriber<StatusEvent> {
+
+    private final StatusListener listener;
+    private volatile Flow.Subscription subscription;
+
+    StatusListenerSubscriber(StatusListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(StatusEvent event) {
+        switch (event.getType()) {
+            case ALARM_STATUS -> listener.notify(event.getAlarmStatus());
+            case CAT_DETECTED -> listener.catDetected(event.isCatDetected());
+            case SENSOR_STATUS -> listener.sensorStatusChanged();
+            case SENSOR_LIVENESS -> listener.sensorLivenessChanged(event.getSensor(), event.isOnline());
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        System.out.println("Status listener " + listener + " unsubscribed: " + throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {
+        // no behavior necessary
+    }
+
+    void cancel() {
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+}
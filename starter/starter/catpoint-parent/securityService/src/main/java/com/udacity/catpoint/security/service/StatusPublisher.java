@@ -0,0 +1,236 @@
+package com.udacity.catpoint.security.service;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes {@link StatusEvent}s to any number of subscribers. Every subscriber gets its own bounded
+ * buffer, its own delivery executor and an {@link OverflowPolicy}, so {@link #publish} never waits on
+ * a subscriber: a slow subscriber only ever loses its own events.
+ *
+ * Subscribers registered with a same-thread executor (the default) are called from inside
+ * {@link #publish}, which keeps the synchronous behavior the old listener loop had.
+ */
+public class StatusPublisher implements Flow.Publisher<StatusEvent> {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    private final List<BufferedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Subscribes with same-thread delivery, a buffer of {@value #DEFAULT_BUFFER_SIZE} events and
+     * {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super StatusEvent> subscriber) {
+        subscribe(subscriber, Runnable::run, DEFAULT_BUFFER_SIZE, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * @param subscriber Subscriber to receive events
+     * @param executor Executor the subscriber's callbacks run on
+     * @param bufferSize Maximum number of undelivered events kept for this subscriber
+     * @param policy What to do when the buffer is full
+     */
+    public void subscribe(Flow.Subscriber<? super StatusEvent> subscriber, Executor executor,
+                          int bufferSize, OverflowPolicy policy) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        BufferedSubscription subscription = new BufferedSubscription(subscriber, executor, bufferSize, policy);
+        subscriptions.add(subscription);
+        subscription.signal();
+    }
+
+    /**
+     * Offers an event to every subscriber's buffer and schedules delivery.
+     */
+    public void publish(StatusEvent event) {
+        for (BufferedSubscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * @return number of active subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return events dropped across all current subscriptions because their buffers were full
+     */
+    public long getDroppedEvents() {
+        long dropped = 0;
+        for (BufferedSubscription subscription : subscriptions) {
+            dropped += subscription.dropped.get();
+        }
+        return dropped;
+    }
+
+    /**
+     * Completes every subscription once its buffered events are delivered.
+     */
+    public void close() {
+        for (BufferedSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private class BufferedSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super StatusEvent> subscriber;
+        private final Executor executor;
+        private final int capacity;
+        private final OverflowPolicy policy;
+
+        private final ArrayDeque<StatusEvent> buffer = new ArrayDeque<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicLong dropped = new AtomicLong();
+        private boolean subscribed;
+        private volatile boolean cancelled;
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        BufferedSubscription(Flow.Subscriber<? super StatusEvent> subscriber, Executor executor,
+                             int capacity, OverflowPolicy policy) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        void offer(StatusEvent event) {
+            synchronized (buffer) {
+                if (cancelled || completed) {
+                    return;
+                }
+                if (policy == OverflowPolicy.LATEST_ONLY) {
+                    dropped.addAndGet(buffer.size());
+                    buffer.clear();
+                } else if (buffer.size() >= capacity) {
+                    dropped.incrementAndGet();
+                    if (policy == OverflowPolicy.FAIL) {
+                        error = new IllegalStateException("Status event buffer overflow (" + capacity + " events)");
+                        event = null;
+                    } else {
+                        buffer.poll();
+                    }
+                }
+                if (event != null) {
+                    buffer.add(event);
+                }
+            }
+            signal();
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException ree) {
+                    cancel();
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " events, must be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            synchronized (buffer) {
+                buffer.clear();
+            }
+        }
+
+        /**
+         * Drain loop. Only one thread runs it at a time; signals that arrive while it runs are
+         * counted in wip and picked up before it exits.
+         */
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    if (!deliver(() -> subscriber.onSubscribe(this))) {
+                        return;
+                    }
+                }
+                long requested = demand.get();
+                long emitted = 0;
+                while (!cancelled && error == null && emitted != requested) {
+                    StatusEvent event;
+                    synchronized (buffer) {
+                        event = buffer.poll();
+                    }
+                    if (event == null) {
+                        break;
+                    }
+                    if (!deliver(() -> subscriber.onNext(event))) {
+                        return;
+                    }
+                    emitted++;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                if (!cancelled && error != null) {
+                    Throwable t = error;
+                    cancel();
+                    subscriber.onError(t);
+                    return;
+                }
+                if (!cancelled && completed && isBufferEmpty()) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private boolean isBufferEmpty() {
+            synchronized (buffer) {
+                return buffer.isEmpty();
+            }
+        }
+
+        /**
+         * Runs a subscriber callback. A subscriber that throws is cancelled rather than allowed to
+         * break the publishing thread.
+         */
+        private boolean deliver(Runnable callback) {
+            try {
+                callback.run();
+                return true;
+            } catch (RuntimeException e) {
+                System.out.println("Cancelling status subscriber after error: " + e);
+                cancel();
+                return false;
+            }
+        }
+    }
+}
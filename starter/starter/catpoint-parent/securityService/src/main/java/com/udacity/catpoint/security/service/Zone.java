@@ -0,0 +1,113 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A named group of sensors with its own arming and alarm status. Zones are created and evaluated
+ * by the {@link ZoneService}; all state changes happen while holding the zone's monitor.
+ *
+ * Sensors are tracked by id. Their activation is kept by the zone rather than read from the sensor
+ * objects, since those may be shared snapshot copies, and a sensor may be changed through a different
+ * object with the same id than the one it was assigned with.
+ */
+public class Zone {
+
+    private final String name;
+    private final Map<UUID, Sensor> sensors = new HashMap<>();
+    private final Set<UUID> activeSensors = new HashSet<>();
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+
+    Zone(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    /**
+     * @return a copy of the sensors currently in this zone, as they were assigned. Their activation may be
+     * out of date; use {@link #isSensorActive}
+     */
+    public synchronized Collection<Sensor> getSensors() {
+        return new ArrayList<>(sensors.values());
+    }
+
+    synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+    }
+
+    synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+    }
+
+    /**
+     * Adds a sensor, taking its current activation as the starting point.
+     */
+    synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor.getSensorId(), sensor);
+        setSensorActive(sensor.getSensorId(), sensor.getActive());
+    }
+
+    synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+        activeSensors.remove(sensor.getSensorId());
+    }
+
+    /**
+     * Records the activation of one of this zone's sensors. Ids that aren't in the zone are ignored.
+     * @return whether the sensor was active before
+     */
+    synchronized boolean setSensorActive(UUID sensorId, boolean active) {
+        if (!sensors.containsKey(sensorId)) {
+            return false;
+        }
+        return active ? !activeSensors.add(sensorId) : activeSensors.remove(sensorId);
+    }
+
+    public synchronized boolean isSensorActive(UUID sensorId) {
+        return activeSensors.contains(sensorId);
+    }
+
+    /**
+     * Marks every sensor in the zone inactive.
+     * @return the sensors that were active
+     */
+    synchronized List<Sensor> resetSensors() {
+        List<Sensor> reset = new ArrayList<>(activeSensors.size());
+        for (UUID id : activeSensors) {
+            reset.add(sensors.get(id));
+        }
+        activeSensors.clear();
+        return reset;
+    }
+
+    synchronized boolean anySensorActive() {
+        return !activeSensors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "Zone[" + name + "]";
+    }
+}
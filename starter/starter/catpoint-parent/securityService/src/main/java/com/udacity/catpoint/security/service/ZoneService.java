@@ -0,0 +1,247 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Splits the system into {@link Zone}s that are armed and alarmed independently. A sensor event only
+ * evaluates the zone its sensor belongs to, using the same transition table as {@link SecurityService},
+ * so its cost depends on the zone and not on the whole installation. Events for different zones can be
+ * handled concurrently, and system-wide events (arming everything, cat detection) evaluate all zones
+ * in parallel.
+ *
+ * The system alarm status is the most severe zone status. It is kept up to date from a count of zones
+ * per status, written to the repository and published whenever it changes.
+ */
+public class ZoneService {
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+
+    private final SecurityRepository securityRepository;
+    private final StatusPublisher statusPublisher = new StatusPublisher();
+    private final Map<String, Zone> zones = new ConcurrentHashMap<>();
+    private final Map<UUID, Zone> zoneBySensor = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray zonesPerStatus = new AtomicIntegerArray(ALARM_STATUSES.length);
+    //the repository implementations aren't thread safe, so writes from different zones take turns
+    private final Object repositoryLock = new Object();
+    private final Object systemStatusLock = new Object();
+    private volatile boolean catPresent;
+    private AlarmStatus systemStatus = AlarmStatus.NO_ALARM;
+
+    public ZoneService(SecurityRepository securityRepository) {
+        this.securityRepository = securityRepository;
+        Boolean cat = securityRepository.getCatDisplayed();
+        this.catPresent = Boolean.TRUE.equals(cat);
+    }
+
+    /**
+     * Creates a zone, or returns the existing zone with that name. New zones start disarmed.
+     */
+    public Zone addZone(String name) {
+        return zones.computeIfAbsent(name, n -> {
+            zonesPerStatus.incrementAndGet(AlarmStatus.NO_ALARM.ordinal());
+            return new Zone(n);
+        });
+    }
+
+    /**
+     * Removes a zone. Its sensors no longer belong to any zone.
+     */
+    public void removeZone(String name) {
+        Zone zone = zones.remove(name);
+        if (zone == null) {
+            return;
+        }
+        synchronized (zone) {
+            zone.getSensors().forEach(s -> zoneBySensor.remove(s.getSensorId(), zone));
+            zonesPerStatus.decrementAndGet(zone.getAlarmStatus().ordinal());
+        }
+        updateSystemStatus();
+    }
+
+    public Zone getZone(String name) {
+        return zones.get(name);
+    }
+
+    public Collection<Zone> getZones() {
+        return zones.values();
+    }
+
+    /**
+     * Puts a sensor in a zone, taking it out of any zone it was in before.
+     */
+    public void assignSensor(String zoneName, Sensor sensor) {
+        Zone zone = requireZone(zoneName);
+        Zone previous = zoneBySensor.put(sensor.getSensorId(), zone);
+        if (previous != null && previous != zone) {
+            previous.removeSensor(sensor);
+        }
+        zone.addSensor(sensor);
+    }
+
+    public void unassignSensor(Sensor sensor) {
+        Zone zone = zoneBySensor.remove(sensor.getSensorId());
+        if (zone != null) {
+            zone.removeSensor(sensor);
+        }
+    }
+
+    /**
+     * @return the zone a sensor belongs to, or null if it isn't in one
+     */
+    public Zone getZoneOf(Sensor sensor) {
+        return zoneBySensor.get(sensor.getSensorId());
+    }
+
+    /**
+     * Changes a sensor's activation and evaluates only the sensor's zone. The given sensor is not changed,
+     * since it may be shared with other readers of a snapshot; a copy with the new state is written instead.
+     */
+    public void changeSensorActivationStatus(Sensor sensor, boolean active) {
+        synchronized (repositoryLock) {
+            securityRepository.updateSensor(SecurityService.withActive(sensor, active));
+        }
+        Zone zone = zoneBySensor.get(sensor.getSensorId());
+        if (zone != null) {
+            synchronized (zone) {
+                boolean wasActive = zone.setSensorActive(sensor.getSensorId(), active);
+                if (active) {
+                    evaluate(zone, AlarmTransitions.Event.SENSOR_ACTIVATED);
+                } else if (wasActive) {
+                    evaluate(zone, AlarmTransitions.Event.SENSOR_DEACTIVATED);
+                }
+            }
+        }
+        statusPublisher.publish(StatusEvent.sensorStatusChanged());
+    }
+
+    /**
+     * Arms or disarms a single zone. Arming resets the zone's sensors to inactive.
+     */
+    public void setArmingStatus(String zoneName, ArmingStatus armingStatus) {
+        setArmingStatus(requireZone(zoneName), armingStatus);
+    }
+
+    /**
+     * Arms or disarms every zone, in parallel.
+     */
+    public void setArmingStatus(ArmingStatus armingStatus) {
+        zones.values().parallelStream().forEach(zone -> setArmingStatus(zone, armingStatus));
+        synchronized (repositoryLock) {
+            securityRepository.setArmingStatus(armingStatus);
+        }
+    }
+
+    /**
+     * Records whether the camera shows a cat and evaluates every zone, in parallel.
+     */
+    public void catDetected(boolean cat) {
+        catPresent = cat;
+        synchronized (repositoryLock) {
+            securityRepository.setCatDisplayed(cat);
+        }
+        AlarmTransitions.Event event = cat ? AlarmTransitions.Event.CAT_DETECTED : AlarmTransitions.Event.CAT_CLEARED;
+        zones.values().parallelStream().forEach(zone -> {
+            synchronized (zone) {
+                evaluate(zone, event);
+            }
+        });
+        statusPublisher.publish(StatusEvent.catDetected(cat));
+    }
+
+    /**
+     * @return the alarm status of one zone
+     */
+    public AlarmStatus getAlarmStatus(String zoneName) {
+        return requireZone(zoneName).getAlarmStatus();
+    }
+
+    /**
+     * @return the most severe alarm status of any zone
+     */
+    public AlarmStatus getAlarmStatus() {
+        synchronized (systemStatusLock) {
+            return systemStatus;
+        }
+    }
+
+    /**
+     * @return publisher of system-wide status changes
+     */
+    public StatusPublisher getStatusPublisher() {
+        return statusPublisher;
+    }
+
+    private void setArmingStatus(Zone zone, ArmingStatus armingStatus) {
+        synchronized (zone) {
+            evaluate(zone, AlarmTransitions.Event.armingFor(armingStatus));
+            if (armingStatus != ArmingStatus.DISARMED) {
+                List<Sensor> changed = new ArrayList<>();
+                for (Sensor sensor : zone.resetSensors()) {
+                    changed.add(SecurityService.withActive(sensor, false));
+                }
+                if (!changed.isEmpty()) {
+                    synchronized (repositoryLock) {
+                        securityRepository.updateSensors(changed);
+                    }
+                    evaluate(zone, AlarmTransitions.Event.SENSOR_DEACTIVATED);
+                }
+            }
+            zone.setArmingStatus(armingStatus);
+        }
+    }
+
+    /**
+     * Applies the transition table to one zone. Must be called holding the zone's monitor.
+     */
+    private void evaluate(Zone zone, AlarmTransitions.Event event) {
+        AlarmStatus before = zone.getAlarmStatus();
+        int action = AlarmTransitions.lookup(zone.getArmingStatus(), before, event, zone.anySensorActive(), catPresent);
+        AlarmStatus after = AlarmTransitions.alarmStatusToWrite(action);
+        if (after == null || after == before) {
+            return;
+        }
+        zone.setAlarmStatus(after);
+        zonesPerStatus.incrementAndGet(after.ordinal());
+        zonesPerStatus.decrementAndGet(before.ordinal());
+        updateSystemStatus();
+    }
+
+    private void updateSystemStatus() {
+        synchronized (systemStatusLock) {
+            AlarmStatus status = AlarmStatus.NO_ALARM;
+            for (int i = ALARM_STATUSES.length - 1; i >= 0; i--) {
+                if (zonesPerStatus.get(i) > 0) {
+                    status = ALARM_STATUSES[i];
+                    break;
+                }
+            }
+            if (status == systemStatus) {
+                return;
+            }
+            systemStatus = status;
+            synchronized (repositoryLock) {
+                securityRepository.setAlarmStatus(status);
+            }
+            statusPublisher.publish(StatusEvent.alarmStatus(status));
+        }
+    }
+
+    private Zone requireZone(String name) {
+        Zone zone = zones.get(name);
+        if (zone == null) {
+            throw new IllegalArgumentException("No zone named " + name);
+        }
+        return zone;
+    }
+}
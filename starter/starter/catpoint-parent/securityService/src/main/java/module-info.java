@@ -6,6 +6,7 @@ module com.udacity.catpoint.securityService {
     requires com.google.common;
     requires com.google.gson;
     requires java.sql;
+    requires java.management;
     opens com.udacity.catpoint.security.data to com.google.gson;
     exports com.udacity.catpoint.security.service;
     exports com.udacity.catpoint.security.application;
@@ -0,0 +1,152 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarSensorStoreTest {
+
+    @Test
+    void putFindRemove_manySensors_indexStaysConsistent() {
+        ColumnarSensorStore store = new ColumnarSensorStore();
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Sensor s = new Sensor("sensor" + (i % 10), SensorType.values()[i % 3]);
+            s.setActive(i % 2 == 0);
+            sensors.add(s);
+            store.put(s);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            assertTrue(store.remove(sensors.get(i).getSensorId()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            int row = store.find(sensors.get(i).getSensorId());
+            if (i % 3 == 0) {
+                assertEquals(-1, row);
+            } else {
+                assertEquals(sensors.get(i), store.view(row));
+                assertEquals(sensors.get(i).getName(), store.getName(row));
+                assertEquals(sensors.get(i).getActive(), store.isActive(row));
+            }
+        }
+        assertEquals(666, store.size());
+        assertEquals(333, store.activeCount());
+    }
+
+    @Test
+    void views_behaveLikePlainSensors() {
+        ColumnarSensorStore store = new ColumnarSensorStore();
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        store.put(door);
+        Sensor view = store.asSet().iterator().next();
+
+        assertEquals(door, view);
+        assertEquals(view, door);
+        assertEquals(door.hashCode(), view.hashCode());
+        assertEquals(0, door.compareTo(view));
+
+        view.setActive(true);
+        assertTrue(store.isActive(store.find(door.getSensorId())));
+
+        Set<Sensor> plain = new HashSet<>(Set.of(door));
+        assertTrue(plain.contains(view));
+        assertTrue(store.asSet().remove(door));
+        assertTrue(store.asSet().isEmpty());
+    }
+
+    @Test
+    void removedSensor_viewFails_evenAfterItsRowIsReused() {
+        ColumnarSensorStore store = new ColumnarSensorStore();
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor view = store.view(store.put(door));
+        store.remove(door.getSensorId());
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        int row = store.put(window);
+
+        assertEquals(row, store.find(window.getSensorId()));
+        assertThrows(IllegalStateException.class, view::getName);
+        assertThrows(IllegalStateException.class, () -> view.setActive(true));
+        assertNotEquals(view, store.view(row));
+        assertFalse(store.isActive(row));
+    }
+
+    @Test
+    void setSensorId_reindexesRow_andRejectsTakenIds() {
+        ColumnarSensorStore store = new ColumnarSensorStore();
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        Sensor view = store.view(store.put(door));
+        store.put(window);
+        UUID newId = UUID.randomUUID();
+
+        view.setSensorId(newId);
+        assertEquals(newId, view.getSensorId());
+        assertEquals(-1, store.find(door.getSensorId()));
+        assertEquals("door", store.getName(store.find(newId)));
+        assertThrows(IllegalArgumentException.class, () -> view.setSensorId(window.getSensorId()));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void unusedNames_droppedFromTable() {
+        ColumnarSensorStore store = new ColumnarSensorStore();
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Sensor s = new Sensor("sensor" + i, SensorType.DOOR);
+            sensors.add(s);
+            store.put(s);
+        }
+        Sensor shared = new Sensor("sensor0", SensorType.MOTION);
+        store.put(shared);
+        assertEquals(100, store.nameCount());
+
+        for (Sensor s : sensors) {
+            store.remove(s.getSensorId());
+        }
+        assertEquals(1, store.nameCount());
+        assertEquals("sensor0", store.getName(store.find(shared.getSensorId())));
+
+        store.view(store.find(shared.getSensorId())).setName("renamed");
+        assertEquals(1, store.nameCount());
+        store.put(new Sensor("renamed", SensorType.DOOR));
+        assertEquals(1, store.nameCount());
+    }
+
+    @Test
+    void repositorySensors_areSortedCopies() {
+        ColumnarSecurityRepository repository = new ColumnarSecurityRepository();
+        Sensor b = new Sensor("b", SensorType.DOOR);
+        Sensor a = new Sensor("a", SensorType.WINDOW);
+        repository.addSensor(b);
+        repository.addSensor(a);
+
+        List<Sensor> sensors = new ArrayList<>(repository.getSensors());
+        assertEquals(List.of(a, b), sensors);
+        sensors.get(0).setActive(true);
+        assertFalse(repository.getStore().isActive(repository.getStore().find(a.getSensorId())));
+    }
+
+    @Test
+    void repositorySnapshot_reusedUntilNextWrite() {
+        ColumnarSecurityRepository repository = new ColumnarSecurityRepository();
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        repository.addSensor(door);
+
+        VersionedSensorStore.Snapshot first = repository.getSensorSnapshot();
+        assertSame(first, repository.getSensorSnapshot());
+        assertSame(first.getSensors(), repository.getSensors());
+
+        door.setActive(true);
+        repository.updateSensors(List.of(door));
+        VersionedSensorStore.Snapshot second = repository.getSensorSnapshot();
+        assertTrue(second.getVersion() > first.getVersion());
+        assertTrue(second.get(door.getSensorId()).getActive());
+        assertFalse(first.get(door.getSensorId()).getActive());
+    }
+}
@@ -0,0 +1,100 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcSecurityRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private String url() {
+        return "jdbc:h2:" + dir.resolve("catpoint").toAbsolutePath();
+    }
+
+    @Test
+    void sensorsAndStatus_survive_reopen() {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        Sensor window = new Sensor("kitchen window", SensorType.WINDOW);
+        try (JdbcSecurityRepository repository = new JdbcSecurityRepository(url(), 2)) {
+            assertEquals(ArmingStatus.DISARMED, repository.getArmingStatus());
+            assertEquals(AlarmStatus.NO_ALARM, repository.getAlarmStatus());
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            window.setActive(true);
+            repository.updateSensors(List.of(door, window));
+            repository.updateStatus(ArmingStatus.ARMED_AWAY, AlarmStatus.PENDING_ALARM);
+        }
+
+        try (JdbcSecurityRepository repository = new JdbcSecurityRepository(url(), 2)) {
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+            Map<Sensor, Sensor> read = repository.getSensors().stream()
+                    .collect(Collectors.toMap(Function.identity(), Function.identity()));
+            assertEquals(Set.of(door, window), read.keySet());
+            assertTrue(read.get(door).getActive());
+            assertEquals("kitchen window", read.get(window).getName());
+        }
+    }
+
+    @Test
+    void asyncUpdates_appliedInOrder_andUnknownSensorsInserted() {
+        Sensor motion = new Sensor("hall", SensorType.MOTION);
+        try (JdbcSecurityRepository repository = new JdbcSecurityRepository(url())) {
+            motion.setActive(true);
+            repository.updateSensorAsync(motion);
+            repository.setAlarmStatusAsync(AlarmStatus.ALARM);
+            motion.setActive(false);
+            repository.updateSensorAsync(motion).join();
+            repository.removeSensor(new Sensor("never added", SensorType.DOOR));
+        }
+
+        try (JdbcSecurityRepository repository = new JdbcSecurityRepository(url())) {
+            assertEquals(AlarmStatus.ALARM, repository.getAlarmStatus());
+            assertEquals(1, repository.getSensors().size());
+            assertFalse(repository.getSensors().iterator().next().getActive());
+        }
+    }
+
+    @Test
+    void renamedSensor_removedById_andFailedWrite_leavesCacheUnchanged() {
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        try (JdbcSecurityRepository repository = new JdbcSecurityRepository(url())) {
+            repository.addSensor(door);
+            Set<Sensor> before = repository.getSensors();
+            assertThrows(UnsupportedOperationException.class, () -> before.add(new Sensor("x", SensorType.DOOR)));
+
+            //the id is already taken, so the insert fails and the cache must not show the new name
+            Sensor duplicate = new Sensor("back door", SensorType.DOOR);
+            duplicate.setSensorId(door.getSensorId());
+            assertThrows(RepositoryException.class, () -> repository.addSensor(duplicate));
+            assertEquals("front door", repository.getSensors().iterator().next().getName());
+
+            //reads share one snapshot until the next write, which leaves older snapshots as they were
+            VersionedSensorStore.Snapshot snapshot = repository.getSensorSnapshot();
+            assertSame(snapshot, repository.getSensorSnapshot());
+            Sensor attic = new Sensor("attic", SensorType.WINDOW);
+            repository.addSensor(attic);
+            assertTrue(repository.getSensorSnapshot().getVersion() > snapshot.getVersion());
+            assertEquals(1, snapshot.getSensors().size());
+            repository.removeSensor(attic);
+
+            Sensor renamed = new Sensor("garage door", SensorType.DOOR);
+            renamed.setSensorId(door.getSensorId());
+            repository.updateSensor(renamed);
+            repository.removeSensor(door);
+            assertTrue(repository.getSensors().isEmpty());
+            assertEquals(1, before.size());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.udacity.catpoint.security.data;
+
+import com.udacity.catpoint.security.data.ReplicatedSecurityRepository.AckMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicatedSecurityRepositoryTest {
+
+    private final List<ReplicatedSecurityRepository> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() {
+        nodes.forEach(ReplicatedSecurityRepository::close);
+    }
+
+    private ReplicatedSecurityRepository primary(AckMode ackMode) {
+        ReplicatedSecurityRepository node = ReplicatedSecurityRepository.primary(new ColumnarSecurityRepository(), 0, ackMode);
+        nodes.add(node);
+        return node;
+    }
+
+    private ReplicatedSecurityRepository replicaOf(ReplicatedSecurityRepository primary) {
+        ReplicatedSecurityRepository node = ReplicatedSecurityRepository.replica(new ColumnarSecurityRepository(),
+                "localhost", primary.getPort(), AckMode.SYNC);
+        nodes.add(node);
+        return node;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void syncWrites_visibleOnReplicaOnReturn_lateReplicaGetsSnapshot() throws InterruptedException {
+        ReplicatedSecurityRepository primary = primary(AckMode.SYNC);
+        Sensor door = new Sensor("front door", SensorType.DOOR);
+        primary.addSensor(door);
+
+        //connects after the first write, so starts from a snapshot
+        ReplicatedSecurityRepository replica = replicaOf(primary);
+        awaitTrue(() -> primary.getReplicaCount() == 1);
+
+        Sensor window = new Sensor("kitchen window", SensorType.WINDOW);
+        primary.addSensor(window);
+        door.setActive(true);
+        primary.updateSensor(door);
+        primary.updateStatus(ArmingStatus.ARMED_HOME, AlarmStatus.PENDING_ALARM);
+        primary.removeSensor(window);
+
+        assertEquals(primary.getSequence(), replica.getSequence());
+        assertEquals(ArmingStatus.ARMED_HOME, replica.getArmingStatus());
+        assertEquals(AlarmStatus.PENDING_ALARM, replica.getAlarmStatus());
+        assertEquals(1, replica.getSensors().size());
+        Sensor copy = replica.getSensors().iterator().next();
+        assertEquals(door.getSensorId(), copy.getSensorId());
+        assertEquals("front door", copy.getName());
+        assertTrue(copy.getActive());
+
+        assertThrows(IllegalStateException.class, () -> replica.setAlarmStatus(AlarmStatus.ALARM));
+    }
+
+    @Test
+    void asyncBatches_reachEveryReplica_andPromotedReplicaTakesOver() throws InterruptedException {
+        ReplicatedSecurityRepository primary = primary(AckMode.ASYNC);
+        ReplicatedSecurityRepository first = replicaOf(primary);
+        ReplicatedSecurityRepository second = replicaOf(primary);
+        awaitTrue(() -> primary.getReplicaCount() == 2);
+
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Sensor sensor = new Sensor("sensor " + i, SensorType.MOTION);
+            sensors.add(sensor);
+            primary.addSensor(sensor);
+        }
+        sensors.forEach(s -> s.setActive(true));
+        primary.updateSensors(sensors);
+        primary.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        awaitTrue(() -> first.getSequence() == primary.getSequence() && second.getSequence() == primary.getSequence());
+        assertEquals(200, second.getSensors().stream().filter(Sensor::getActive).count());
+
+        //the primary fails; the first replica takes over and the second one follows it
+        primary.close();
+        first.promote(0);
+        assertTrue(first.isPrimary());
+        second.follow("localhost", first.getPort());
+        awaitTrue(() -> first.getReplicaCount() == 1);
+
+        first.setAlarmStatus(AlarmStatus.ALARM);
+        first.removeSensor(sensors.get(0));
+        awaitTrue(() -> second.getSequence() == first.getSequence());
+        assertEquals(AlarmStatus.ALARM, second.getAlarmStatus());
+        assertEquals(ArmingStatus.ARMED_AWAY, second.getArmingStatus());
+        assertEquals(199, second.getSensors().size());
+    }
+
+    @Test
+    void syncWrite_notAcknowledged_failsVisiblyButStaysApplied() throws IOException, InterruptedException {
+        ReplicatedSecurityRepository primary = ReplicatedSecurityRepository.primary(
+                new ColumnarSecurityRepository(), 0, AckMode.SYNC, Duration.ofMillis(200));
+        nodes.add(primary);
+        //connects like a replica but never acknowledges anything
+        try (Socket silent = new Socket("localhost", primary.getPort())) {
+            awaitTrue(() -> primary.getReplicaCount() == 1);
+
+            //an interrupted writer stops waiting at once, and the replica isn't blamed for it
+            Thread.currentThread().interrupt();
+            assertThrows(RepositoryException.class, () -> primary.setArmingStatus(ArmingStatus.ARMED_HOME));
+            assertTrue(Thread.interrupted());
+            assertEquals(1, primary.getReplicaCount());
+
+            Sensor door = new Sensor("front door", SensorType.DOOR);
+            assertThrows(RepositoryException.class, () -> primary.addSensor(door));
+            assertEquals(0, primary.getReplicaCount());
+            assertEquals(ArmingStatus.ARMED_HOME, primary.getArmingStatus());
+            assertEquals(1, primary.getSensors().size());
+
+            //with no replica left to wait for, writes are only local and succeed
+            primary.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+            assertEquals(3, primary.getSequence());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.udacity.catpoint.security.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writeThenOpen_sensorsRoundTrip() throws IOException {
+        Set<Sensor> sensors = Set.of(new Sensor("front door", SensorType.DOOR),
+                new Sensor("küche", SensorType.WINDOW), new Sensor("hall", SensorType.MOTION));
+        sensors.iterator().next().setActive(true);
+        Path file = dir.resolve("sensors.snapshot");
+        SensorSnapshotFile.write(file, sensors);
+
+        SensorSnapshotFile snapshot = SensorSnapshotFile.open(file);
+        assertEquals(3, snapshot.size());
+        assertTrue(snapshot.verify());
+        Set<Sensor> read = snapshot.readAll();
+        assertEquals(sensors, read);
+        for (Sensor s : sensors) {
+            Sensor found = snapshot.find(s.getSensorId());
+            assertEquals(s.getName(), found.getName());
+            assertEquals(s.getSensorType(), found.getSensorType());
+            assertEquals(s.getActive(), found.getActive());
+        }
+        assertNull(snapshot.find(UUID.randomUUID()));
+    }
+
+    @Test
+    void corruptBody_detectedByChecksum() throws IOException {
+        Path file = dir.resolve("sensors.snapshot");
+        SensorSnapshotFile.write(file, Set.of(new Sensor("door", SensorType.DOOR)));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        SensorSnapshotFile snapshot = SensorSnapshotFile.open(file);
+        assertFalse(snapshot.verify());
+        assertThrows(IOException.class, snapshot::readAll);
+    }
+
+    @Test
+    void corruptHeader_rejectedOnOpen() throws IOException {
+        Path file = dir.resolve("sensors.snapshot");
+        SensorSnapshotFile.write(file, Set.of(new Sensor("door", SensorType.DOOR)));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[9] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> SensorSnapshotFile.open(file));
+    }
+
+    @Test
+    void patch_rewritesOnlyTheRecord_whenNameIsUnchanged() throws IOException {
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        Path file = dir.resolve("sensors.snapshot");
+        SensorSnapshotFile.write(file, Set.of(door, window));
+
+        SensorSnapshotFile snapshot = SensorSnapshotFile.openForUpdate(file);
+        door.setActive(true);
+        door.setSensorType(SensorType.MOTION);
+        assertTrue(snapshot.patch(door));
+        window.setName("renamed");
+        assertFalse(snapshot.patch(window));
+        assertFalse(snapshot.patch(new Sensor("other", SensorType.DOOR)));
+
+        SensorSnapshotFile reopened = SensorSnapshotFile.open(file);
+        assertTrue(reopened.verify());
+        assertTrue(reopened.find(door.getSensorId()).getActive());
+        assertEquals(SensorType.MOTION, reopened.find(door.getSensorId()).getSensorType());
+        assertEquals("window", reopened.find(window.getSensorId()).getName());
+    }
+
+    @Test
+    void write_rejectsNamesLongerThanTheFormatAllows() {
+        Sensor sensor = new Sensor("x".repeat(SensorSnapshotFile.MAX_NAME_LENGTH + 1), SensorType.DOOR);
+        assertThrows(IllegalArgumentException.class,
+                () -> SensorSnapshotFile.write(dir.resolve("sensors.snapshot"), Set.of(sensor)));
+    }
+
+    @Test
+    void repository_patchesActivationChanges_andRewritesForNewSensors() throws IOException {
+        Path file = dir.resolve("sensors.snapshot");
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        SensorSnapshotFile.write(file, Set.of(door));
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(file);
+        Object written = fileKey(file);
+
+        door.setActive(true);
+        repository.updateSensor(door);
+        assertEquals(written, fileKey(file));
+        assertTrue(SensorSnapshotFile.open(file).find(door.getSensorId()).getActive());
+
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        repository.addSensor(window);
+        assertNotEquals(written, fileKey(file));
+        assertEquals(Set.of(door, window), SensorSnapshotFile.open(file).readAll());
+    }
+
+    @Test
+    void repository_corruptSnapshot_failsInsteadOfUsingStalePreferences() throws IOException {
+        Path file = dir.resolve("sensors.snapshot");
+        SensorSnapshotFile.write(file, Set.of(new Sensor("door", SensorType.DOOR)));
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        PretendDatabaseSecurityRepositoryImpl repository = new PretendDatabaseSecurityRepositoryImpl(file);
+        assertThrows(RepositoryException.class, repository::getSensors);
+    }
+
+    private static Object fileKey(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    }
+}
@@ -0,0 +1,68 @@
+package com.udacity.catpoint.security.data;
+
+import com.udacity.catpoint.security.data.VersionedSensorStore.Change;
+import com.udacity.catpoint.security.data.VersionedSensorStore.Snapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionedSensorStoreTest {
+
+    @Test
+    void snapshots_areImmutable_andUnaffectedByLaterWrites() {
+        VersionedSensorStore store = new VersionedSensorStore();
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        store.put(List.of(window, door));
+
+        Snapshot first = store.snapshot();
+        assertEquals(1, first.getVersion());
+        assertEquals(List.of("door", "window"), first.getSensors().stream().map(Sensor::getName).collect(Collectors.toList()));
+        Set<Sensor> sensors = first.getSensors();
+        assertThrows(UnsupportedOperationException.class, () -> sensors.add(new Sensor("x", SensorType.MOTION)));
+
+        //the caller's object is copied, so changing it doesn't reach the store until it is written
+        door.setActive(true);
+        assertFalse(first.get(door.getSensorId()).getActive());
+        store.put(door);
+        store.remove(window);
+
+        Snapshot second = store.snapshot();
+        assertEquals(3, second.getVersion());
+        assertEquals(2, first.getSensors().size());
+        assertEquals(1, second.getSensors().size());
+        assertTrue(second.get(door.getSensorId()).getActive());
+        assertFalse(first.get(door.getSensorId()).getActive());
+    }
+
+    @Test
+    void changesSince_replaysNewerChanges_untilTheyAreEvicted() {
+        VersionedSensorStore store = new VersionedSensorStore(3);
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        store.put(List.of(door, window));
+        long seen = store.snapshot().getVersion();
+
+        door.setActive(true);
+        store.put(door);
+        store.remove(window);
+
+        List<Change> changes = store.changesSince(seen).orElseThrow();
+        assertEquals(2, changes.size());
+        assertEquals(Change.Type.UPDATED, changes.get(0).getType());
+        assertTrue(changes.get(0).getSensor().getActive());
+        assertEquals(Change.Type.REMOVED, changes.get(1).getType());
+        assertEquals(window, changes.get(1).getSensor());
+        assertEquals(List.of(), store.changesSince(store.snapshot().getVersion()).orElseThrow());
+
+        //only three changes are kept, so version 1 was pushed out and readers of version 0 must take a new snapshot
+        store.put(new Sensor("hall", SensorType.MOTION));
+        assertEquals(Optional.empty(), store.changesSince(0));
+        assertEquals(3, store.changesSince(seen).orElseThrow().size());
+    }
+}
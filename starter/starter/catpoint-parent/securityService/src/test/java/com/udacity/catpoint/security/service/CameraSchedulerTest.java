@@ -0,0 +1,127 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+public class CameraSchedulerTest {
+
+    @Mock
+    private SecurityService securityService;
+
+    @Test
+    void busyCameras_scannedInProportionToWeight() throws InterruptedException {
+        Camera front = new Camera("front", 3, 0);
+        Camera back = new Camera("back", 1, 0);
+        BufferedImage frontFrame = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        BufferedImage backFrame = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        Map<BufferedImage, Camera> sources = Map.of(frontFrame, front, backFrame, back);
+        CountDownLatch done = new CountDownLatch(400);
+        CountDownLatch bothSubmitted = new CountDownLatch(1);
+        CameraScheduler[] scheduler = new CameraScheduler[1];
+
+        //every scanned camera immediately has a new frame, so both cameras always compete. The first scan
+        // waits for both frames, so a slow test thread can't let the front camera run alone meanwhile
+        ImageService imageService = (image, threshhold) -> {
+            try {
+                bothSubmitted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (done.getCount() > 1) {
+                scheduler[0].submitFrame(sources.get(image), image);
+            }
+            done.countDown();
+            return false;
+        };
+        scheduler[0] = new CameraScheduler(securityService, imageService, 50.0f, 1);
+        scheduler[0].addCamera(front);
+        scheduler[0].addCamera(back);
+        scheduler[0].submitFrame(front, frontFrame);
+        scheduler[0].submitFrame(back, backFrame);
+        bothSubmitted.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        scheduler[0].close();
+        //after the last resubmission one more frame may still be scanned
+        assertTrue(Math.abs(front.getScans() - 300) <= 1, "front scans: " + front.getScans());
+        assertTrue(Math.abs(back.getScans() - 100) <= 1, "back scans: " + back.getScans());
+    }
+
+    @Test
+    void rateLimitedCamera_framesCoalesced() throws InterruptedException {
+        Camera camera = new Camera("porch", 1, 5);
+        AtomicInteger scans = new AtomicInteger();
+        CameraScheduler scheduler = new CameraScheduler(securityService, (image, threshhold) -> {
+            scans.incrementAndGet();
+            return false;
+        }, 50.0f, 2);
+        scheduler.addCamera(camera);
+        for (int i = 0; i < 50; i++) {
+            scheduler.submitFrame(camera, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+            Thread.sleep(2);
+        }
+        Thread.sleep(300);
+        scheduler.close();
+
+        //frames arrive for about 100ms; at 5 scans per second that is the first frame plus the last
+        // one once the limit expires, with everything in between replaced by newer frames
+        assertTrue(scans.get() >= 2 && scans.get() < 10, "scans: " + scans.get());
+        assertEquals(50, camera.getScans() + camera.getCoalescedFrames());
+        verify(securityService, never()).cameraRemoved(any());
+        verify(securityService, atLeastOnce()).cameraScanned(any(), anyBoolean());
+    }
+
+    @Test
+    void errorFromImageService_onlyFailsThatFrame_verdictsAppliedOnStateThread() throws Exception {
+        SecurityScheduler securityScheduler = new SecurityScheduler(securityService, 1);
+        Camera camera = new Camera("porch", 1, 0);
+        AtomicInteger scans = new AtomicInteger();
+        CountDownLatch reported = new CountDownLatch(1);
+        AtomicReference<String> reportedOn = new AtomicReference<>();
+        doAnswer(invocation -> {
+            reportedOn.set(Thread.currentThread().getName());
+            reported.countDown();
+            return null;
+        }).when(securityService).cameraScanned(camera, true);
+        CameraScheduler scheduler = new CameraScheduler(securityService, securityScheduler, (image, threshhold) -> {
+            if (scans.incrementAndGet() == 1) {
+                throw new StackOverflowError();
+            }
+            return true;
+        }, 50.0f, 1);
+        try {
+            scheduler.addCamera(camera);
+            scheduler.submitFrame(camera, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+            while (scans.get() == 0) {
+                Thread.sleep(1);
+            }
+            //the only classifier thread survived the error and scans the next frame
+            scheduler.submitFrame(camera, new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+            assertTrue(reported.await(5, TimeUnit.SECONDS));
+            assertEquals("security-state", reportedOn.get());
+        } finally {
+            scheduler.close();
+            securityScheduler.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ColumnarSecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyTracerTest {
+
+    @Test
+    void histogram_percentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            histogram.record(v * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000_000, snapshot.getMax());
+        assertEquals(50_000_500, snapshot.getMean(), 1);
+        for (double percentile : new double[] {50, 90, 99, 99.9}) {
+            double exact = percentile * 1_000_000;
+            assertEquals(exact, snapshot.getValueAtPercentile(percentile), exact * 0.04);
+        }
+        assertEquals(100_000_000, snapshot.getValueAtPercentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().getValueAtPercentile(100));
+    }
+
+    @Test
+    void tracedEvents_recordEveryStage_untracedRecordNothing() {
+        LatencyTracer tracer = new LatencyTracer();
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepository(), new FakeImageService(),
+                new SensorActivityHistory(), tracer);
+        Sensor sensor = new Sensor("door", SensorType.DOOR);
+        securityService.addSensor(sensor);
+
+        securityService.changeSensorActivationStatus(sensor, true);
+        assertTrue(tracer.getCounts().values().stream().allMatch(count -> count == 0));
+
+        tracer.setSampleEvery(1);
+        securityService.changeSensorActivationStatus(sensor, false);
+        securityService.processImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(1, tracer.getCounts().get("SENSOR_EVENT"));
+        assertEquals(1, tracer.getCounts().get("IMAGE_EVENT"));
+        assertEquals(1, tracer.getCounts().get("IMAGE_SERVICE"));
+        assertEquals(1, tracer.getCounts().get("CAT_DETECTED"));
+        assertEquals(2, tracer.getCounts().get("ALARM_EVALUATION"));
+        assertTrue(tracer.getCounts().get("REPOSITORY_WRITE") >= 1);
+        assertTrue(tracer.getCounts().get("LISTENER_DISPATCH") >= 2);
+        //an event's total covers the stages inside it
+        LatencyHistogram.Snapshot total = tracer.getHistogram(LatencyTracer.Stage.IMAGE_EVENT).snapshot();
+        LatencyHistogram.Snapshot service = tracer.getHistogram(LatencyTracer.Stage.IMAGE_SERVICE).snapshot();
+        assertTrue(total.getMax() >= service.getMax());
+
+        //stages outside an event are not recorded
+        securityService.setAlarmStatus(AlarmStatus.NO_ALARM);
+        assertEquals(2, tracer.getCounts().get("ALARM_EVALUATION"));
+        assertTrue(tracer.report().contains("SENSOR_EVENT"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.ColumnarSecurityRepository;
+import com.udacity.catpoint.security.service.LatencyTracer.Stage;
+import com.udacity.catpoint.security.service.SecurityScheduler.Priority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SecuritySchedulerTest {
+
+    private SecurityScheduler scheduler;
+
+    @AfterEach
+    void close() {
+        scheduler.close();
+    }
+
+    private SecurityScheduler scheduler(ImageService imageService, int queue, Duration starvationLimit) {
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepository(), imageService);
+        scheduler = new SecurityScheduler(securityService, 1, queue, starvationLimit);
+        return scheduler;
+    }
+
+    /**
+     * Occupies the state thread until the returned latch is counted down.
+     */
+    private CountDownLatch blockStateThread() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit(Priority.ALARM, () -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    void queuedWork_runsInPriorityOrder() throws Exception {
+        scheduler(new FakeImageService(), 4, Duration.ofSeconds(10));
+        CountDownLatch release = blockStateThread();
+        List<Priority> order = new ArrayList<>();
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (Priority priority : List.of(Priority.IMAGE, Priority.SENSOR, Priority.IMAGE, Priority.ALARM)) {
+            done.add(scheduler.submit(priority, () -> order.add(priority)));
+        }
+        assertEquals(2, scheduler.getQueueDepth(Priority.IMAGE));
+
+        release.countDown();
+        CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(Priority.ALARM, Priority.SENSOR, Priority.IMAGE, Priority.IMAGE), order);
+        assertEquals(0, scheduler.getStarvationPromotions());
+    }
+
+    @Test
+    void starvedWork_overtakesUrgentWork() throws Exception {
+        scheduler(new FakeImageService(), 4, Duration.ofMillis(50));
+        CountDownLatch release = blockStateThread();
+        List<Priority> order = new ArrayList<>();
+        CompletableFuture<Void> image = scheduler.submit(Priority.IMAGE, () -> order.add(Priority.IMAGE));
+        Thread.sleep(100);
+        CompletableFuture<Void> alarm = scheduler.submit(Priority.ALARM, () -> order.add(Priority.ALARM));
+
+        release.countDown();
+        CompletableFuture.allOf(image, alarm).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(Priority.IMAGE, Priority.ALARM), order);
+        assertEquals(1, scheduler.getStarvationPromotions());
+        assertTrue(scheduler.getWaitHistogram(Priority.IMAGE).snapshot().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void saturatedClassifier_armingStillFast_excessScansRejected() throws Exception {
+        CountDownLatch classifying = new CountDownLatch(1);
+        ImageService slowService = (image, threshhold) -> {
+            classifying.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return true;
+        };
+        SecurityScheduler scheduler = scheduler(slowService, 2, Duration.ofSeconds(10));
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        List<CompletableFuture<Boolean>> scans = new ArrayList<>();
+        scans.add(scheduler.processImage(image));
+        assertTrue(classifying.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            scans.add(scheduler.processImage(image));
+        }
+        assertEquals(2, scheduler.getClassifierQueueDepth());
+        assertEquals(2, scheduler.getRejectedScans());
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> scans.get(4).get());
+        assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+
+        //the classifier is busy for another ~1s, but arming doesn't wait for it
+        long start = System.nanoTime();
+        scheduler.setArmingStatus(ArmingStatus.ARMED_HOME).get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertTrue(scans.get(0).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void scheduledScan_tracedAsOneImageEvent() throws Exception {
+        LatencyTracer tracer = new LatencyTracer(1);
+        SecurityService securityService = new SecurityService(new ColumnarSecurityRepository(),
+                (image, threshhold) -> true, new SensorActivityHistory(), tracer);
+        scheduler = new SecurityScheduler(securityService, 1, 4, Duration.ofSeconds(10));
+
+        assertTrue(scheduler.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)).get(5, TimeUnit.SECONDS));
+        assertEquals(1, tracer.getHistogram(Stage.IMAGE_EVENT).snapshot().getCount());
+        assertEquals(1, tracer.getHistogram(Stage.IMAGE_SERVICE).snapshot().getCount());
+        assertEquals(1, tracer.getHistogram(Stage.CAT_DETECTED).snapshot().getCount());
+        //the event's total covers both threads
+        assertTrue(tracer.getHistogram(Stage.IMAGE_EVENT).snapshot().getMax()
+                >= tracer.getHistogram(Stage.CAT_DETECTED).snapshot().getMax());
+    }
+
+    @Test
+    void errorInWork_failsOnlyThatTask() throws Exception {
+        ImageService failing = (image, threshhold) -> {
+            throw new AssertionError("classifier failed");
+        };
+        scheduler(failing, 4, Duration.ofSeconds(10));
+        CompletableFuture<Void> broken = scheduler.submit(Priority.ALARM, () -> {
+            throw new StackOverflowError();
+        });
+        ExecutionException error = assertThrows(ExecutionException.class, () -> broken.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof StackOverflowError);
+        BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        for (int i = 0; i < 2; i++) {
+            //the second scan shows the classifier thread survived the first
+            ExecutionException scan = assertThrows(ExecutionException.class,
+                    () -> scheduler.processImage(image).get(5, TimeUnit.SECONDS));
+            assertTrue(scan.getCause() instanceof AssertionError);
+        }
+
+        //the state thread survived too
+        scheduler.setArmingStatus(ArmingStatus.ARMED_HOME).get(5, TimeUnit.SECONDS);
+    }
+}
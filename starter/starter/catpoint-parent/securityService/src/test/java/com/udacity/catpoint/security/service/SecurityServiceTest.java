@@ -1,14 +1,21 @@
 package com.udacity.catpoint.security.service;
 
+import com.udacity.catpoint.image.service.FrameBufferPool;
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.PooledFrame;
 import com.udacity.catpoint.security.data.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.UUID;
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -22,6 +29,7 @@ import org.mockito.quality.Strictness;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static com.udacity.catpoint.security.data.AlarmStatus.*;
 import static com.udacity.catpoint.security.data.ArmingStatus.ARMED_HOME;
@@ -42,6 +50,25 @@ public class SecurityServiceTest {
 
     @BeforeEach
     void init() {
+        //the combined status write stores each status through its own setter, as most repositories do
+        doAnswer(invocation -> {
+            ArmingStatus arming = invocation.getArgument(0);
+            AlarmStatus alarm = invocation.getArgument(1);
+            if (arming != null) {
+                securityRepository.setArmingStatus(arming);
+            }
+            if (alarm != null) {
+                securityRepository.setAlarmStatus(alarm);
+            }
+            return null;
+        }).when(securityRepository).updateStatus(any(), any());
+        //as does the asynchronous bulk write, which completes straight away
+        doAnswer(invocation -> {
+            securityRepository.updateSensors(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        }).when(securityRepository).updateSensorsAsync(any());
+        when(securityRepository.getSensorSnapshot())
+                .thenAnswer(invocation -> VersionedSensorStore.Snapshot.of(securityRepository.getSensors()));
         securityService = new SecurityService(securityRepository, imageService);
     }
 
@@ -232,6 +259,69 @@ public class SecurityServiceTest {
         verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
     }
 
+    // 11 part three: cat detected in an image that is still encoded
+    @Test
+    void statusAlreadyArmedHome_encodedCatImageProcessed_setToAlarm() {
+
+        ByteBuffer encoded = ByteBuffer.wrap(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF});
+        when(imageService.imageContainsCat(encoded, 50.0f)).thenReturn(true);
+        when(securityRepository.getArmingStatus()).thenReturn(ARMED_HOME);
+        securityService.processImage(encoded);
+        verify(imageService, never()).imageContainsCat(any(BufferedImage.class), anyFloat());
+        verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    // 11 part four: cat detected in a pooled frame, whose buffer goes back to the pool afterwards
+    @Test
+    void statusAlreadyArmedHome_pooledCatFrameProcessed_setToAlarm_frameReused() {
+
+        FrameBufferPool pool = new FrameBufferPool(1);
+        PooledFrame frame = pool.acquire(4, 4, BufferedImage.TYPE_INT_RGB);
+        BufferedImage bi = frame.getImage();
+        when(imageService.imageContainsCat(bi, 50.0f)).thenReturn(true);
+        when(securityRepository.getArmingStatus()).thenReturn(ARMED_HOME);
+        securityService.processImage(frame);
+        verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
+
+        frame.release();
+        assertThrows(IllegalStateException.class, frame::getImage);
+        assertSame(bi, pool.acquire(4, 4, BufferedImage.TYPE_INT_RGB).getImage());
+        assertEquals(1, pool.getAllocations());
+    }
+
+    // 11 part five: several cameras, the cat is present while any one of them sees it
+    @Test
+    void multipleCameras_catClearedOnlyWhenNoCameraSeesIt() {
+
+        Camera garden = new Camera("garden", 1, 0);
+        Camera kitchen = new Camera("kitchen", 1, 0);
+        securityService.cameraScanned(garden, true);
+        securityService.cameraScanned(kitchen, true);
+        securityService.cameraScanned(garden, false);
+        verify(securityRepository).setCatDisplayed(true);
+        verify(securityRepository, never()).setCatDisplayed(false);
+        assertEquals(1, securityService.getCamerasSeeingCat());
+
+        securityService.cameraRemoved(kitchen);
+        securityService.cameraScanned(kitchen, true);
+        verify(securityRepository).setCatDisplayed(false);
+        assertEquals(0, securityService.getCamerasSeeingCat());
+    }
+
+    @Test
+    void singleImageWithoutCat_doesNotClearCatSeenByCamera() {
+        when(imageService.imageContainsCat(any(BufferedImage.class), anyFloat())).thenReturn(false);
+        Camera garden = new Camera("garden", 1, 0);
+        securityService.cameraScanned(garden, true);
+
+        securityService.processImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+        verify(securityRepository, never()).setCatDisplayed(false);
+        assertEquals(1, securityService.getCamerasSeeingCat());
+
+        securityService.cameraScanned(garden, false);
+        verify(securityRepository).setCatDisplayed(false);
+        assertEquals(0, securityService.getCamerasSeeingCat());
+    }
 
     //testing other methods
     @ParameterizedTest
@@ -301,15 +391,52 @@ public class SecurityServiceTest {
         verify(securityRepository).setArmingStatus(status);
     }
 
+    @Test
+    void resetAndChange_writeCopies_leaveRepositorySensorsUnchanged() {
+        Sensor door = getSensor(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of(door));
+
+        securityService.resetSensors();
+        verify(securityRepository).updateSensors(argThat(changed ->
+                changed.size() == 1 && changed.iterator().next() != door && !changed.iterator().next().getActive()));
+
+        securityService.changeSensorActivationStatus(door, false);
+        verify(securityRepository).updateSensor(argThat(changed -> changed != door && !changed.getActive()));
+        assertTrue(door.getActive());
+        //the stored sensor was active, so deactivating it re-evaluates the alarm
+        verify(securityRepository, times(2)).getAlarmStatus();
+    }
+
+    @Test
+    void arming_resetSensorsWrittenWhileStatusIsStored_failedWriteReported() {
+        when(securityRepository.getSensors()).thenReturn(Set.of(getSensor(true)));
+        CompletableFuture<Void> sensorsWritten = new CompletableFuture<>();
+        doReturn(sensorsWritten).when(securityRepository).updateSensorsAsync(any());
+        //the status is stored while the sensor write is still in flight
+        doAnswer(invocation -> {
+            assertFalse(sensorsWritten.isDone());
+            sensorsWritten.completeExceptionally(new RepositoryException("sensor write failed", null));
+            return null;
+        }).when(securityRepository).updateStatus(any(), any());
+
+        RepositoryException e = assertThrows(RepositoryException.class, () -> securityService.setArmingStatus(ARMED_HOME));
+        assertEquals("sensor write failed", e.getMessage());
+        verify(securityRepository).updateStatus(eq(ARMED_HOME), any());
+        verify(securityRepository, never()).updateSensors(any());
+    }
+
     @ParameterizedTest
     @ValueSource(booleans = {true, false})
     public void resetSensors_dummySensorParameters(Boolean sensors) {
         HashSet<Sensor> s = new HashSet<>(getDummySensors(sensors));
         when(securityRepository.getSensors()).thenReturn(s);
         securityService.resetSensors();
-        for (Sensor sn : s) {
-            verify(securityRepository).updateSensor(sn);
+        if (sensors) {
+            verify(securityRepository).updateSensors(argThat(changed -> changed.containsAll(s) && changed.size() == s.size()));
+        } else {
+            verify(securityRepository, never()).updateSensors(any());
         }
+        verify(securityRepository, never()).updateSensor(any());
     }
 
 
@@ -345,6 +472,116 @@ public class SecurityServiceTest {
         assertTrue(securityService.verifySensorsInactive() == !active);
     }
 
+    //alarm transition table: every cell must match the nested if/switch logic it replaced
+    @Test
+    void alarmTransitionTable_matchesLegacyLogic_forEveryCombination() {
+        for (ArmingStatus arming : ArmingStatus.values()) {
+            for (AlarmStatus alarm : AlarmStatus.values()) {
+                for (AlarmTransitions.Event event : AlarmTransitions.Event.values()) {
+                    for (boolean anyActive : new boolean[]{false, true}) {
+                        for (boolean cat : new boolean[]{false, true}) {
+                            int expected = new LegacyAlarmLogic(arming, alarm, anyActive, cat).run(event);
+                            assertEquals(expected, AlarmTransitions.lookup(arming, alarm, event, anyActive, cat),
+                                    String.format("%s %s %s active=%s cat=%s", arming, alarm, event, anyActive, cat));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The alarm rules as SecurityService implemented them before the transition table, reading the
+     * same four inputs the table is indexed by and recording what it would have written.
+     */
+    private static class LegacyAlarmLogic {
+        private final ArmingStatus arming;
+        private final AlarmStatus alarm;
+        private final boolean anyActive;
+        private final boolean cat;
+        private AlarmStatus written;
+        private boolean notified;
+        private Boolean sensorFlag;
+
+        LegacyAlarmLogic(ArmingStatus arming, AlarmStatus alarm, boolean anyActive, boolean cat) {
+            this.arming = arming;
+            this.alarm = alarm;
+            this.anyActive = anyActive;
+            this.cat = cat;
+        }
+
+        int run(AlarmTransitions.Event event) {
+            switch (event) {
+                case SENSOR_ACTIVATED -> handleSensorActivated();
+                case SENSOR_DEACTIVATED -> handleSensorDeactivated();
+                case CAT_DETECTED -> catDetected(true);
+                case CAT_CLEARED -> catDetected(false);
+                case DISARM -> setArmingStatus(DISARMED);
+                case ARM_HOME -> setArmingStatus(ARMED_HOME);
+                case ARM_AWAY -> setArmingStatus(ArmingStatus.ARMED_AWAY);
+                case REQUEST_NO_ALARM -> setAlarmStatus(NO_ALARM);
+                case REQUEST_PENDING_ALARM -> setAlarmStatus(PENDING_ALARM);
+                case REQUEST_ALARM -> setAlarmStatus(ALARM);
+            }
+            int action = written == null ? 0 : written.ordinal() + 1;
+            if (notified) {
+                action |= AlarmTransitions.NOTIFY;
+            }
+            if (sensorFlag != null) {
+                action |= sensorFlag ? AlarmTransitions.SENSOR_FLAG_TRUE : AlarmTransitions.SENSOR_FLAG_FALSE;
+            }
+            return action;
+        }
+
+        private void setArmingStatus(ArmingStatus armingStatus) {
+            if (armingStatus == DISARMED) {
+                setAlarmStatus(NO_ALARM);
+            } else if (armingStatus == ARMED_HOME && cat) {
+                setAlarmStatus(ALARM);
+            }
+        }
+
+        private void catDetected(boolean detected) {
+            if (detected && arming == ARMED_HOME) {
+                setAlarmStatus(ALARM);
+            } else if (!detected && !anyActive) {
+                setAlarmStatus(NO_ALARM);
+            }
+        }
+
+        private void setAlarmStatus(AlarmStatus status) {
+            if (!anyActive && status == PENDING_ALARM && !cat) {
+                written = NO_ALARM;
+            } else if (status == PENDING_ALARM && cat) {
+                written = ALARM;
+            } else {
+                written = status;
+                notified = true;
+            }
+        }
+
+        private void handleSensorActivated() {
+            if (arming == DISARMED) {
+                return;
+            }
+            switch (alarm) {
+                case NO_ALARM -> setAlarmStatus(PENDING_ALARM);
+                case PENDING_ALARM -> setAlarmStatus(ALARM);
+            }
+            if (!anyActive) {
+                sensorFlag = false;
+            }
+        }
+
+        private void handleSensorDeactivated() {
+            if (alarm == PENDING_ALARM && !anyActive) {
+                setAlarmStatus(NO_ALARM);
+            }
+            if (!anyActive) {
+                sensorFlag = true;
+            }
+        }
+    }
 
     private Set<Sensor> sensorProvider() {
         return Set.of(
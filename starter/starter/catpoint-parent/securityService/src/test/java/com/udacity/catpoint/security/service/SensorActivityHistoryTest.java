@@ -0,0 +1,128 @@
+package com.udacity.catpoint.security.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorActivityHistoryTest {
+
+    private static final Instant MONDAY = Instant.parse("2026-03-02T00:00:00Z");
+
+    private final MutableClock clock = new MutableClock(MONDAY);
+    private final UUID door = UUID.randomUUID();
+
+    private SensorActivityHistory history(Duration raw, Duration minutes, Duration hours, Duration days) {
+        return new SensorActivityHistory(clock, raw, minutes, hours, days);
+    }
+
+    @Test
+    void countActivations_weekRange_matchesRecordedEvents() {
+        SensorActivityHistory history = new SensorActivityHistory(clock, SensorActivityHistory.DEFAULT_RAW_RETENTION,
+                SensorActivityHistory.DEFAULT_MINUTE_RETENTION, SensorActivityHistory.DEFAULT_HOUR_RETENTION,
+                SensorActivityHistory.DEFAULT_DAY_RETENTION);
+        //three trips a day at 07:15:20, 12:00:00 and 18:59:59
+        for (int day = 0; day < 7; day++) {
+            Instant midnight = MONDAY.plus(Duration.ofDays(day));
+            for (Duration time : List.of(Duration.parse("PT7H15M20S"), Duration.ofHours(12), Duration.parse("PT18H59M59S"))) {
+                clock.set(midnight.plus(time));
+                history.recordActivation(door);
+            }
+        }
+
+        assertEquals(21, history.countActivations(door, MONDAY, MONDAY.plus(Duration.ofDays(7))));
+        assertEquals(3, history.countActivations(door, MONDAY.plus(Duration.ofDays(2)), MONDAY.plus(Duration.ofDays(3))));
+        //an unaligned range is widened to whole minutes, and uses hour and minute buckets at the edges
+        assertEquals(4, history.countActivations(door, MONDAY.plus(Duration.parse("PT7H15M50S")),
+                MONDAY.plus(Duration.parse("P1DT7H16M"))));
+        assertEquals(3, history.countActivationsInLast(door, Duration.ofHours(12)));
+        assertEquals(0, history.countActivations(UUID.randomUUID(), MONDAY, MONDAY.plus(Duration.ofDays(7))));
+    }
+
+    @Test
+    void rawEvents_keptOnlyForRawRetention_butRollupsRemain() {
+        SensorActivityHistory history = history(Duration.ofHours(1), Duration.ofHours(2), Duration.ofDays(2),
+                Duration.ofDays(30));
+        //enough events to fill several raw chunks
+        for (int i = 0; i < 2000; i++) {
+            clock.set(MONDAY.plusSeconds(i * 10L));
+            history.recordActivation(door);
+        }
+        Instant end = clock.instant().plusMillis(1);
+
+        List<Instant> raw = history.getActivations(door, MONDAY, end);
+        assertFalse(raw.isEmpty());
+        assertTrue(raw.size() < 2000);
+        assertEquals(clock.instant(), raw.get(raw.size() - 1));
+        assertTrue(raw.get(0).isAfter(MONDAY));
+        for (int i = 1; i < raw.size(); i++) {
+            assertEquals(Duration.ofSeconds(10), Duration.between(raw.get(i - 1), raw.get(i)));
+        }
+
+        //the first minutes have left the minute ring, but still count through the hour ring
+        assertEquals(2000, history.countActivations(door, MONDAY, end));
+    }
+
+    @Test
+    void flappingSensor_rawEventsCappedByChunks_countsComplete() {
+        SensorActivityHistory history = new SensorActivityHistory(clock, Duration.ofDays(1), Duration.ofDays(1),
+                Duration.ofDays(2), Duration.ofDays(30), 2);
+        //one activation a second for three hours, all within the raw retention
+        for (int i = 0; i < 10_800; i++) {
+            clock.set(MONDAY.plusSeconds(i));
+            history.recordActivation(door);
+        }
+        Instant end = clock.instant().plusMillis(1);
+
+        List<Instant> raw = history.getActivations(door, MONDAY, end);
+        //a one second delta takes two bytes, so two chunks hold about a thousand events
+        assertTrue(raw.size() > 500 && raw.size() <= 1024, "raw events: " + raw.size());
+        assertEquals(clock.instant(), raw.get(raw.size() - 1));
+        assertEquals(10_800, history.countActivations(door, MONDAY, end));
+        assertThrows(IllegalArgumentException.class, () -> new SensorActivityHistory(clock, Duration.ofDays(1),
+                Duration.ofDays(1), Duration.ofDays(2), Duration.ofDays(30), 0));
+    }
+
+    @Test
+    void forget_dropsSensorHistory() {
+        SensorActivityHistory history = new SensorActivityHistory();
+        history.recordActivation(door, MONDAY);
+        history.forget(door);
+        assertEquals(0, history.countActivations(door, MONDAY, MONDAY.plusSeconds(60)));
+        assertTrue(history.getActivations(door, MONDAY, MONDAY.plusSeconds(60)).isEmpty());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void set(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorDebouncerTest {
+
+    private SensorDebouncer debouncer;
+
+    @Mock
+    private SecurityService securityService;
+
+    @BeforeEach
+    void init() {
+        debouncer = new SensorDebouncer(securityService, Map.of(SensorType.DOOR, Duration.ofMillis(50)));
+    }
+
+    @AfterEach
+    void close() {
+        debouncer.close();
+    }
+
+    @Test
+    void burstEndingInNewState_forwardedOnce() {
+        Sensor sensor = new Sensor("front", SensorType.DOOR);
+        debouncer.sensorEvent(sensor, true);
+        debouncer.sensorEvent(sensor, false);
+        debouncer.sensorEvent(sensor, true);
+        verify(securityService, timeout(1000)).changeSensorActivationStatus(sensor, true);
+        assertEquals(3, debouncer.getReceivedEvents());
+        assertEquals(1, debouncer.getForwardedEvents());
+    }
+
+    @Test
+    void burstEndingInCurrentState_dropped() throws InterruptedException {
+        Sensor sensor = new Sensor("front", SensorType.DOOR);
+        debouncer.sensorEvent(sensor, true);
+        debouncer.sensorEvent(sensor, false);
+        Thread.sleep(200);
+        verify(securityService, never()).changeSensorActivationStatus(any(), anyBoolean());
+        assertEquals(0, debouncer.getPendingSensors());
+    }
+
+    @Test
+    void sensorTypeWithoutWindow_forwardedImmediately() {
+        Sensor sensor = new Sensor("hall", SensorType.MOTION);
+        debouncer.sensorEvent(sensor, true);
+        verify(securityService).changeSensorActivationStatus(sensor, true);
+    }
+}
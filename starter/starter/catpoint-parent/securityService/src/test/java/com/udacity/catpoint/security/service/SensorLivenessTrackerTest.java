@@ -0,0 +1,115 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ColumnarSecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorLivenessTrackerTest {
+
+    private long now = 1_000_000_000L;
+    private final List<String> changes = new ArrayList<>();
+    private final SecurityService securityService = new SecurityService(new ColumnarSecurityRepository(), new FakeImageService());
+
+    SensorLivenessTrackerTest() {
+        securityService.addStatusListener(new StatusListener() {
+            @Override
+            public void notify(AlarmStatus status) {
+            }
+
+            @Override
+            public void catDetected(boolean catDetected) {
+            }
+
+            @Override
+            public void sensorStatusChanged() {
+            }
+
+            @Override
+            public void sensorLivenessChanged(Sensor sensor, boolean online) {
+                changes.add(sensor.getName() + (online ? " online" : " offline"));
+            }
+        });
+    }
+
+    private SensorLivenessTracker tracker(Map<SensorType, Duration> timeouts, int capacity) {
+        return new SensorLivenessTracker(securityService, timeouts, Duration.ofMillis(100), capacity, () -> now);
+    }
+
+    private void advanceTo(SensorLivenessTracker tracker, Duration sinceStart) {
+        now = 1_000_000_000L + sinceStart.toNanos();
+        tracker.advance();
+    }
+
+    @Test
+    void missedDeadlines_perTypeTimeouts_heartbeatBringsSensorBack() {
+        SensorLivenessTracker tracker = tracker(Map.of(SensorType.DOOR, Duration.ofSeconds(30),
+                SensorType.MOTION, Duration.ofSeconds(5)), 4);
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        Sensor motion = new Sensor("motion", SensorType.MOTION);
+        int doorHandle = tracker.register(door);
+        tracker.register(motion);
+        assertEquals(SensorLivenessTracker.NOT_TRACKED, tracker.register(new Sensor("window", SensorType.WINDOW)));
+
+        advanceTo(tracker, Duration.ofSeconds(4));
+        tracker.heartbeat(motion.getSensorId());
+        advanceTo(tracker, Duration.ofMillis(8900));
+        assertTrue(changes.isEmpty());
+        advanceTo(tracker, Duration.ofMillis(9100));
+        assertEquals(List.of("motion offline"), changes);
+        assertFalse(tracker.isOnline(motion.getSensorId()));
+
+        advanceTo(tracker, Duration.ofMillis(29900));
+        assertEquals(1, changes.size());
+        advanceTo(tracker, Duration.ofMillis(30100));
+        assertEquals(List.of("motion offline", "door offline"), changes);
+        assertEquals(2, tracker.getOfflineCount());
+
+        tracker.heartbeat(doorHandle);
+        assertEquals("door online", changes.get(2));
+        assertTrue(tracker.isOnline(door.getSensorId()));
+        assertEquals(1, tracker.getOfflineCount());
+
+        tracker.unregister(motion);
+        assertEquals(1, tracker.getTrackedCount());
+        assertEquals(0, tracker.getOfflineCount());
+    }
+
+    @Test
+    void longTimeouts_cascadeThroughLevels_neverExpireEarly() {
+        SensorLivenessTracker tracker = tracker(Map.of(SensorType.WINDOW, Duration.ofHours(2)), 10_000);
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            Sensor sensor = new Sensor("window " + i, SensorType.WINDOW);
+            sensors.add(sensor);
+            tracker.register(sensor);
+        }
+
+        advanceTo(tracker, Duration.ofHours(1));
+        for (int i = 0; i < sensors.size(); i += 2) {
+            tracker.heartbeat(sensors.get(i).getSensorId());
+        }
+        advanceTo(tracker, Duration.ofHours(2).minusMillis(100));
+        assertEquals(0, tracker.getOfflineCount());
+        advanceTo(tracker, Duration.ofHours(2).plusMillis(100));
+        assertEquals(5_000, tracker.getOfflineCount());
+        assertTrue(tracker.isOnline(sensors.get(0).getSensorId()));
+        assertFalse(tracker.isOnline(sensors.get(1).getSensorId()));
+
+        advanceTo(tracker, Duration.ofHours(3).minusMillis(100));
+        assertEquals(5_000, tracker.getOfflineCount());
+        advanceTo(tracker, Duration.ofHours(3).plusMillis(100));
+        assertEquals(10_000, tracker.getOfflineCount());
+        assertEquals(10_000, changes.size());
+    }
+}
@@ -0,0 +1,92 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatusPublisherTest {
+
+    private final StatusPublisher publisher = new StatusPublisher();
+    private final List<Runnable> pending = new ArrayList<>();
+    private final Executor manualExecutor = pending::add;
+
+    @Test
+    void sameThreadSubscriber_receivesEventsInOrder() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.PENDING_ALARM));
+        publisher.publish(StatusEvent.catDetected(true));
+        assertEquals(List.of(StatusEvent.alarmStatus(AlarmStatus.PENDING_ALARM), StatusEvent.catDetected(true)),
+                subscriber.events);
+    }
+
+    @Test
+    void dropOldest_slowSubscriberKeepsNewestEvents() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, manualExecutor, 2, OverflowPolicy.DROP_OLDEST);
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.NO_ALARM));
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.PENDING_ALARM));
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.ALARM));
+        runPending();
+        assertEquals(List.of(StatusEvent.alarmStatus(AlarmStatus.PENDING_ALARM), StatusEvent.alarmStatus(AlarmStatus.ALARM)),
+                subscriber.events);
+        assertEquals(1, publisher.getDroppedEvents());
+    }
+
+    @Test
+    void latestOnly_slowSubscriberSeesOnlyLastEvent() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, manualExecutor, 16, OverflowPolicy.LATEST_ONLY);
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.NO_ALARM));
+        publisher.publish(StatusEvent.alarmStatus(AlarmStatus.ALARM));
+        runPending();
+        assertEquals(List.of(StatusEvent.alarmStatus(AlarmStatus.ALARM)), subscriber.events);
+    }
+
+    @Test
+    void fail_overflowCancelsSubscriptionWithError() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber, manualExecutor, 1, OverflowPolicy.FAIL);
+        publisher.publish(StatusEvent.catDetected(true));
+        publisher.publish(StatusEvent.catDetected(false));
+        runPending();
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    private void runPending() {
+        while (!pending.isEmpty()) {
+            pending.remove(0).run();
+        }
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<StatusEvent> {
+        private final List<StatusEvent> events = new ArrayList<>();
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(StatusEvent item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ZoneServiceTest {
+
+    private ZoneService zoneService;
+    private Sensor garageDoor;
+    private Sensor bedroomWindow;
+
+    @Mock
+    private SecurityRepository securityRepository;
+
+    @BeforeEach
+    void init() {
+        zoneService = new ZoneService(securityRepository);
+        zoneService.addZone("garage");
+        zoneService.addZone("bedroom");
+        garageDoor = new Sensor("garage door", SensorType.DOOR);
+        bedroomWindow = new Sensor("bedroom window", SensorType.WINDOW);
+        zoneService.assignSensor("garage", garageDoor);
+        zoneService.assignSensor("bedroom", bedroomWindow);
+    }
+
+    @Test
+    void sensorActivatedInArmedZone_onlyThatZonePending() {
+        zoneService.setArmingStatus("garage", ArmingStatus.ARMED_AWAY);
+        zoneService.changeSensorActivationStatus(garageDoor, true);
+        zoneService.changeSensorActivationStatus(bedroomWindow, true);
+
+        assertEquals(AlarmStatus.PENDING_ALARM, zoneService.getAlarmStatus("garage"));
+        assertEquals(AlarmStatus.NO_ALARM, zoneService.getAlarmStatus("bedroom"));
+        assertEquals(AlarmStatus.PENDING_ALARM, zoneService.getAlarmStatus());
+        verify(securityRepository).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    }
+
+    @Test
+    void systemStatus_isMostSevereZoneStatus() {
+        zoneService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        zoneService.changeSensorActivationStatus(garageDoor, true);
+        zoneService.changeSensorActivationStatus(garageDoor, true);
+        zoneService.changeSensorActivationStatus(bedroomWindow, true);
+        assertEquals(AlarmStatus.ALARM, zoneService.getAlarmStatus());
+
+        zoneService.setArmingStatus("garage", ArmingStatus.DISARMED);
+        assertEquals(AlarmStatus.PENDING_ALARM, zoneService.getAlarmStatus());
+    }
+
+    @Test
+    void catDetected_alarmsEveryZoneArmedHome() {
+        zoneService.setArmingStatus("garage", ArmingStatus.ARMED_HOME);
+        zoneService.catDetected(true);
+
+        assertEquals(AlarmStatus.ALARM, zoneService.getAlarmStatus("garage"));
+        assertEquals(AlarmStatus.NO_ALARM, zoneService.getAlarmStatus("bedroom"));
+        assertEquals(AlarmStatus.ALARM, zoneService.getAlarmStatus());
+    }
+
+    @Test
+    void activatedThroughOtherInstance_armingResetsItById() {
+        //the same sensor as read back from the repository, not the object it was assigned with
+        Sensor stored = new Sensor("garage door", SensorType.DOOR);
+        stored.setSensorId(garageDoor.getSensorId());
+        zoneService.changeSensorActivationStatus(stored, true);
+        assertTrue(zoneService.getZone("garage").isSensorActive(garageDoor.getSensorId()));
+
+        zoneService.setArmingStatus("garage", ArmingStatus.ARMED_AWAY);
+        assertEquals(AlarmStatus.NO_ALARM, zoneService.getAlarmStatus("garage"));
+        assertFalse(zoneService.getZone("garage").isSensorActive(garageDoor.getSensorId()));
+        verify(securityRepository).updateSensors(argThat(changed -> changed.size() == 1
+                && changed.iterator().next().getSensorId().equals(garageDoor.getSensorId())
+                && !changed.iterator().next().getActive()));
+        //neither object was changed; copies were written instead
+        assertFalse(stored.getActive());
+        assertFalse(garageDoor.getActive());
+        verify(securityRepository, never()).updateSensor(same(stored));
+    }
+}